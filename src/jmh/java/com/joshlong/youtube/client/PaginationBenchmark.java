@@ -0,0 +1,87 @@
+package com.joshlong.youtube.client;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives the {@code expand} pagination pipelines in {@link DefaultYoutubeClient} against
+ * canned responses, so that what's measured is our own decoding, pagination and
+ * hydration rather than the network.
+ *
+ * @author Josh Long
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PaginationBenchmark {
+
+	@Param({ "20" })
+	public int pages;
+
+	private DefaultYoutubeClient client;
+
+	@Setup
+	public void setup() throws IOException {
+		var playlistItems = new String(YoutubeDecoderBenchmark.Fixtures.read("playlistItems.json"),
+				StandardCharsets.UTF_8);
+		var videos = new String(YoutubeDecoderBenchmark.Fixtures.read("videos.json"), StandardCharsets.UTF_8);
+		var playlists = new String(YoutubeDecoderBenchmark.Fixtures.read("playlists.json"), StandardCharsets.UTF_8);
+		var playlistItemPages = new String[this.pages];
+		var playlistPages = new String[this.pages];
+		for (var page = 0; page < this.pages; page++) {
+			var next = page == this.pages - 1 ? "" : "page-" + (page + 1);
+			playlistItemPages[page] = playlistItems.replace("EAAaBlBUOkNESQ", next);
+			playlistPages[page] = playlists.replace("CBQQAA", next);
+		}
+		var http = WebClient.builder().exchangeFunction(request -> {
+			var uri = request.url();
+			var pageToken = UriComponentsBuilder.fromUri(uri).build().getQueryParams().getFirst("pageToken");
+			var page = pageToken == null ? 0 : Integer.parseInt(pageToken.substring("page-".length()));
+			var path = uri.getPath();
+			var body = path.endsWith("/playlistItems") ? playlistItemPages[page]
+					: path.endsWith("/playlists") ? playlistPages[page] : videos;
+			return Mono.just(ClientResponse.create(HttpStatus.OK)
+					.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).body(body).build());
+		}).build();
+		var quota = new YoutubeQuota(Long.MAX_VALUE, 1_000_000_000, false, Clock.systemUTC());
+		this.client = new DefaultYoutubeClient(http, "key", "https://youtube.googleapis.com/youtube/v3", 4, quota,
+				new YoutubeResponseCache(DataSize.ofBytes(0), null),
+				new YoutubeResilience(Duration.ofSeconds(10), Map.of(), 0, Duration.ZERO, Duration.ZERO,
+						new YoutubeCircuitBreaker(20, 1, Duration.ZERO, Clock.systemUTC()), Clock.systemUTC()),
+				new SimpleMeterRegistry());
+	}
+
+	@Benchmark
+	public Long allVideosByPlaylistOrdered() {
+		return this.client.getAllVideosByPlaylist("PL", true).count().block();
+	}
+
+	@Benchmark
+	public Long allVideosByPlaylistUnordered() {
+		return this.client.getAllVideosByPlaylist("PL", false).count().block();
+	}
+
+	@Benchmark
+	public Long allPlaylistsByChannel() {
+		return this.client.getAllPlaylistsByChannel("UC").count().block();
+	}
+
+}
@@ -0,0 +1,80 @@
+package com.joshlong.youtube.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming {@link YoutubeJsonDecoder} with the tree-based
+ * {@link JsonNodeDecoder} on recorded YouTube responses. Run with {@code -prof gc} (the
+ * default in the {@code benchmark} profile) to see the allocation rate of each.
+ *
+ * @author Josh Long
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class YoutubeDecoderBenchmark {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private byte[] videos;
+
+	private byte[] playlists;
+
+	private byte[] channels;
+
+	@Setup
+	public void setup() throws IOException {
+		this.videos = Fixtures.read("videos.json");
+		this.playlists = Fixtures.read("playlists.json");
+		this.channels = Fixtures.read("channels.json");
+	}
+
+	@Benchmark
+	public Object videosStreaming() throws IOException {
+		return YoutubeJsonDecoder.decode(this.videos, YoutubeJsonDecoder::videos);
+	}
+
+	@Benchmark
+	public Object videosTree() throws IOException {
+		return JsonNodeDecoder.videos(this.objectMapper.readTree(this.videos));
+	}
+
+	@Benchmark
+	public Object playlistsStreaming() throws IOException {
+		return YoutubeJsonDecoder.decode(this.playlists, YoutubeJsonDecoder::playlists);
+	}
+
+	@Benchmark
+	public Object playlistsTree() throws IOException {
+		return JsonNodeDecoder.playlists(this.objectMapper.readTree(this.playlists));
+	}
+
+	@Benchmark
+	public Object channelStreaming() throws IOException {
+		return YoutubeJsonDecoder.decode(this.channels, YoutubeJsonDecoder::channels);
+	}
+
+	@Benchmark
+	public Object channelTree() throws IOException {
+		return JsonNodeDecoder.buildChannelFromJsonNode(this.objectMapper.readTree(this.channels));
+	}
+
+	static abstract class Fixtures {
+
+		static byte[] read(String name) throws IOException {
+			try (var in = new ClassPathResource("fixtures/" + name).getInputStream()) {
+				return in.readAllBytes();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,115 @@
+package com.joshlong.youtube.runner;
+
+import com.joshlong.youtube.client.Video;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.spi.ConnectionFactories;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.util.StreamUtils;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link VideoBatchWriter} against a real, but embedded, PostgreSQL, for
+ * each of the paths a batch of videos can take: unchanged, statistics only, and edited.
+ *
+ * @author Josh Long
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VideoWriteBenchmark {
+
+	private static final String CHANNEL_ID = "UC7yfnfvEUlXUIfm8rGLwZdA";
+
+	/**
+	 * every write belongs to the same ingest run, so that unchanged videos are skipped.
+	 */
+	private static final long RUN_ID = 1;
+
+	@Param({ "100" })
+	public int batchSize;
+
+	private EmbeddedPostgres postgres;
+
+	private VideoBatchWriter writer;
+
+	private List<Video> videos;
+
+	private int round;
+
+	@Setup
+	public void setup() throws IOException {
+		this.postgres = EmbeddedPostgres.start();
+		var connectionFactory = ConnectionFactories
+				.get("r2dbc:pool:postgresql://postgres@localhost:" + this.postgres.getPort() + "/postgres");
+		var databaseClient = DatabaseClient.create(connectionFactory);
+		var schema = StreamUtils.copyToString(new ClassPathResource("schema.sql").getInputStream(),
+				StandardCharsets.UTF_8);
+		Flux.fromArray(schema.split(";"))//
+				.filter(sql -> !sql.isBlank())//
+				.concatMap(sql -> databaseClient.sql(sql).then())//
+				.then(databaseClient.sql("""
+						insert into yt_channels(channel_id, description, published_at, title, last_seen_run)
+						values (:channelId, 'description', now(), 'title', :runId)
+						""").bind("channelId", CHANNEL_ID).bind("runId", RUN_ID).then())//
+				.block();
+		this.writer = new VideoBatchWriter(databaseClient, new IngestMetrics(new SimpleMeterRegistry()));
+		this.videos = new ArrayList<>();
+		for (var i = 0; i < this.batchSize; i++)
+			this.videos.add(video("video-" + i, "title", 0));
+		this.writer.write(this.videos, RUN_ID, new IngestSummary()).block();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		this.postgres.close();
+	}
+
+	@Benchmark
+	public IngestSummary unchanged() {
+		return write(this.videos);
+	}
+
+	@Benchmark
+	public IngestSummary statisticsOnly() {
+		var round = ++this.round;
+		return write(this.videos.stream().map(v -> video(v.videoId(), v.title(), round)).toList());
+	}
+
+	@Benchmark
+	public IngestSummary edited() {
+		var round = ++this.round;
+		return write(this.videos.stream().map(v -> video(v.videoId(), "title " + round, round)).toList());
+	}
+
+	private IngestSummary write(List<Video> batch) {
+		var summary = new IngestSummary();
+		this.writer.write(batch, RUN_ID, summary).block();
+		return summary;
+	}
+
+	private static Video video(String id, String title, int views) {
+		try {
+			return new Video(id, title, "a description that is long enough to be worth not rewriting".repeat(20),
+					new Date(0), new URL("https://i.ytimg.com/vi/" + id + "/default.jpg"), List.of("spring", "java"),
+					28, views, 0, 0, 0, CHANNEL_ID);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
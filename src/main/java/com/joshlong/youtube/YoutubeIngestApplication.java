@@ -4,8 +4,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
-import org.springframework.context.annotation.Bean;
-import org.springframework.web.reactive.function.client.WebClient;
 
 @Slf4j
 @SpringBootApplication
@@ -16,9 +14,4 @@ public class YoutubeIngestApplication {
 		SpringApplication.run(YoutubeIngestApplication.class, args);
 	}
 
-	@Bean
-	WebClient webClient(WebClient.Builder builder) {
-		return builder.build();
-	}
-
 }
@@ -1,15 +1,198 @@
 package com.joshlong.youtube;
 
+import com.joshlong.youtube.client.YoutubeEndpoint;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 
 @ConstructorBinding
 @ConfigurationProperties(prefix = "bootiful")
-public record YoutubeProperties(Youtube youtube, Batch batch) {
+public record YoutubeProperties(Youtube youtube, Batch batch, @DefaultValue Graphql graphql) {
+
+	/**
+	 * @param liveFallback whether to ask the YouTube API for channels and playlists that
+	 * haven't been ingested. Every such query costs quota.
+	 */
+	public record Graphql(@DefaultValue("false") boolean liveFallback) {
+	}
+
+	/**
+	 * @param channelUsername a channel to ingest. It's refreshed every
+	 * {@code refreshInterval}, like any of the {@code channels}.
+	 * @param channels the channels to ingest, each with its own refresh interval
+	 * @param refreshInterval how often to ingest a channel that doesn't say otherwise
+	 * @param maxConcurrentChannels the most channels we'll ingest at the same time
+	 * @param pollInterval how often the scheduler checks for channels that are due
+	 * @param incremental whether to stop crawling a channel's uploads at the newest video
+	 * we've already stored. The first ingest of a channel always crawls everything.
+	 * @param stages how much work each stage of an ingest may have in flight
+	 * @param statistics how to keep the counters of videos we've already stored up to
+	 * date
+	 * @param sweep whether and how to delete the rows that a channel's latest run didn't
+	 * see
+	 * @param videoBatchSize the maximum number of {@code Video}s written in a single
+	 * multi-row upsert
+	 * @param videoBatchWindow the longest we'll wait to fill a batch before writing
+	 * whatever we've got
+	 */
+	public record Batch(String channelUsername, List<ScheduledChannel> channels,
+			@DefaultValue("6h") Duration refreshInterval, @DefaultValue("4") int maxConcurrentChannels,
+			@DefaultValue("30s") Duration pollInterval, @DefaultValue("true") boolean incremental,
+			@DefaultValue Stages stages, @DefaultValue Statistics statistics, @DefaultValue Sweep sweep,
+			@DefaultValue("100") int videoBatchSize, @DefaultValue("1s") Duration videoBatchWindow) {
+	}
+
+	/**
+	 * @param playlists writing the channel's playlists
+	 * @param playlistVideos walking playlists for the IDs of their videos
+	 * @param playlistVideoWrites writing batches of playlist memberships
+	 * @param videoWrites writing batches of videos
+	 */
+	public record Stages(@DefaultValue Stage playlists, @DefaultValue Stage playlistVideos,
+			@DefaultValue Stage playlistVideoWrites, @DefaultValue Stage videoWrites) {
+	}
+
+	/**
+	 * @param concurrency the most units of work the stage may have in flight. Stages that
+	 * write should leave room in the R2DBC connection pool for the others.
+	 * @param prefetch how many results of each unit of work may wait for the next stage
+	 */
+	public record Stage(@DefaultValue("4") int concurrency, @DefaultValue("32") int prefetch) {
+	}
+
+	/**
+	 * @param refreshInterval how often to refresh the statistics of the videos that are
+	 * due
+	 * @param videosPerRefresh the most videos to refresh each time. Every {@code 50}
+	 * videos costs one unit of quota.
+	 * @param snapshots whether to keep every refreshed set of counters in
+	 * {@code yt_video_statistics_snapshots}, as a time series
+	 */
+	public record Statistics(@DefaultValue("5m") Duration refreshInterval, @DefaultValue("500") int videosPerRefresh,
+			@DefaultValue("false") boolean snapshots) {
+	}
+
+	/**
+	 * @param enabled whether to delete a channel's stale rows after each of its runs.
+	 * Otherwise they're kept, and readers tell them apart by their {@code last_seen_run}.
+	 * @param batchSize the most rows to delete in a single statement
+	 */
+	public record Sweep(@DefaultValue("false") boolean enabled, @DefaultValue("1000") int batchSize) {
+	}
+
+	/**
+	 * @param username the username that owns the channel, like {@code SpringSourceDev}
+	 * @param refreshInterval how often to ingest the channel. If unset, the
+	 * {@link Batch#refreshInterval() default} applies.
+	 */
+	public record ScheduledChannel(String username, Duration refreshInterval) {
+	}
+
+	/**
+	 * @param apiKey the YouTube Data API key
+	 * @param baseUrl the root of the YouTube Data API. Point this at a simulator to test
+	 * without spending quota.
+	 * @param hydrationConcurrency how many pages of video IDs may be hydrated into
+	 * {@code Video}s at the same time
+	 * @param quota how much of the YouTube Data API we may use
+	 * @param cache how to cache responses for conditional requests
+	 * @param resilience how to cope with slow and failing requests
+	 * @param lookups how long to remember the channels, playlists and videos we look up
+	 * @param http how to connect to the YouTube Data API
+	 */
+	public record Youtube(String apiKey, @DefaultValue("https://youtube.googleapis.com/youtube/v3") String baseUrl,
+			@DefaultValue("4") int hydrationConcurrency, @DefaultValue Quota quota, @DefaultValue Cache cache,
+			@DefaultValue Resilience resilience, @DefaultValue Lookups lookups, @DefaultValue Http http) {
+	}
+
+	/**
+	 * @param maxConnections the most connections to keep open to the API
+	 * @param pendingAcquireMaxCount the most requests that may wait for a connection
+	 * @param pendingAcquireTimeout how long a request may wait for a connection
+	 * @param maxIdleTime how long a connection may sit unused before it's closed
+	 * @param maxLifeTime how long a connection may be used at all
+	 * @param connectTimeout how long to wait for a connection to be established
+	 * @param readTimeout the longest a response may go without sending us anything
+	 * @param responseTimeout how long to wait for the response to start
+	 * @param http2 whether to multiplex requests over HTTP/2 where the server supports it
+	 * @param compress whether to ask for gzipped responses
+	 * @param maxInMemorySize the largest response body we'll hold in memory
+	 */
+	public record Http(@DefaultValue("50") int maxConnections, @DefaultValue("500") int pendingAcquireMaxCount,
+			@DefaultValue("10s") Duration pendingAcquireTimeout, @DefaultValue("60s") Duration maxIdleTime,
+			@DefaultValue("10m") Duration maxLifeTime, @DefaultValue("5s") Duration connectTimeout,
+			@DefaultValue("15s") Duration readTimeout, @DefaultValue("15s") Duration responseTimeout,
+			@DefaultValue("true") boolean http2, @DefaultValue("true") boolean compress,
+			@DefaultValue("4MB") DataSize maxInMemorySize) {
+	}
+
+	/**
+	 * @param enabled whether to remember lookups at all
+	 * @param maxChannels the most channels to remember
+	 * @param channelTtl how long to remember a channel
+	 * @param maxPlaylists the most channels whose playlists to remember
+	 * @param playlistTtl how long to remember a channel's playlists
+	 * @param maxVideos the most videos to remember
+	 * @param videoTtl how long to remember a video
+	 * @param videoBatchWindow how long to wait for other videos to look up along with one
+	 * that we don't remember
+	 */
+	public record Lookups(@DefaultValue("true") boolean enabled, @DefaultValue("1000") long maxChannels,
+			@DefaultValue("1h") Duration channelTtl, @DefaultValue("1000") long maxPlaylists,
+			@DefaultValue("10m") Duration playlistTtl, @DefaultValue("10000") long maxVideos,
+			@DefaultValue("10m") Duration videoTtl, @DefaultValue("10ms") Duration videoBatchWindow) {
+	}
+
+	/**
+	 * @param timeout how long to wait for a response before giving up on the attempt
+	 * @param timeouts overrides the {@code timeout} for particular endpoints
+	 * @param maxRetries how many times to retry a request that timed out, or that failed
+	 * in a way that might not happen again
+	 * @param minBackoff how long to wait before the first retry. The wait roughly doubles
+	 * with each retry after that, with some jitter.
+	 * @param maxBackoff the longest we'll wait before a retry. If a {@code Retry-After}
+	 * header asks for longer, we give up instead.
+	 * @param circuitBreaker when to stop calling the API altogether
+	 */
+	public record Resilience(@DefaultValue("10s") Duration timeout, Map<YoutubeEndpoint, Duration> timeouts,
+			@DefaultValue("4") int maxRetries, @DefaultValue("500ms") Duration minBackoff,
+			@DefaultValue("30s") Duration maxBackoff, @DefaultValue CircuitBreaker circuitBreaker) {
+	}
+
+	/**
+	 * @param windowSize how many of the most recent calls to judge the API by
+	 * @param failureRateThreshold the fraction of those calls that must have failed for
+	 * us to stop calling the API
+	 * @param openDuration how long to stop calling the API before trying again
+	 */
+	public record CircuitBreaker(@DefaultValue("20") int windowSize, @DefaultValue("0.5") double failureRateThreshold,
+			@DefaultValue("30s") Duration openDuration) {
+	}
+
+	/**
+	 * @param maxSize the most response bodies to remember, by their size
+	 * @param directory where to keep the responses so that they survive a restart. If
+	 * unset, they're only kept in memory.
+	 */
+	public record Cache(@DefaultValue(Cache.DEFAULT_MAX_SIZE) DataSize maxSize, Path directory) {
+
+		public static final String DEFAULT_MAX_SIZE = "64MB";
 
-	public record Batch(String channelUsername) {
 	}
 
-	public record Youtube(String apiKey) {
+	/**
+	 * @param dailyBudget the number of quota units we may spend each day
+	 * @param requestsPerSecond the most requests we'll start in any one second
+	 * @param deferWhenExhausted whether calls that would overrun the budget wait for the
+	 * quota to reset instead of failing fast
+	 */
+	public record Quota(@DefaultValue("10000") long dailyBudget, @DefaultValue("10") double requestsPerSecond,
+			@DefaultValue("false") boolean deferWhenExhausted) {
 	}
 }
@@ -0,0 +1,199 @@
+package com.joshlong.youtube.client;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the channels, playlists and videos that the {@code delegate} looked up, so
+ * that a burst of GraphQL queries about the same channel costs a single call rather than
+ * one each. The caches are bounded and expire their entries, so we never serve anything
+ * older than their time to live.
+ * <ul>
+ * <li>concurrent misses for the same key share a single call, rather than each making
+ * their own</li>
+ * <li>concurrent misses for different videos are gathered for up to
+ * {@code videoBatchWindow}, and looked up with a single
+ * {@link YoutubeClient#getVideosByIds(List) getVideosByIds}</li>
+ * <li>lookups that fail or find nothing aren't remembered</li>
+ * </ul>
+ * Everything else goes straight to the {@code delegate}.
+ *
+ * @author Josh Long
+ */
+class CachingYoutubeClient implements YoutubeClient {
+
+	/**
+	 * the most IDs that {@code videos.list} takes at once.
+	 */
+	private static final int MAX_VIDEO_IDS = 50;
+
+	/**
+	 * {@code getVideoById} may be called from many threads at once, and the sink only
+	 * takes one signal at a time.
+	 */
+	private static final Sinks.EmitFailureHandler RETRY_NON_SERIALIZED = (signal,
+			result) -> result == Sinks.EmitResult.FAIL_NON_SERIALIZED;
+
+	private final YoutubeClient delegate;
+
+	private final AsyncCache<String, Channel> channels;
+
+	private final AsyncCache<String, List<Playlist>> playlists;
+
+	private final AsyncCache<String, Video> videos;
+
+	private final Sinks.Many<VideoRequest> videoRequests = Sinks.many().unicast().onBackpressureBuffer();
+
+	private record VideoRequest(String videoId, CompletableFuture<Video> video) {
+	}
+
+	/**
+	 * @param delegate makes the calls that we can't answer from the caches
+	 * @param channels channels, keyed by username
+	 * @param playlists all the playlists of a channel, keyed by channel ID
+	 * @param videos videos, keyed by video ID
+	 * @param videoBatchWindow how long to wait for more video misses to look up with the
+	 * first
+	 */
+	CachingYoutubeClient(YoutubeClient delegate, AsyncCache<String, Channel> channels,
+			AsyncCache<String, List<Playlist>> playlists, AsyncCache<String, Video> videos, Duration videoBatchWindow) {
+		this.delegate = delegate;
+		this.channels = channels;
+		this.playlists = playlists;
+		this.videos = videos;
+		this.videoRequests//
+				.asFlux()//
+				.bufferTimeout(MAX_VIDEO_IDS, videoBatchWindow)//
+				.flatMap(this::lookUpVideos)//
+				.subscribe();
+	}
+
+	@Override
+	public Mono<Channel> getChannelByUsername(String username) {
+		return fromCache(() -> this.channels.get(username,
+				(key, executor) -> this.delegate.getChannelByUsername(key).toFuture()));
+	}
+
+	@Override
+	public Flux<Playlist> getAllPlaylistsByChannel(String channelId) {
+		return fromCache(() -> this.playlists.get(channelId,
+				(key, executor) -> this.delegate.getAllPlaylistsByChannel(key).collectList().toFuture()))//
+						.flatMapIterable(Function.identity());
+	}
+
+	@Override
+	public Mono<Video> getVideoById(String videoId) {
+		return fromCache(() -> this.videos.get(videoId, (key, executor) -> {
+			var video = new CompletableFuture<Video>();
+			this.videoRequests.emitNext(new VideoRequest(key, video), RETRY_NON_SERIALIZED);
+			return video;
+		}));
+	}
+
+	/**
+	 * Looks up a batch of the videos that missed the cache. This never fails, so that one
+	 * failed batch doesn't stop us from looking up the next.
+	 */
+	private Mono<Void> lookUpVideos(List<VideoRequest> requests) {
+		var videoIds = requests.stream().map(VideoRequest::videoId).distinct().toList();
+		return this.delegate//
+				.getVideosByIds(videoIds)//
+				.defaultIfEmpty(Map.of())//
+				.doOnNext(found -> requests.forEach(request -> request.video().complete(found.get(request.videoId()))))//
+				.doOnError(error -> requests.forEach(request -> request.video().completeExceptionally(error)))//
+				.onErrorResume(error -> Mono.empty())//
+				.then();
+	}
+
+	/**
+	 * Everyone waiting on the same key shares the same future. Each caller gets a copy of
+	 * it, so that one caller cancelling doesn't cancel the lookup for the others.
+	 */
+	private static <T> Mono<T> fromCache(Supplier<CompletableFuture<T>> lookup) {
+		return Mono.fromFuture(() -> lookup.get().copy());
+	}
+
+	@Override
+	public Flux<Video> getAllVideosByUsernameUploads(String username) {
+		return this.delegate.getAllVideosByUsernameUploads(username);
+	}
+
+	@Override
+	public Flux<Video> getAllVideosByUsernameUploads(String username, @Nullable Date publishedAfter) {
+		return this.delegate.getAllVideosByUsernameUploads(username, publishedAfter);
+	}
+
+	@Override
+	public Flux<PlaylistVideos> getVideoPagesByUsernameUploads(String username, @Nullable String pageToken,
+			@Nullable Date publishedAfter) {
+		return this.delegate.getVideoPagesByUsernameUploads(username, pageToken, publishedAfter);
+	}
+
+	@Override
+	public Mono<PlaylistVideos> getVideosByPlaylist(String playlistId, @Nullable String pageToken) {
+		return this.delegate.getVideosByPlaylist(playlistId, pageToken);
+	}
+
+	@Override
+	public Flux<Video> getAllVideosByPlaylist(String playlistId) {
+		return this.delegate.getAllVideosByPlaylist(playlistId);
+	}
+
+	@Override
+	public Flux<Video> getAllVideosByPlaylist(String playlistId, boolean ordered) {
+		return this.delegate.getAllVideosByPlaylist(playlistId, ordered);
+	}
+
+	@Override
+	public Flux<String> getAllVideoIdsByPlaylist(String playlistId) {
+		return this.delegate.getAllVideoIdsByPlaylist(playlistId);
+	}
+
+	@Override
+	public Flux<PlaylistVideoIds> getVideoIdPagesByPlaylist(String playlistId, @Nullable String pageToken) {
+		return this.delegate.getVideoIdPagesByPlaylist(playlistId, pageToken);
+	}
+
+	@Override
+	public Mono<ChannelPlaylists> getPlaylistsByChannel(String channelId, String nextPageToken) {
+		return this.delegate.getPlaylistsByChannel(channelId, nextPageToken);
+	}
+
+	@Override
+	public Mono<Map<String, Video>> getVideosByIds(List<String> videoIds) {
+		return this.delegate.getVideosByIds(videoIds);
+	}
+
+	@Override
+	public Mono<Map<String, VideoStatistics>> getVideoStatisticsByIds(List<String> videoIds) {
+		return this.delegate.getVideoStatisticsByIds(videoIds);
+	}
+
+	@Override
+	public Mono<ChannelVideos> getVideosByChannel(String channelId, String pageToken) {
+		return this.delegate.getVideosByChannel(channelId, pageToken);
+	}
+
+	@Override
+	public Flux<Video> getAllVideosByChannel(String channelId) {
+		return this.delegate.getAllVideosByChannel(channelId);
+	}
+
+	@Override
+	public Flux<Video> searchVideosByChannel(String channelId, @Nullable String query, @Nullable Date publishedAfter,
+			@Nullable Date publishedBefore) {
+		return this.delegate.searchVideosByChannel(channelId, query, publishedAfter, publishedBefore);
+	}
+
+}
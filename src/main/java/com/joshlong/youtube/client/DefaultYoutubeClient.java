@@ -1,252 +1,413 @@
 package com.joshlong.youtube.client;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import lombok.SneakyThrows;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.Nullable;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.DefaultUriBuilderFactory;
+import org.springframework.web.util.UriBuilderFactory;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
 
-import java.net.URL;
-import java.time.Instant;
+import java.io.IOException;
 import java.util.*;
-
-import static com.joshlong.youtube.client.DefaultYoutubeClient.JsonFormattingUtils.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Slf4j
 class DefaultYoutubeClient implements YoutubeClient {
 
+	/**
+	 * the most results (or IDs) the YouTube API will accept or return in a single request
+	 */
+	static final int MAX_RESULTS = 50;
+
+	/**
+	 * how many pages the streams of all the videos (or playlists) ask for ahead of the
+	 * one whose items they're emitting. Left to its default, {@code flatMapIterable}
+	 * would ask for 256 pages, and so walk and hold most of a large channel no matter how
+	 * slowly its subscriber consumes it. With one, the page chain advances only as the
+	 * subscriber asks for more, and each page can be collected as soon as its last item
+	 * is emitted. The hydration of the pages is still pipelined, up to
+	 * {@link #hydrationConcurrency} pages ahead.
+	 */
+	private static final int PAGE_PREFETCH = 1;
+
 	private final WebClient http;
 
 	private final String apiKey;
 
+	private final String baseUrl;
+
+	private final int hydrationConcurrency;
+
+	private final YoutubeQuota quota;
+
+	private final YoutubeResponseCache cache;
+
+	private final YoutubeResilience resilience;
+
+	private final MeterRegistry registry;
+
+	private final UriBuilderFactory uriBuilderFactory = new DefaultUriBuilderFactory();
+
+	/**
+	 * the ID of each channel's uploads playlist, keyed by the channel's ID
+	 */
+	private final AsyncCache<String, String> uploadsPlaylistIds;
+
+	/**
+	 * adds up the quota units spent on a single call to the client, across all its
+	 * requests and their retries.
+	 */
+	private record CallCost(String call, AtomicLong units) {
+	}
+
 	@Override
 	public Mono<Channel> getChannelByUsername(String username) {
-		return findChannel("&forUsername={username}", Map.of("username", username));
+		return reported("getChannelByUsername", findChannel("&forUsername={username}", Map.of("username", username)));
 	}
 
 	/**
-	 *
-	 * todo we need to decompose this a little: to get a channel for a username. a method
-	 * to get uploads playlist for a channel. to get all videos from a playlist.
-	 *
-	 * This returns all the videos for a given channel
+	 * Walks the whole of the channel's uploads playlist, a page at a time as the
+	 * subscriber asks for more, by way of
+	 * {@link #getVideoPagesByUsernameUploads(String, String, Date)}.
 	 * @param username the username whose channel content we want to find
-	 * @return all the videos
+	 * @return all the videos, newest first
 	 */
 	@Override
 	public Flux<Video> getAllVideosByUsernameUploads(String username) {
+		return reported("getAllVideosByUsernameUploads", getAllVideosByUsernameUploads(username, null));
+	}
+
+	@Override
+	public Flux<Video> getAllVideosByUsernameUploads(String username, @Nullable Date publishedAfter) {
+		return reported("getAllVideosByUsernameUploads", getVideoPagesByUsernameUploads(username, null, publishedAfter)//
+				.flatMapIterable(PlaylistVideos::videos, PAGE_PREFETCH));
+	}
+
+	@Override
+	public Flux<PlaylistVideos> getVideoPagesByUsernameUploads(String username, @Nullable String pageToken,
+			@Nullable Date publishedAfter) {
 		//
 		// https://stackoverflow.com/questions/18953499/youtube-api-to-fetch-all-videos-on-a-channel/27872244#27872244
 		// this solution has a low quota cost and seems to truly return <em>all</em> the
 		// videos
 		//
-		var playlistForChannel = "https://www.googleapis.com/youtube/v3/channels?part=contentDetails&forUsername={user}&key={key}";
-		return http//
-				.get()//
-				.uri(playlistForChannel, Map.of("user", username, "key", this.apiKey))//
-				.retrieve()//
-				.bodyToFlux(JsonNode.class)//
-				.flatMap(jsonNode -> {
-					var uploadsPlaylistId = jsonNode//
-							.get("items")//
-							.get(0).get("contentDetails")//
-							.get("relatedPlaylists")//
-							.get("uploads")//
-							.textValue();
-					return getAllVideosByPlaylist(uploadsPlaylistId);
-				});
-	}
-
-	@SneakyThrows
-	private Video buildVideoFromJsonNode(JsonNode item) {
-		var id = item.get("id").textValue();
-		var snippet = item.get("snippet");
-		var channelId = snippet.get("channelId").textValue();
-		var publishedAt = buildDateFrom(snippet.get("publishedAt").textValue());
-		var description = snippet.get("description").textValue();
-		var title = snippet.get("title").textValue();
-		var thumbnailUrl = new URL(snippet.get("thumbnails").get("default").get("url").textValue());
-		var tags = jsonNodeOrNull(snippet, "tags");
-		var statistics = item.get("statistics");
-		var viewCount = numberOrZero(statistics, "viewCount");
-		var likeCount = numberOrZero(statistics, "likeCount");
-		var favCount = numberOrZero(statistics, "favoriteCount");
-		var commentCount = numberOrZero(statistics, "commentCount");
-		var categoryId = Integer.parseInt(snippet.get("categoryId").textValue());
-		var tagsList = new ArrayList<String>();
-		if (null != tags)
-			for (var tag : tags)
-				tagsList.add(tag.textValue());
-		return new Video(id, title, description, publishedAt, thumbnailUrl, tagsList, categoryId, viewCount, likeCount,
-				favCount, commentCount, channelId);
+		var playlistForChannel = this.baseUrl + "/channels?part=contentDetails&forUsername={user}&key={key}";
+		return reported("getVideoPagesByUsernameUploads",
+				fetch(YoutubeEndpoint.CHANNELS, playlistForChannel, Map.of("user", username, "key", this.apiKey),
+						YoutubeJsonDecoder::channels)//
+								.flatMapMany(page -> {
+									var uploadsPlaylistId = page.items().get(0).uploadsPlaylistId();
+									return getVideoPagesByPlaylist(uploadsPlaylistId, pageToken, true, publishedAfter);
+								}));
 	}
 
+	/**
+	 * The YouTube API accepts at most {@value #MAX_RESULTS} IDs per {@code videos}
+	 * request, so larger lists are split into chunks that are fetched concurrently and
+	 * then merged.
+	 */
 	@Override
 	public Mono<Map<String, Video>> getVideosByIds(List<String> videoIds) {
+		var chunks = new ArrayList<List<String>>();
+		for (var i = 0; i < videoIds.size(); i += MAX_RESULTS)
+			chunks.add(videoIds.subList(i, Math.min(i + MAX_RESULTS, videoIds.size())));
+		return reported("getVideosByIds", Flux.fromIterable(chunks)//
+				.flatMapSequential(this::getVideosByIdsChunk, this.hydrationConcurrency)//
+				.collectMap(Video::videoId));
+	}
+
+	private Flux<Video> getVideosByIdsChunk(List<String> videoIds) {
 		var joinedIds = String.join(",", videoIds);
-		var url = "https://youtube.googleapis.com/youtube/v3/videos?part={parts}&id={ids}&key={key}";
-		return this.http.get()//
-				.uri(url, Map.of("ids", joinedIds, "key", this.apiKey, "parts", "snippet,statistics"))//
-				.retrieve()//
-				.bodyToFlux(JsonNode.class)//
-				.flatMap(jn -> {
-					var items = jn.get("items");
-					var list = new ArrayList<Video>();
-					for (var item : items)
-						list.add(buildVideoFromJsonNode(item));
-					return Flux.fromIterable(list);
-				})//
-				.collectMap(Video::videoId);
+		var url = this.baseUrl + "/videos?part={parts}&id={ids}&key={key}";
+		return fetch(YoutubeEndpoint.VIDEOS, url,
+				Map.of("ids", joinedIds, "key", this.apiKey, "parts", "snippet,statistics"), YoutubeJsonDecoder::videos)//
+						.flatMapIterable(YoutubeJsonDecoder.Page::items);
+	}
+
+	/**
+	 * Asks only for the {@code statistics} part, which is a fraction of the size of a
+	 * whole {@code videos} resource. Like {@link #getVideosByIds(List)}, the IDs are
+	 * fetched {@value #MAX_RESULTS} at a time.
+	 */
+	@Override
+	public Mono<Map<String, VideoStatistics>> getVideoStatisticsByIds(List<String> videoIds) {
+		var url = this.baseUrl + "/videos?part=statistics&id={ids}&key={key}";
+		var chunks = new ArrayList<List<String>>();
+		for (var i = 0; i < videoIds.size(); i += MAX_RESULTS)
+			chunks.add(videoIds.subList(i, Math.min(i + MAX_RESULTS, videoIds.size())));
+		return reported("getVideoStatisticsByIds", Flux.fromIterable(chunks)//
+				.flatMapSequential(chunk -> fetch(YoutubeEndpoint.VIDEOS, url,
+						Map.of("ids", String.join(",", chunk), "key", this.apiKey),
+						YoutubeJsonDecoder::videoStatistics), this.hydrationConcurrency)//
+				.flatMapIterable(YoutubeJsonDecoder.Page::items)//
+				.collectMap(VideoStatistics::videoId));
 	}
 
 	@Override
 	public Mono<Video> getVideoById(String videoId) {
 		var singleResult = this.getVideosByIds(List.of(videoId));
-		return singleResult//
+		return reported("getVideoById", singleResult//
 				.doOnNext(map -> Assert.isTrue(map.size() == 1, () -> "there should be exactly one result"))//
-				.map(m -> m.get(videoId));
+				.map(m -> m.get(videoId)));
 	}
 
-	@SneakyThrows
-	private Playlist buildPlaylistForJsonNode(JsonNode jsonNode) {
-		var itemCount = jsonNode.get("contentDetails").get("itemCount").intValue();
-		var playlistId = jsonNode.get("id").textValue();
-		var snippet = jsonNode.get("snippet");
-		var title = snippet.get("title").textValue();
-		var description = snippet.get("description").textValue();
-		var publishedAt = buildDateFrom(snippet.get("publishedAt").textValue());
-		var channelId = snippet.get("channelId").textValue();
-		return new Playlist(playlistId, channelId, publishedAt, title, description, itemCount);
+	@Override
+	public Flux<Video> getAllVideosByPlaylist(String playlistId) {
+		return reported("getAllVideosByPlaylist", getAllVideosByPlaylist(playlistId, true));
 	}
 
+	/**
+	 * Pipelines the pagination: one stage walks the {@code nextPageToken} chain of
+	 * {@code playlistItems} pages, which only carry video IDs, while a second stage
+	 * hydrates those IDs through {@code videos} requests, up to
+	 * {@link #hydrationConcurrency} pages at a time.
+	 */
 	@Override
-	public Flux<Video> getAllVideosByPlaylist(String playlistId) {
-		return this.getVideosByPlaylist(playlistId, null)//
-				.expand(playlistVideos -> {//
-					var nextPageToken = playlistVideos.nextPageToken();
-					if (!StringUtils.hasText(nextPageToken)) {
+	public Flux<Video> getAllVideosByPlaylist(String playlistId, boolean ordered) {
+		return reported("getAllVideosByPlaylist", getVideosByPlaylist(playlistId, ordered, null));
+	}
+
+	/**
+	 * Walks the {@code playlistItems} pages without hydrating any of the IDs, which costs
+	 * one request per {@value #MAX_RESULTS} videos rather than two.
+	 */
+	@Override
+	public Flux<String> getAllVideoIdsByPlaylist(String playlistId) {
+		return reported("getAllVideoIdsByPlaylist", getVideoIdPagesByPlaylist(playlistId, null)//
+				.flatMapIterable(PlaylistVideoIds::videoIds, PAGE_PREFETCH));
+	}
+
+	@Override
+	public Flux<PlaylistVideoIds> getVideoIdPagesByPlaylist(String playlistId, @Nullable String pageToken) {
+		return reported("getVideoIdPagesByPlaylist", getPlaylistItemPages(playlistId, pageToken, null)//
+				.map(page -> new PlaylistVideoIds(playlistId,
+						page.items().stream().map(YoutubeJsonDecoder.PlaylistItem::videoId).toList(),
+						page.nextPageToken())));
+	}
+
+	private Flux<Video> getVideosByPlaylist(String playlistId, boolean ordered, @Nullable Date publishedAfter) {
+		return getVideoPagesByPlaylist(playlistId, null, ordered, publishedAfter)//
+				.flatMapIterable(PlaylistVideos::videos, PAGE_PREFETCH);
+	}
+
+	/**
+	 * If {@code publishedAfter} is given, paging stops at the first page that holds a
+	 * video published at or before it, and only the newer videos are hydrated. That page
+	 * is the last, so it has no {@code nextPageToken}. This relies on the playlist being
+	 * sorted newest first, as uploads playlists are.
+	 */
+	private Flux<PlaylistVideos> getVideoPagesByPlaylist(String playlistId, @Nullable String pageToken, boolean ordered,
+			@Nullable Date publishedAfter) {
+		var pages = getPlaylistItemPages(playlistId, pageToken, publishedAfter);
+		Function<YoutubeJsonDecoder.Page<YoutubeJsonDecoder.PlaylistItem>, Mono<PlaylistVideos>> hydrate = page -> {
+			var videoIds = page.items().stream()//
+					.filter(item -> publishedAfter == null || item.videoPublishedAt() == null
+							|| item.videoPublishedAt().after(publishedAfter))//
+					.map(YoutubeJsonDecoder.PlaylistItem::videoId)//
+					.toList();
+			var nextPageToken = reached(page, publishedAfter) ? null : page.nextPageToken();
+			return hydrate(videoIds)//
+					.collectList()//
+					.map(videos -> new PlaylistVideos(playlistId, videos, nextPageToken, page.previousPageToken(),
+							page.resultsPerPage(), page.totalResults()));
+		};
+		return ordered ? pages.flatMapSequential(hydrate, this.hydrationConcurrency)
+				: pages.flatMap(hydrate, this.hydrationConcurrency);
+	}
+
+	/**
+	 * Follows the {@code nextPageToken} chain from {@code pageToken}, or from the first
+	 * page if there isn't one, until the last page or the page that
+	 * {@link #reached(YoutubeJsonDecoder.Page, Date) reaches} {@code publishedAfter}.
+	 */
+	private Flux<YoutubeJsonDecoder.Page<YoutubeJsonDecoder.PlaylistItem>> getPlaylistItemPages(String playlistId,
+			@Nullable String pageToken, @Nullable Date publishedAfter) {
+		return this.getPlaylistItemsPage(playlistId, pageToken)//
+				.expand(page -> {//
+					var nextPageToken = page.nextPageToken();
+					if (!StringUtils.hasText(nextPageToken) || reached(page, publishedAfter)) {
 						return Mono.empty();
 					}
 					else {
-						return getVideosByPlaylist(playlistId, nextPageToken);
+						return getPlaylistItemsPage(playlistId, nextPageToken);
 					}
-				})//
-				.flatMapIterable(PlaylistVideos::videos);
+				});
+	}
+
+	private static boolean reached(YoutubeJsonDecoder.Page<YoutubeJsonDecoder.PlaylistItem> page,
+			@Nullable Date publishedAfter) {
+		return publishedAfter != null && page.items().stream()
+				.anyMatch(item -> item.videoPublishedAt() != null && !item.videoPublishedAt().after(publishedAfter));
 	}
 
 	@Override
 	public Mono<PlaylistVideos> getVideosByPlaylist(String playlistId, String pageToken) {
+		return reported("getVideosByPlaylist", this.getPlaylistItemsPage(playlistId, pageToken)//
+				.flatMap(page -> hydrate(page.items().stream().map(YoutubeJsonDecoder.PlaylistItem::videoId).toList())//
+						.collectList()//
+						.map(videos -> new PlaylistVideos(playlistId, videos, page.nextPageToken(),
+								page.previousPageToken(), page.resultsPerPage(), page.totalResults()))));
+	}
 
-		var url = "https://youtube.googleapis.com/youtube/v3/playlistItems?part=snippet,contentDetails&key={key}&maxResults=500&playlistId={playlistId}"
+	/**
+	 * A single page of {@code playlistItems}, before the videos have been hydrated.
+	 */
+	private Mono<YoutubeJsonDecoder.Page<YoutubeJsonDecoder.PlaylistItem>> getPlaylistItemsPage(String playlistId,
+			String pageToken) {
+		var url = this.baseUrl + "/playlistItems?part=contentDetails&key={key}&maxResults={max}&playlistId={playlistId}"
 				+ (StringUtils.hasText(pageToken) ? "&pageToken={pt}" : "");
-		return this.http.get()//
-				.uri(url, Map.of("key", this.apiKey, "pt", pageToken + "", "playlistId", playlistId))//
-				.retrieve()//
-				.bodyToFlux(JsonNode.class)//
-				.flatMap(jsonNode -> {//
-					var items = jsonNode.get("items");
-					var list = new ArrayList<String>();
-					for (var item : items) {
-						list.add(item.get("contentDetails").get("videoId").textValue());
-					}
-					return getVideosByIds(list)//
-							.map(Map::values)//
-							.map(videoCollection -> {
-								var pageInfo = jsonNode.get("pageInfo");
-								var resultsPerPage = pageInfo.get("resultsPerPage").intValue();
-								var totalResults = pageInfo.get("totalResults").intValue();
-								var nextPageToken = stringOrNull(jsonNode, "nextPageToken");
-								var prevPageToken = stringOrNull(jsonNode, "prevPageToken");
-								return new PlaylistVideos(playlistId, videoCollection, nextPageToken, prevPageToken,
-										resultsPerPage, totalResults);
-							});
+		return fetch(YoutubeEndpoint.PLAYLIST_ITEMS, url,
+				Map.of("key", this.apiKey, "pt", pageToken + "", "playlistId", playlistId, "max", MAX_RESULTS),
+				YoutubeJsonDecoder::playlistItems);
+	}
 
-				})//
-				.singleOrEmpty();
+	/**
+	 * Resolves the IDs to {@link Video videos}, emitting them in the order of the IDs
+	 * given, and skipping any that YouTube no longer knows about.
+	 */
+	private Flux<Video> hydrate(List<String> videoIds) {
+		if (videoIds.isEmpty())
+			return Flux.empty();
+		return getVideosByIds(videoIds)//
+				.flatMapIterable(videos -> videoIds.stream().map(videos::get).filter(Objects::nonNull).toList());
 	}
 
+	/**
+	 * Streams the channel's uploads playlist, which holds the same videos, newest first,
+	 * as a {@code search} by date, for 1 quota unit per {@value #MAX_RESULTS} videos
+	 * rather than 100 units per 20.
+	 */
 	@Override
 	public Flux<Video> getAllVideosByChannel(String channelId) {
-		return this.getVideosByChannel(channelId, null)//
-				.expand(playlistVideos -> {//
-					var nextPageToken = playlistVideos.nextPageToken();
+		return reported("getAllVideosByChannel", getUploadsPlaylistId(channelId)//
+				.flatMapMany(uploadsPlaylistId -> getVideosByPlaylist(uploadsPlaylistId, true, null)));
+	}
+
+	/**
+	 * Pages through the channel's uploads playlist, so the page tokens are those of
+	 * {@code playlistItems}, and each page holds up to {@value #MAX_RESULTS} videos.
+	 */
+	@Override
+	public Mono<ChannelVideos> getVideosByChannel(String channelId, String pageToken) {
+		return reported("getVideosByChannel", getUploadsPlaylistId(channelId)//
+				.flatMap(uploadsPlaylistId -> getVideosByPlaylist(uploadsPlaylistId, pageToken))//
+				.map(page -> new ChannelVideos(channelId, page.videos(), page.nextPageToken(),
+						page.previousPageToken())));
+	}
+
+	/**
+	 * Pipelined like {@link #getAllVideosByPlaylist(String, boolean)}: one stage walks
+	 * the {@code search} pages, which only carry video IDs, while a second hydrates up to
+	 * {@link #hydrationConcurrency} of them at a time.
+	 */
+	@Override
+	public Flux<Video> searchVideosByChannel(String channelId, @Nullable String query, @Nullable Date publishedAfter,
+			@Nullable Date publishedBefore) {
+		var search = new LinkedHashMap<String, String>();
+		if (StringUtils.hasText(query))
+			search.put("q", query);
+		if (publishedAfter != null)
+			search.put("publishedAfter", publishedAfter.toInstant().toString());
+		if (publishedBefore != null)
+			search.put("publishedBefore", publishedBefore.toInstant().toString());
+		return reported("searchVideosByChannel", getSearchPage(channelId, search, null)//
+				.expand(page -> {//
+					var nextPageToken = page.nextPageToken();
 					if (!StringUtils.hasText(nextPageToken)) {
 						return Mono.empty();
 					}
 					else {
-						return getVideosByChannel(channelId, nextPageToken);
+						return getSearchPage(channelId, search, nextPageToken);
 					}
 				})//
-				.flatMapIterable(ChannelVideos::videos);
+				.flatMapSequential(page -> hydrate(page.items()).collectList(), this.hydrationConcurrency,
+						PAGE_PREFETCH)//
+				.flatMapIterable(Function.identity(), PAGE_PREFETCH));
 	}
 
-	@Override
-	public Mono<ChannelVideos> getVideosByChannel(String channelId, String pageToken) {
-		var url = "https://www.googleapis.com/youtube/v3/search?channelId={channelId}"
-				+ "&order=date&part=snippet&type=video&maxResults=20&key={key}"
-				+ (StringUtils.hasText(pageToken) ? "&pageToken={pt}" : "");
-		return this.http.get().uri(url, Map.of("key", this.apiKey, "channelId", channelId, "pt", "" + pageToken))
-				.retrieve().bodyToFlux(JsonNode.class).flatMap(jn -> {
-					var nextPageToken = stringOrNull(jn, "nextPageToken");
-					var prevPageToken = stringOrNull(jn, "prevPageToken");
-					var items = jsonNodeOrNull(jn, "items");
-					Assert.isTrue(items != null, () -> "there should be 1 or more videos returned!");
-
-					var results = new ArrayList<String>();
-					for (var video : items) {
-						results.add(video.get("id").get("videoId").textValue());
-					}
-					log.info("there are " + results.size() + " results");
-					var videosByIds = this.getVideosByIds(results);
-					return videosByIds
-							.map(map -> new ChannelVideos(channelId, map.values(), nextPageToken, prevPageToken));
-				})//
-				.singleOrEmpty();
+	/**
+	 * A single page of the channel's videos that match the {@code search}, newest first,
+	 * before they've been hydrated. Only the IDs are asked for, since a {@code search}
+	 * costs the same whatever the parts, and the videos are hydrated anyway.
+	 */
+	private Mono<YoutubeJsonDecoder.Page<String>> getSearchPage(String channelId, Map<String, String> search,
+			@Nullable String pageToken) {
+		var url = new StringBuilder(this.baseUrl + "/search?channelId={channelId}"
+				+ "&order=date&part=id&type=video&maxResults={max}&key={key}");
+		var uriVariables = new HashMap<String, Object>(search);
+		uriVariables.putAll(Map.of("key", this.apiKey, "channelId", channelId, "max", MAX_RESULTS));
+		search.keySet()
+				.forEach(parameter -> url.append("&").append(parameter).append("={").append(parameter).append("}"));
+		if (StringUtils.hasText(pageToken)) {
+			url.append("&pageToken={pt}");
+			uriVariables.put("pt", pageToken);
+		}
+		return fetch(YoutubeEndpoint.SEARCH, url.toString(), uriVariables, YoutubeJsonDecoder::searchResultVideoIds);
+	}
+
+	/**
+	 * A channel's uploads playlist never changes, so it's looked up once, for 1 quota
+	 * unit, and remembered. The first caller's context goes with the lookup, so that it
+	 * shows up in that call's {@link #reported(String, Mono) report}. There's no uploads
+	 * playlist for a channel that doesn't exist, and the cache doesn't keep the empty
+	 * result, so a channel that's created later is found.
+	 */
+	private Mono<String> getUploadsPlaylistId(String channelId) {
+		var url = this.baseUrl + "/channels?part=contentDetails&id={channelId}&key={key}";
+		return Mono.deferContextual(context -> Mono.fromFuture(this.uploadsPlaylistIds//
+				.get(channelId,
+						(key, executor) -> fetch(YoutubeEndpoint.CHANNELS, url,
+								Map.of("channelId", key, "key", this.apiKey), YoutubeJsonDecoder::channels)//
+										.filter(page -> !page.items().isEmpty())//
+										.map(page -> page.items().get(0).uploadsPlaylistId())//
+										.contextWrite(context)//
+										.toFuture())//
+				.copy()));
 	}
 
 	private Mono<Channel> findChannel(String urlExtension, Map<String, String> params) {
-		var uri = "https://youtube.googleapis.com/youtube/v3/channels?part=snippet,contentDetails&key={key}"
-				+ urlExtension;
+		var uri = this.baseUrl + "/channels?part=snippet,contentDetails&key={key}" + urlExtension;
 		var uriVariables = new HashMap<String, String>();
 		uriVariables.put("key", this.apiKey);
 		uriVariables.putAll(params);
-		return this.http//
-				.get()//
-				.uri(uri, uriVariables)//
-				.retrieve()//
-				.bodyToFlux(JsonNode.class)//
-				.map(this::buildChannelFromJsonNode)///
-				.singleOrEmpty();
+		return fetch(YoutubeEndpoint.CHANNELS, uri, uriVariables, YoutubeJsonDecoder::channels)//
+				.map(page -> {
+					Assert.state(!page.items().isEmpty(),
+							"we should never reach this point! there was no Channel found");
+					return page.items().get(0).channel();
+				});
 	}
 
 	@Override
 	public Mono<ChannelPlaylists> getPlaylistsByChannel(String channelId, String pageToken) {
-		var url = "https://youtube.googleapis.com/youtube/v3/playlists?part=id,status,snippet,contentDetails&channelId={channelId}&maxResults=20&key={key}"
+		var url = this.baseUrl
+				+ "/playlists?part=id,status,snippet,contentDetails&channelId={channelId}&maxResults={max}&key={key}"
 				+ (StringUtils.hasText(pageToken) ? "&pageToken={pt}" : "");
-		return this.http.get()//
-				.uri(url, Map.of("channelId", channelId, "key", this.apiKey, "pt", "" + pageToken))//
-				.retrieve()//
-				.bodyToFlux(JsonNode.class)//
-				.map(jsonNode -> {
-					var tr = jsonNode.get("pageInfo").get("totalResults").intValue();
-					var nextPageToken = stringOrNull(jsonNode, "nextPageToken");
-					var prevPageToken = stringOrNull(jsonNode, "prevPageToken");
-					var list = new ArrayList<Playlist>();
-					var items = jsonNode.get("items");
-					for (var i : items)
-						list.add(buildPlaylistForJsonNode(i));
-					return new ChannelPlaylists(channelId, list, tr, prevPageToken, nextPageToken);
-				})//
-				.singleOrEmpty();
-
+		return reported("getPlaylistsByChannel",
+				fetch(YoutubeEndpoint.PLAYLISTS, url,
+						Map.of("channelId", channelId, "key", this.apiKey, "pt", "" + pageToken, "max", MAX_RESULTS),
+						YoutubeJsonDecoder::playlists)//
+								.map(page -> new ChannelPlaylists(channelId, page.items(), page.totalResults(),
+										page.previousPageToken(), page.nextPageToken())));
 	}
 
 	@Override
 	public Flux<Playlist> getAllPlaylistsByChannel(String channelId) {
-		return this.getPlaylistsByChannel(channelId, null)//
+		return reported("getAllPlaylistsByChannel", this.getPlaylistsByChannel(channelId, null)//
 				.expand(channelPlaylists -> {//
 					var nextPageToken = channelPlaylists.nextPageToken();
 					if (!StringUtils.hasText(nextPageToken)) {
@@ -256,50 +417,174 @@ class DefaultYoutubeClient implements YoutubeClient {
 						return getPlaylistsByChannel(channelId, nextPageToken);
 					}
 				})//
-				.flatMapIterable(ChannelPlaylists::playlists);
+				.flatMapIterable(ChannelPlaylists::playlists, PAGE_PREFETCH));
 	}
 
-	@SneakyThrows
-	private Channel buildChannelFromJsonNode(JsonNode jsonNode) {
-		var items = jsonNode.get("items");
-		for (var i : items) {
-			Assert.isTrue(i.get("kind").textValue().equals("youtube#channel"), "the item is a YouTube channel");
-			var id = i.get("id").textValue();
-			var title = i.get("snippet").get("title").textValue();
-			var description = i.get("snippet").get("description").textValue();
-			var publishedAt = i.get("snippet").get("publishedAt").textValue();
-
-			return new Channel(id, title, description, buildDateFrom(publishedAt));
-		}
-		throw new RuntimeException("we should never reach this point! there was no Channel found");
+	/**
+	 * Every request to the YouTube API goes through here, so that it's charged against
+	 * the {@link YoutubeQuota quota} before it leaves the building. If we've seen the URI
+	 * before, the request is made conditional on the cached {@code ETag}, and a
+	 * {@code 304 Not Modified} answer is served from the {@link YoutubeResponseCache
+	 * cache}. Response bodies are decoded straight into records by a streaming
+	 * {@link YoutubeJsonDecoder.Reader reader}. Attempts that fail or time out are
+	 * retried, and charged again, by the {@link YoutubeResilience resilience} layer.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> Mono<T> fetch(YoutubeEndpoint endpoint, String uriTemplate, Map<String, ?> uriVariables,
+			YoutubeJsonDecoder.Reader<T> reader) {
+		var uri = this.uriBuilderFactory.expand(uriTemplate, uriVariables);
+		var key = uri.toString();
+		return this.cache//
+				.get(key, reader)//
+				.map(Optional::of)//
+				.defaultIfEmpty(Optional.empty())//
+				.flatMap(cached -> this.resilience.call(endpoint, charge(endpoint), timed(endpoint, status -> this.http//
+						.get()//
+						.uri(uri)//
+						.headers(headers -> cached.ifPresent(entry -> headers.setIfNoneMatch(entry.etag())))//
+						.exchangeToMono(response -> {
+							status.set(response.rawStatusCode());
+							if (response.statusCode() == HttpStatus.NOT_MODIFIED && cached.isPresent())
+								return response.releaseBody().thenReturn((T) cached.get().value());
+							if (response.statusCode().isError())
+								return response.createException().flatMap(Mono::error);
+							var etag = response.headers().asHttpHeaders().getETag();
+							// bounded by the codecs' maxInMemorySize
+							return response.bodyToMono(byte[].class).map(body -> {
+								responseSize(endpoint).record(body.length);
+								try {
+									var value = YoutubeJsonDecoder.decode(body, reader);
+									if (StringUtils.hasText(etag))
+										this.cache.put(key, etag, body);
+									return value;
+								}
+								catch (IOException e) {
+									throw new IllegalStateException("couldn't decode the response from " + uriTemplate,
+											e);
+								}
+							});
+						}))));
 	}
 
-	static class JsonFormattingUtils {
+	/**
+	 * Acquires the quota for an attempt at a request, and adds its cost to the
+	 * {@link CallCost cost} of the call that it's a part of.
+	 */
+	private Mono<Void> charge(YoutubeEndpoint endpoint) {
+		return this.quota//
+				.acquire(endpoint)//
+				.then(Mono.deferContextual(context -> {
+					context.<CallCost>getOrEmpty(CallCost.class)
+							.ifPresent(cost -> cost.units().addAndGet(endpoint.cost()));
+					return Mono.empty();
+				}));
+	}
 
-		static int numberOrZero(JsonNode node, String propertyName) {
-			var json = jsonNodeOrNull(node, propertyName);
-			return json != null ? Integer.parseInt(json.textValue()) : 0;
+	/**
+	 * Reports what a call to the client cost against the quota once it's done, in
+	 * {@code youtube.client.call.cost}, tagged with the call, and at {@code debug}. A
+	 * call made as part of another is reported as part of that one.
+	 */
+	private <T> Flux<T> reported(String call, Flux<T> work) {
+		return Flux.deferContextual(context -> {
+			if (context.hasKey(CallCost.class))
+				return work;
+			var cost = new CallCost(call, new AtomicLong());
+			return work//
+					.contextWrite(Context.of(CallCost.class, cost))//
+					.doFinally(signal -> report(cost));
+		});
+	}
 
-		}
+	private <T> Mono<T> reported(String call, Mono<T> work) {
+		return Mono.deferContextual(context -> {
+			if (context.hasKey(CallCost.class))
+				return work;
+			var cost = new CallCost(call, new AtomicLong());
+			return work//
+					.contextWrite(Context.of(CallCost.class, cost))//
+					.doFinally(signal -> report(cost));
+		});
+	}
 
-		static Date buildDateFrom(String isoDate) {
-			return Date.from(Instant.parse(isoDate));
-		}
+	private void report(CallCost cost) {
+		var units = cost.units().get();
+		DistributionSummary.builder("youtube.client.call.cost")//
+				.description("the YouTube Data API quota units that each call to the client cost")//
+				.baseUnit("units")//
+				.tag("call", cost.call())//
+				.register(this.registry)//
+				.record(units);
+		log.debug(cost.call() + " cost " + units + " quota units");
+	}
 
-		static JsonNode jsonNodeOrNull(JsonNode node, String propertyName) {
-			return node.has(propertyName) ? node.get(propertyName) : null;
-		}
+	/**
+	 * Times each attempt at a request, tagged with the endpoint, the status of the
+	 * response, if there was one, and the outcome. An attempt that times out is
+	 * cancelled, so it's tagged {@code CANCELLED}.
+	 * @param attempt makes the request, and sets the status of the response
+	 */
+	private <T> Mono<T> timed(YoutubeEndpoint endpoint, Function<AtomicInteger, Mono<T>> attempt) {
+		return Mono.defer(() -> {
+			var sample = Timer.start(this.registry);
+			var status = new AtomicInteger();
+			Consumer<String> stop = outcome -> sample.stop(Timer.builder("youtube.client.requests")//
+					.description("how long each attempt at a request to the YouTube Data API took")//
+					.tag("endpoint", endpoint.name().toLowerCase())//
+					.tag("status", status.get() == 0 ? "NONE" : Integer.toString(status.get()))//
+					.tag("outcome", outcome)//
+					.publishPercentileHistogram()//
+					.register(this.registry));
+			return attempt.apply(status)//
+					.doOnSuccess(value -> stop.accept("SUCCESS"))//
+					.doOnError(error -> stop.accept(outcome(status.get())))//
+					.doOnCancel(() -> stop.accept("CANCELLED"));
+		});
+	}
 
-		static String stringOrNull(JsonNode jsonNode, String propertyName) {
-			var res = jsonNodeOrNull(jsonNode, propertyName);
-			return res != null ? res.textValue() : null;
-		}
+	/**
+	 * a failed attempt without an error status never got a response, or couldn't read it.
+	 */
+	private static String outcome(int status) {
+		if (status >= 500)
+			return "SERVER_ERROR";
+		if (status >= 400)
+			return "CLIENT_ERROR";
+		return "ERROR";
+	}
 
+	private DistributionSummary responseSize(YoutubeEndpoint endpoint) {
+		return DistributionSummary.builder("youtube.client.response.size")//
+				.description("the size of each response body from the YouTube Data API")//
+				.baseUnit("bytes")//
+				.tag("endpoint", endpoint.name().toLowerCase())//
+				.register(this.registry);
 	}
 
-	DefaultYoutubeClient(WebClient http, String apiKey) {
+	/**
+	 * @param http the HTTP client
+	 * @param apiKey the YouTube Data API key
+	 * @param baseUrl the root of the YouTube Data API, e.g.
+	 * {@code https://youtube.googleapis.com/youtube/v3}
+	 * @param hydrationConcurrency how many {@code videos} requests may be in flight for a
+	 * single stream of videos
+	 * @param quota the budget against which each request is charged
+	 * @param cache remembers responses for conditional requests
+	 * @param resilience times out and retries requests
+	 * @param registry where to publish the timing, outcome and size of each request
+	 */
+	DefaultYoutubeClient(WebClient http, String apiKey, String baseUrl, int hydrationConcurrency, YoutubeQuota quota,
+			YoutubeResponseCache cache, YoutubeResilience resilience, MeterRegistry registry) {
 		this.http = http;
 		this.apiKey = apiKey;
+		this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+		this.hydrationConcurrency = hydrationConcurrency;
+		this.quota = quota;
+		this.cache = cache;
+		this.resilience = resilience;
+		this.registry = registry;
+		this.uploadsPlaylistIds = CaffeineCacheMetrics.monitor(registry,
+				Caffeine.newBuilder().maximumSize(10_000).recordStats().buildAsync(), "youtube.uploads");
 	}
 
 }
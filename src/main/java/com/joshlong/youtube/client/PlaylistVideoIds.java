@@ -0,0 +1,14 @@
+package com.joshlong.youtube.client;
+
+import org.springframework.lang.Nullable;
+
+import java.util.List;
+
+/**
+ * A single page of a {@link Playlist}, with just the IDs of its {@link Video videos}.
+ * @param playlistId the id of the playlist
+ * @param videoIds the IDs of the videos on this page, in playlist order
+ * @param nextPageToken the token of the next page, or {@code null} if this is the last
+ */
+public record PlaylistVideoIds(String playlistId, List<String> videoIds, @Nullable String nextPageToken) {
+}
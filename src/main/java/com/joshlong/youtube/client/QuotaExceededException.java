@@ -0,0 +1,24 @@
+package com.joshlong.youtube.client;
+
+import java.time.Duration;
+
+/**
+ * Signals that a call would take us past the daily YouTube Data API quota.
+ *
+ * @author Josh Long
+ */
+public class QuotaExceededException extends RuntimeException {
+
+	private final Duration untilReset;
+
+	QuotaExceededException(YoutubeEndpoint endpoint, long remaining, Duration untilReset) {
+		super("calling " + endpoint + " costs " + endpoint.cost() + " units but only " + remaining
+				+ " remain until the quota resets in " + untilReset);
+		this.untilReset = untilReset;
+	}
+
+	public Duration getUntilReset() {
+		return this.untilReset;
+	}
+
+}
@@ -0,0 +1,10 @@
+package com.joshlong.youtube.client;
+
+/**
+ * Just the counters of a {@link Video}, which is all that changes for most videos once
+ * they've been published.
+ *
+ * @author Josh Long
+ */
+public record VideoStatistics(String videoId, int viewCount, int likeCount, int favoriteCount, int commentCount) {
+}
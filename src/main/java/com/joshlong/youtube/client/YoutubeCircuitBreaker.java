@@ -0,0 +1,141 @@
+package com.joshlong.youtube.client;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Predicate;
+
+/**
+ * Stops calling the YouTube Data API while it's degraded. It remembers whether each of
+ * the last {@code windowSize} calls failed. Once the window is full and at least
+ * {@code failureRateThreshold} of those calls failed, the circuit opens and calls fail
+ * fast with a {@link YoutubeUnavailableException}. After {@code openDuration}, a single
+ * trial call is let through: if it succeeds the circuit closes again, and if it fails the
+ * circuit stays open for another {@code openDuration}.
+ *
+ * @author Josh Long
+ */
+@Slf4j
+class YoutubeCircuitBreaker {
+
+	enum State {
+
+		CLOSED, OPEN, HALF_OPEN
+
+	}
+
+	private final boolean[] window;
+
+	private final double failureRateThreshold;
+
+	private final Duration openDuration;
+
+	private final Clock clock;
+
+	private State state = State.CLOSED;
+
+	private Instant openedAt;
+
+	private boolean trialInFlight;
+
+	private int calls;
+
+	private int failures;
+
+	private int next;
+
+	YoutubeCircuitBreaker(int windowSize, double failureRateThreshold, Duration openDuration, Clock clock) {
+		this.window = new boolean[windowSize];
+		this.failureRateThreshold = failureRateThreshold;
+		this.openDuration = openDuration;
+		this.clock = clock;
+	}
+
+	/**
+	 * @param endpoint the endpoint being called
+	 * @param call the call to make, if the circuit allows it
+	 * @param isFailure tells the errors that say something about the health of the API
+	 * apart from those that don't, like a request for something that doesn't exist
+	 * @return the result of the call
+	 */
+	<T> Mono<T> guard(YoutubeEndpoint endpoint, Mono<T> call, Predicate<Throwable> isFailure) {
+		return Mono.defer(() -> {
+			if (!tryAcquire())
+				return Mono.error(new YoutubeUnavailableException(endpoint, untilTrial()));
+			return call//
+					.doOnSuccess(result -> record(false))//
+					.doOnError(error -> record(isFailure.test(error)))//
+					.doOnCancel(this::release);
+		});
+	}
+
+	synchronized State state() {
+		return this.state;
+	}
+
+	private synchronized boolean tryAcquire() {
+		if (this.state == State.OPEN && untilTrial().compareTo(Duration.ZERO) <= 0) {
+			this.state = State.HALF_OPEN;
+			this.trialInFlight = false;
+		}
+		return switch (this.state) {
+			case CLOSED -> true;
+			case OPEN -> false;
+			case HALF_OPEN -> {
+				if (this.trialInFlight)
+					yield false;
+				this.trialInFlight = true;
+				yield true;
+			}
+		};
+	}
+
+	private synchronized void release() {
+		this.trialInFlight = false;
+	}
+
+	private synchronized void record(boolean failed) {
+		if (this.state == State.HALF_OPEN) {
+			this.trialInFlight = false;
+			if (failed)
+				open();
+			else
+				close();
+			return;
+		}
+		if (this.state != State.CLOSED)
+			return;
+		if (this.calls == this.window.length && this.window[this.next])
+			this.failures -= 1;
+		this.window[this.next] = failed;
+		this.next = (this.next + 1) % this.window.length;
+		this.calls = Math.min(this.calls + 1, this.window.length);
+		if (failed)
+			this.failures += 1;
+		if (this.calls == this.window.length && this.failures >= this.failureRateThreshold * this.window.length)
+			open();
+	}
+
+	private void open() {
+		log.warn("the YouTube Data API is failing, so we'll stop calling it for " + this.openDuration);
+		this.state = State.OPEN;
+		this.openedAt = this.clock.instant();
+	}
+
+	private void close() {
+		log.info("the YouTube Data API has recovered");
+		this.state = State.CLOSED;
+		this.calls = 0;
+		this.failures = 0;
+		this.next = 0;
+	}
+
+	private synchronized Duration untilTrial() {
+		return this.openedAt == null ? Duration.ZERO
+				: Duration.between(this.clock.instant(), this.openedAt.plus(this.openDuration));
+	}
+
+}
@@ -4,6 +4,7 @@ import org.springframework.lang.Nullable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
@@ -17,12 +18,38 @@ import java.util.Map;
 public interface YoutubeClient {
 
 	/**
-	 * this does a little bit of everything and I think should be decomposed
-	 * @param username
-	 * @return
+	 * Returns all the videos in the uploads playlist of the channel that the
+	 * {@code username} owns.
+	 * @param username the username that owns the channel
+	 * @return all the channel's videos, newest first
 	 */
 	Flux<Video> getAllVideosByUsernameUploads(String username);
 
+	/**
+	 * Like {@link #getAllVideosByUsernameUploads(String)}, but stops paging through the
+	 * uploads as soon as it reaches videos we've already seen. New uploads appear at the
+	 * head of the uploads playlist, so a channel with nothing new costs a single page.
+	 * @param username the username that owns the channel
+	 * @param publishedAfter only videos published after this are returned. If
+	 * {@code null}, all of them are.
+	 * @return the videos uploaded since {@code publishedAfter}, newest first
+	 */
+	Flux<Video> getAllVideosByUsernameUploads(String username, @Nullable Date publishedAfter);
+
+	/**
+	 * The pages behind {@link #getAllVideosByUsernameUploads(String, Date)}, each with
+	 * the token of the page that follows it, so that a crawl that stopped partway can
+	 * pick up where it left off.
+	 * @param username the username that owns the channel
+	 * @param pageToken the page to start from. If {@code null}, the first page.
+	 * @param publishedAfter only videos published after this are returned. If
+	 * {@code null}, all of them are.
+	 * @return the pages of videos uploaded since {@code publishedAfter}, newest first.
+	 * The last page has no {@link PlaylistVideos#nextPageToken() nextPageToken}.
+	 */
+	Flux<PlaylistVideos> getVideoPagesByUsernameUploads(String username, @Nullable String pageToken,
+			@Nullable Date publishedAfter);
+
 	/**
 	 * Returns all the videos for a given {@link Playlist}.
 	 * @param playlistId the id of the {@link Playlist } in which to find {@link Video}s
@@ -45,6 +72,34 @@ public interface YoutubeClient {
 	 */
 	Flux<Video> getAllVideosByPlaylist(String playlistId);
 
+	/**
+	 * Like {@link #getAllVideosByPlaylist(String)}, but lets the caller trade ordering
+	 * for throughput. Pages of the playlist are hydrated concurrently either way.
+	 * @param playlistId the id of the {@link Playlist}
+	 * @param ordered whether the {@link Video}s must come back in playlist order. If
+	 * {@code false}, each {@link Video} is emitted as soon as its page has been hydrated.
+	 * @return all the videos within a playlist
+	 */
+	Flux<Video> getAllVideosByPlaylist(String playlistId, boolean ordered);
+
+	/**
+	 * Returns just the IDs of the videos in a {@link Playlist}, in playlist order, for
+	 * when we already have the {@link Video}s themselves.
+	 * @param playlistId the id of the {@link Playlist}
+	 * @return the IDs of all the videos within the playlist
+	 */
+	Flux<String> getAllVideoIdsByPlaylist(String playlistId);
+
+	/**
+	 * The pages behind {@link #getAllVideoIdsByPlaylist(String)}, each with the token of
+	 * the page that follows it.
+	 * @param playlistId the id of the {@link Playlist}
+	 * @param pageToken the page to start from. If {@code null}, the first page.
+	 * @return the pages of video IDs within the playlist. The last page has no
+	 * {@link PlaylistVideoIds#nextPageToken() nextPageToken}.
+	 */
+	Flux<PlaylistVideoIds> getVideoIdPagesByPlaylist(String playlistId, @Nullable String pageToken);
+
 	/**
 	 * Return the playlists
 	 * @param channelId the ID of the channel that we want to query
@@ -87,21 +142,50 @@ public interface YoutubeClient {
 	 */
 	Mono<Video> getVideoById(String videoId);
 
+	/**
+	 * Fetches only the counters for each of the videos, which is much less to transfer
+	 * and decode than whole {@link Video}s.
+	 * @param videoIds the IDs of the videos
+	 * @return a map of videoIds to {@link VideoStatistics}
+	 */
+	Mono<Map<String, VideoStatistics>> getVideoStatisticsByIds(List<String> videoIds);
+
 	/**
 	 * Returns all the videos associated with a channel, with no indication of the
-	 * playlists to which it belongs.
+	 * playlists to which it belongs. The pages are those of the channel's uploads
+	 * playlist.
 	 * @param channelId the id of the channel
 	 * @param pageToken the page token for navigation and pagination
 	 * @return an aggregate type {@link ChannelVideos} containing the results and
-	 * pagination information
+	 * pagination information, or nothing if there's no such channel
 	 */
 	Mono<ChannelVideos> getVideosByChannel(String channelId, String pageToken);
 
 	/**
-	 * Returns all the videos, regardless of the underlying pagination
+	 * Returns all the videos, regardless of the underlying pagination. Pages are fetched
+	 * only as the subscriber asks for more videos, so that streaming even the largest
+	 * channel holds no more than a few pages at a time, and a slow subscriber slows the
+	 * fetching down rather than piling pages up.
 	 * @param channelId the id of the channel
-	 * @return a stream of all the {@link Video}s
+	 * @return a stream of all the {@link Video}s, newest first, or nothing if there's no
+	 * such channel
 	 */
 	Flux<Video> getAllVideosByChannel(String channelId);
 
+	/**
+	 * Searches a channel's videos. A search costs 100 quota units for every page of 50
+	 * videos, where {@link #getAllVideosByChannel(String)} costs 1, so use this only for
+	 * what a search alone can do: matching a query, or a range of dates that doesn't
+	 * start at the newest upload.
+	 * @param channelId the id of the channel
+	 * @param query what the videos should match. If {@code null}, any video does.
+	 * @param publishedAfter only videos published at or after this are returned. If
+	 * {@code null}, there's no lower bound.
+	 * @param publishedBefore only videos published before this are returned. If
+	 * {@code null}, there's no upper bound.
+	 * @return the matching {@link Video}s, newest first
+	 */
+	Flux<Video> searchVideosByChannel(String channelId, @Nullable String query, @Nullable Date publishedAfter,
+			@Nullable Date publishedBefore);
+
 }
@@ -1,16 +1,142 @@
 package com.joshlong.youtube.client;
 
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.joshlong.youtube.YoutubeProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 class YoutubeClientConfiguration {
 
 	@Bean
-	YoutubeClient youtubeClient(WebClient http, YoutubeProperties properties) {
-		return new DefaultYoutubeClient(http, properties.youtube().apiKey());
+	YoutubeQuota youtubeQuota(YoutubeProperties properties, MeterRegistry registry) {
+		var settings = properties.youtube().quota();
+		var quota = new YoutubeQuota(settings.dailyBudget(), settings.requestsPerSecond(),
+				settings.deferWhenExhausted(), Clock.systemUTC());
+		Gauge.builder("youtube.quota.remaining", quota, YoutubeQuota::remaining)//
+				.description("the YouTube Data API quota units left for today")//
+				.baseUnit("units")//
+				.register(registry);
+		for (var endpoint : YoutubeEndpoint.values()) {
+			FunctionCounter.builder("youtube.quota.spent", quota, q -> q.spent(endpoint))//
+					.description("the YouTube Data API quota units spent on an endpoint")//
+					.baseUnit("units")//
+					.tag("endpoint", endpoint.name().toLowerCase())//
+					.register(registry);
+		}
+		return quota;
+	}
+
+	@Bean
+	YoutubeCircuitBreaker youtubeCircuitBreaker(YoutubeProperties properties, MeterRegistry registry) {
+		var settings = properties.youtube().resilience().circuitBreaker();
+		var circuitBreaker = new YoutubeCircuitBreaker(settings.windowSize(), settings.failureRateThreshold(),
+				settings.openDuration(), Clock.systemUTC());
+		Gauge.builder("youtube.circuit.open", circuitBreaker,
+				cb -> cb.state() == YoutubeCircuitBreaker.State.CLOSED ? 0 : 1)//
+				.description("whether we've stopped calling the YouTube Data API because it's failing")//
+				.register(registry);
+		return circuitBreaker;
+	}
+
+	@Bean
+	WebClient youtubeWebClient(WebClient.Builder builder, YoutubeProperties properties) {
+		return webClient(builder, properties.youtube().baseUrl(), properties.youtube().http());
+	}
+
+	/**
+	 * A {@link WebClient} of our own for the YouTube Data API, so that a crawl with many
+	 * requests in flight reuses a pool of connections sized for it, rather than paying
+	 * for a TLS handshake each time, or queueing behind some other use of the default
+	 * pool. The pool publishes its {@code reactor.netty.connection.provider} metrics.
+	 * Over HTTP/2, which we only negotiate over TLS, many requests share each connection.
+	 * <p>
+	 * Google only gzips responses to clients that say {@code gzip} in their
+	 * {@code User-Agent}, as well as in {@code Accept-Encoding}.
+	 */
+	static WebClient webClient(WebClient.Builder builder, String baseUrl, YoutubeProperties.Http settings) {
+		var connections = ConnectionProvider.builder("youtube")//
+				.maxConnections(settings.maxConnections())//
+				.pendingAcquireMaxCount(settings.pendingAcquireMaxCount())//
+				.pendingAcquireTimeout(settings.pendingAcquireTimeout())//
+				.maxIdleTime(settings.maxIdleTime())//
+				.maxLifeTime(settings.maxLifeTime())//
+				.evictInBackground(settings.maxIdleTime())//
+				.metrics(true)//
+				.build();
+		var http2 = settings.http2() && baseUrl.startsWith("https:");
+		var protocols = http2 ? new HttpProtocol[] { HttpProtocol.H2, HttpProtocol.HTTP11 }
+				: new HttpProtocol[] { HttpProtocol.HTTP11 };
+		var http = HttpClient//
+				.create(connections)//
+				.protocol(protocols)//
+				.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) settings.connectTimeout().toMillis())//
+				.option(ChannelOption.SO_KEEPALIVE, true)//
+				.responseTimeout(settings.responseTimeout())//
+				// removed again when the connection goes back to the pool
+				.doOnRequest((request, connection) -> connection.addHandlerLast(
+						new ReadTimeoutHandler(settings.readTimeout().toMillis(), TimeUnit.MILLISECONDS)))//
+				.compress(settings.compress());
+		if (http2)
+			http = http.secure();
+		return builder//
+				.clientConnector(new ReactorClientHttpConnector(http))//
+				.codecs(codecs -> codecs.defaultCodecs().maxInMemorySize((int) settings.maxInMemorySize().toBytes()))//
+				.defaultHeader(HttpHeaders.USER_AGENT, "youtube-ingest (gzip)")//
+				.build();
+	}
+
+	@Bean
+	YoutubeClient youtubeClient(WebClient http, YoutubeProperties properties, YoutubeQuota quota,
+			YoutubeCircuitBreaker circuitBreaker, MeterRegistry registry) {
+		var youtube = properties.youtube();
+		var cache = new YoutubeResponseCache(youtube.cache().maxSize(), youtube.cache().directory());
+		var settings = youtube.resilience();
+		var resilience = new YoutubeResilience(settings.timeout(),
+				settings.timeouts() == null ? Map.of() : settings.timeouts(), settings.maxRetries(),
+				settings.minBackoff(), settings.maxBackoff(), circuitBreaker, Clock.systemUTC());
+		var client = new DefaultYoutubeClient(http, youtube.apiKey(), youtube.baseUrl(), youtube.hydrationConcurrency(),
+				quota, cache, resilience, registry);
+		var lookups = youtube.lookups();
+		if (!lookups.enabled())
+			return client;
+		return new CachingYoutubeClient(client,
+				lookupCache("youtube.channels", lookups.maxChannels(), lookups.channelTtl(), registry),
+				lookupCache("youtube.playlists", lookups.maxPlaylists(), lookups.playlistTtl(), registry),
+				lookupCache("youtube.videos", lookups.maxVideos(), lookups.videoTtl(), registry),
+				lookups.videoBatchWindow());
+	}
+
+	/**
+	 * publishes the cache's hits, misses, evictions and size, tagged with its
+	 * {@code name}.
+	 */
+	private static <V> AsyncCache<String, V> lookupCache(String name, long maxEntries, Duration ttl,
+			MeterRegistry registry) {
+		AsyncCache<String, V> cache = Caffeine.newBuilder()//
+				.maximumSize(maxEntries)//
+				.expireAfterWrite(ttl)//
+				.recordStats()//
+				.buildAsync();
+		return CaffeineCacheMetrics.monitor(registry, cache, name);
 	}
 
 }
@@ -0,0 +1,25 @@
+package com.joshlong.youtube.client;
+
+/**
+ * The YouTube Data API endpoints we call, along with what each call costs against the
+ * daily quota.
+ *
+ * @author Josh Long
+ * @see <a href="https://developers.google.com/youtube/v3/determine_quota_cost">quota
+ * costs</a>
+ */
+public enum YoutubeEndpoint {
+
+	CHANNELS(1), PLAYLISTS(1), PLAYLIST_ITEMS(1), VIDEOS(1), SEARCH(100);
+
+	private final int cost;
+
+	YoutubeEndpoint(int cost) {
+		this.cost = cost;
+	}
+
+	public int cost() {
+		return this.cost;
+	}
+
+}
@@ -0,0 +1,314 @@
+package com.joshlong.youtube.client;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.net.URL;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Reads YouTube Data API responses token by token, building {@link Video},
+ * {@link Playlist} and {@link Channel} records directly rather than materializing a
+ * {@link com.fasterxml.jackson.databind.JsonNode} tree first. Anything we don't map is
+ * skipped without being parsed into objects.
+ *
+ * @author Josh Long
+ */
+abstract class YoutubeJsonDecoder {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	/**
+	 * Reads a value from a {@link JsonParser} positioned just before the first token.
+	 */
+	@FunctionalInterface
+	interface Reader<T> {
+
+		T read(JsonParser parser) throws IOException;
+
+	}
+
+	/**
+	 * The parts of a paginated list response we care about.
+	 */
+	record Page<T> (List<T> items, String nextPageToken, String previousPageToken, int resultsPerPage,
+			int totalResults) {
+	}
+
+	/**
+	 * A {@code channels} resource, along with the ID of the playlist holding its uploads.
+	 */
+	record ChannelResource(Channel channel, String uploadsPlaylistId) {
+	}
+
+	/**
+	 * A {@code playlistItems} resource: the ID of a video and when it was published. The
+	 * date is missing for videos that are private.
+	 */
+	record PlaylistItem(String videoId, @Nullable Date videoPublishedAt) {
+	}
+
+	static <T> T decode(byte[] json, Reader<T> reader) throws IOException {
+		try (var parser = JSON_FACTORY.createParser(json)) {
+			return reader.read(parser);
+		}
+	}
+
+	static Page<Video> videos(JsonParser parser) throws IOException {
+		return page(parser, YoutubeJsonDecoder::video);
+	}
+
+	static Page<PlaylistItem> playlistItems(JsonParser parser) throws IOException {
+		return page(parser, p -> {
+			String videoId = null;
+			Date videoPublishedAt = null;
+			while (nextField(p)) {
+				if ("contentDetails".equals(p.getCurrentName())) {
+					while (nextField(p)) {
+						switch (p.getCurrentName()) {
+							case "videoId" -> videoId = p.getText();
+							case "videoPublishedAt" -> videoPublishedAt = date(p.getText());
+							default -> p.skipChildren();
+						}
+					}
+				}
+				else
+					p.skipChildren();
+			}
+			return new PlaylistItem(videoId, videoPublishedAt);
+		});
+	}
+
+	static Page<VideoStatistics> videoStatistics(JsonParser parser) throws IOException {
+		return page(parser, p -> {
+			String id = null;
+			int viewCount = 0, likeCount = 0, favoriteCount = 0, commentCount = 0;
+			while (nextField(p)) {
+				switch (p.getCurrentName()) {
+					case "id" -> id = p.getText();
+					case "statistics" -> {
+						while (nextField(p)) {
+							switch (p.getCurrentName()) {
+								case "viewCount" -> viewCount = Integer.parseInt(p.getText());
+								case "likeCount" -> likeCount = Integer.parseInt(p.getText());
+								case "favoriteCount" -> favoriteCount = Integer.parseInt(p.getText());
+								case "commentCount" -> commentCount = Integer.parseInt(p.getText());
+								default -> p.skipChildren();
+							}
+						}
+					}
+					default -> p.skipChildren();
+				}
+			}
+			return new VideoStatistics(id, viewCount, likeCount, favoriteCount, commentCount);
+		});
+	}
+
+	static Page<String> searchResultVideoIds(JsonParser parser) throws IOException {
+		return page(parser, p -> {
+			var videoId = (String) null;
+			while (nextField(p)) {
+				if ("id".equals(p.getCurrentName())) {
+					while (nextField(p)) {
+						if ("videoId".equals(p.getCurrentName()))
+							videoId = p.getText();
+						else
+							p.skipChildren();
+					}
+				}
+				else
+					p.skipChildren();
+			}
+			return videoId;
+		});
+	}
+
+	static Page<Playlist> playlists(JsonParser parser) throws IOException {
+		return page(parser, YoutubeJsonDecoder::playlist);
+	}
+
+	static Page<ChannelResource> channels(JsonParser parser) throws IOException {
+		return page(parser, YoutubeJsonDecoder::channel);
+	}
+
+	private static <T> Page<T> page(JsonParser parser, Reader<T> itemReader) throws IOException {
+		Assert.isTrue(parser.nextToken() == JsonToken.START_OBJECT, "the response should be a JSON object");
+		var items = new ArrayList<T>();
+		String next = null, previous = null;
+		int resultsPerPage = 0, totalResults = 0;
+		while (nextField(parser)) {
+			switch (parser.getCurrentName()) {
+				case "items" -> {
+					while (parser.nextToken() == JsonToken.START_OBJECT)
+						items.add(itemReader.read(parser));
+				}
+				case "nextPageToken" -> next = parser.getText();
+				case "prevPageToken" -> previous = parser.getText();
+				case "pageInfo" -> {
+					while (nextField(parser)) {
+						switch (parser.getCurrentName()) {
+							case "resultsPerPage" -> resultsPerPage = parser.getIntValue();
+							case "totalResults" -> totalResults = parser.getIntValue();
+							default -> parser.skipChildren();
+						}
+					}
+				}
+				default -> parser.skipChildren();
+			}
+		}
+		return new Page<>(items, next, previous, resultsPerPage, totalResults);
+	}
+
+	private static Video video(JsonParser parser) throws IOException {
+		String id = null, channelId = null, description = null, title = null, thumbnail = null;
+		Date publishedAt = null;
+		var tags = new ArrayList<String>();
+		int categoryId = 0, viewCount = 0, likeCount = 0, favoriteCount = 0, commentCount = 0;
+		while (nextField(parser)) {
+			switch (parser.getCurrentName()) {
+				case "id" -> id = parser.getText();
+				case "snippet" -> {
+					while (nextField(parser)) {
+						switch (parser.getCurrentName()) {
+							case "channelId" -> channelId = parser.getText();
+							case "publishedAt" -> publishedAt = date(parser.getText());
+							case "description" -> description = parser.getText();
+							case "title" -> title = parser.getText();
+							case "categoryId" -> categoryId = Integer.parseInt(parser.getText());
+							case "tags" -> {
+								while (parser.nextToken() == JsonToken.VALUE_STRING)
+									tags.add(parser.getText());
+							}
+							case "thumbnails" -> thumbnail = defaultThumbnail(parser);
+							default -> parser.skipChildren();
+						}
+					}
+				}
+				case "statistics" -> {
+					while (nextField(parser)) {
+						switch (parser.getCurrentName()) {
+							case "viewCount" -> viewCount = Integer.parseInt(parser.getText());
+							case "likeCount" -> likeCount = Integer.parseInt(parser.getText());
+							case "favoriteCount" -> favoriteCount = Integer.parseInt(parser.getText());
+							case "commentCount" -> commentCount = Integer.parseInt(parser.getText());
+							default -> parser.skipChildren();
+						}
+					}
+				}
+				default -> parser.skipChildren();
+			}
+		}
+		return new Video(id, title, description, publishedAt, new URL(thumbnail), tags, categoryId, viewCount,
+				likeCount, favoriteCount, commentCount, channelId);
+	}
+
+	private static String defaultThumbnail(JsonParser parser) throws IOException {
+		String url = null;
+		while (nextField(parser)) {
+			if ("default".equals(parser.getCurrentName())) {
+				while (nextField(parser)) {
+					if ("url".equals(parser.getCurrentName()))
+						url = parser.getText();
+					else
+						parser.skipChildren();
+				}
+			}
+			else
+				parser.skipChildren();
+		}
+		return url;
+	}
+
+	private static Playlist playlist(JsonParser parser) throws IOException {
+		String playlistId = null, title = null, description = null, channelId = null;
+		Date publishedAt = null;
+		var itemCount = 0;
+		while (nextField(parser)) {
+			switch (parser.getCurrentName()) {
+				case "id" -> playlistId = parser.getText();
+				case "snippet" -> {
+					while (nextField(parser)) {
+						switch (parser.getCurrentName()) {
+							case "title" -> title = parser.getText();
+							case "description" -> description = parser.getText();
+							case "publishedAt" -> publishedAt = date(parser.getText());
+							case "channelId" -> channelId = parser.getText();
+							default -> parser.skipChildren();
+						}
+					}
+				}
+				case "contentDetails" -> {
+					while (nextField(parser)) {
+						if ("itemCount".equals(parser.getCurrentName()))
+							itemCount = parser.getIntValue();
+						else
+							parser.skipChildren();
+					}
+				}
+				default -> parser.skipChildren();
+			}
+		}
+		return new Playlist(playlistId, channelId, publishedAt, title, description, itemCount);
+	}
+
+	private static ChannelResource channel(JsonParser parser) throws IOException {
+		String id = null, kind = null, title = null, description = null, uploads = null;
+		Date publishedAt = null;
+		while (nextField(parser)) {
+			switch (parser.getCurrentName()) {
+				case "kind" -> kind = parser.getText();
+				case "id" -> id = parser.getText();
+				case "snippet" -> {
+					while (nextField(parser)) {
+						switch (parser.getCurrentName()) {
+							case "title" -> title = parser.getText();
+							case "description" -> description = parser.getText();
+							case "publishedAt" -> publishedAt = date(parser.getText());
+							default -> parser.skipChildren();
+						}
+					}
+				}
+				case "contentDetails" -> {
+					while (nextField(parser)) {
+						if ("relatedPlaylists".equals(parser.getCurrentName())) {
+							while (nextField(parser)) {
+								if ("uploads".equals(parser.getCurrentName()))
+									uploads = parser.getText();
+								else
+									parser.skipChildren();
+							}
+						}
+						else
+							parser.skipChildren();
+					}
+				}
+				default -> parser.skipChildren();
+			}
+		}
+		Assert.isTrue("youtube#channel".equals(kind), "the item is a YouTube channel");
+		return new ChannelResource(new Channel(id, title, description, publishedAt), uploads);
+	}
+
+	/**
+	 * advances to the value of the next field in the current object, returning
+	 * {@code false} once the object ends.
+	 */
+	private static boolean nextField(JsonParser parser) throws IOException {
+		if (parser.nextToken() != JsonToken.FIELD_NAME)
+			return false;
+		parser.nextToken();
+		return true;
+	}
+
+	private static Date date(String isoDate) {
+		return Date.from(Instant.parse(isoDate));
+	}
+
+}
@@ -0,0 +1,137 @@
+package com.joshlong.youtube.client;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of how much of the daily YouTube Data API quota we've spent, and spaces
+ * requests out so that we never exceed a given number of requests per second. Neither
+ * check blocks a thread: callers get a {@link Mono} that completes once it's their turn
+ * or fails with a {@link QuotaExceededException} if the budget can't cover the call.
+ *
+ * @author Josh Long
+ */
+@Slf4j
+public class YoutubeQuota {
+
+	/**
+	 * the quota resets at midnight, Pacific time
+	 */
+	private static final ZoneId QUOTA_ZONE = ZoneId.of("America/Los_Angeles");
+
+	private final long dailyBudget;
+
+	private final long nanosBetweenRequests;
+
+	private final boolean deferWhenExhausted;
+
+	private final Clock clock;
+
+	private final AtomicLong nextRequestSlot = new AtomicLong(Long.MIN_VALUE);
+
+	private final Map<YoutubeEndpoint, AtomicLong> spentByEndpoint = new EnumMap<>(YoutubeEndpoint.class);
+
+	private long spent;
+
+	private LocalDate day;
+
+	/**
+	 * @param dailyBudget the number of units we may spend each day
+	 * @param requestsPerSecond how many requests we may start each second
+	 * @param deferWhenExhausted whether calls that can't be afforded today should wait
+	 * for the quota to reset rather than fail
+	 * @param clock the source of the current time
+	 */
+	public YoutubeQuota(long dailyBudget, double requestsPerSecond, boolean deferWhenExhausted, Clock clock) {
+		this.dailyBudget = dailyBudget;
+		this.nanosBetweenRequests = (long) (Duration.ofSeconds(1).toNanos() / requestsPerSecond);
+		this.deferWhenExhausted = deferWhenExhausted;
+		this.clock = clock;
+		this.day = LocalDate.now(clock.withZone(QUOTA_ZONE));
+		for (var endpoint : YoutubeEndpoint.values())
+			this.spentByEndpoint.put(endpoint, new AtomicLong());
+	}
+
+	/**
+	 * Reserves the cost of a single call to the endpoint.
+	 * @param endpoint the endpoint we're about to call
+	 * @return a {@link Mono} that completes when the call may proceed
+	 */
+	public Mono<Void> acquire(YoutubeEndpoint endpoint) {
+		return Mono.defer(() -> {
+			if (!reserve(endpoint)) {
+				var exception = new QuotaExceededException(endpoint, remaining(), untilReset());
+				if (!this.deferWhenExhausted)
+					return Mono.error(exception);
+				log.warn(exception.getMessage() + ". Deferring the call.");
+				return Mono.delay(exception.getUntilReset()).then(acquire(endpoint));
+			}
+			var wait = nextSlotDelay();
+			return wait.isZero() ? Mono.empty() : Mono.delay(wait).then();
+		});
+	}
+
+	/**
+	 * @param units the number of units some work is expected to cost
+	 * @return whether the remaining budget can cover it
+	 */
+	public boolean canAfford(long units) {
+		return remaining() >= units;
+	}
+
+	public synchronized long remaining() {
+		rollOver();
+		return this.dailyBudget - this.spent;
+	}
+
+	public synchronized long spent() {
+		rollOver();
+		return this.spent;
+	}
+
+	/**
+	 * @return the units spent on an endpoint since this process started, regardless of
+	 * when the quota reset.
+	 */
+	public long spent(YoutubeEndpoint endpoint) {
+		return this.spentByEndpoint.get(endpoint).get();
+	}
+
+	public Duration untilReset() {
+		var now = this.clock.instant();
+		var midnight = LocalDate.now(this.clock.withZone(QUOTA_ZONE)).plusDays(1).atStartOfDay(QUOTA_ZONE).toInstant();
+		return Duration.between(now, midnight);
+	}
+
+	private synchronized boolean reserve(YoutubeEndpoint endpoint) {
+		rollOver();
+		if (this.spent + endpoint.cost() > this.dailyBudget)
+			return false;
+		this.spent += endpoint.cost();
+		this.spentByEndpoint.get(endpoint).addAndGet(endpoint.cost());
+		return true;
+	}
+
+	private void rollOver() {
+		var today = LocalDate.now(this.clock.withZone(QUOTA_ZONE));
+		if (!today.equals(this.day)) {
+			this.day = today;
+			this.spent = 0;
+		}
+	}
+
+	private Duration nextSlotDelay() {
+		var now = System.nanoTime();
+		var slot = this.nextRequestSlot.getAndUpdate(previous -> Math.max(previous, now) + this.nanosBetweenRequests);
+		return Duration.ofNanos(Math.max(slot, now) - now);
+	}
+
+}
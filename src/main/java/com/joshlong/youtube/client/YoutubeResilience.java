@@ -0,0 +1,146 @@
+package com.joshlong.youtube.client;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Keeps a single slow or failed request from failing a whole crawl. Each attempt is
+ * bounded by a per-endpoint timeout. Attempts that time out, or that fail with a
+ * {@code 5xx}, a {@code 429} or a rate limit {@code 403}, are retried with jittered
+ * exponential backoff, waiting as long as a {@code Retry-After} header asks if it asks.
+ * Every attempt goes through the {@link YoutubeCircuitBreaker}, and is charged against
+ * the {@link YoutubeQuota quota}, since YouTube charges for failed requests too.
+ * <p>
+ * Only the request that failed is retried, so a failure on page 40 of a playlist is
+ * retried with page 40's {@code pageToken}, rather than starting over from page 1.
+ *
+ * @author Josh Long
+ */
+@Slf4j
+class YoutubeResilience {
+
+	private final Duration timeout;
+
+	private final Map<YoutubeEndpoint, Duration> timeouts;
+
+	private final int maxRetries;
+
+	private final Duration minBackoff;
+
+	private final Duration maxBackoff;
+
+	private final YoutubeCircuitBreaker circuitBreaker;
+
+	private final Clock clock;
+
+	/**
+	 * @param timeout how long to wait for a response
+	 * @param timeouts overrides the {@code timeout} for particular endpoints
+	 * @param maxRetries how many times to retry a failed request
+	 * @param minBackoff how long to wait before the first retry
+	 * @param maxBackoff the longest to wait before any retry. If a {@code Retry-After}
+	 * header asks for more, we give up instead.
+	 * @param circuitBreaker decides whether to call the API at all
+	 * @param clock the source of the current time, for {@code Retry-After} dates
+	 */
+	YoutubeResilience(Duration timeout, Map<YoutubeEndpoint, Duration> timeouts, int maxRetries, Duration minBackoff,
+			Duration maxBackoff, YoutubeCircuitBreaker circuitBreaker, Clock clock) {
+		this.timeout = timeout;
+		this.timeouts = timeouts;
+		this.maxRetries = maxRetries;
+		this.minBackoff = minBackoff;
+		this.maxBackoff = maxBackoff;
+		this.circuitBreaker = circuitBreaker;
+		this.clock = clock;
+	}
+
+	/**
+	 * @param endpoint the endpoint being called
+	 * @param permit what has to happen before each attempt, like acquiring quota. It
+	 * doesn't count against the timeout, and it's taken before the circuit breaker is
+	 * asked, so that an attempt refused here never counts as a call to the API.
+	 * @param request a single attempt at the request
+	 * @return the result of the first attempt that succeeds
+	 */
+	<T> Mono<T> call(YoutubeEndpoint endpoint, Mono<Void> permit, Mono<T> request) {
+		var timeout = this.timeouts.getOrDefault(endpoint, this.timeout);
+		var attempt = this.circuitBreaker.guard(endpoint, request.timeout(timeout), YoutubeResilience::isRetryable);
+		return permit//
+				.then(attempt)//
+				.retryWhen(Retry.from(signals -> signals.concatMap(signal -> {
+					var failure = signal.failure();
+					if (!isRetryable(failure) || signal.totalRetries() >= this.maxRetries)
+						return Mono.error(failure);
+					var backoff = retryAfter(failure).orElseGet(() -> backoff(signal.totalRetries()));
+					if (backoff.compareTo(this.maxBackoff) > 0)
+						return Mono.error(failure);
+					log.debug("retrying " + endpoint + " in " + backoff + " after " + failure.getMessage());
+					return Mono.delay(backoff);
+				})));
+	}
+
+	static boolean isRetryable(Throwable error) {
+		if (error instanceof TimeoutException || error instanceof WebClientRequestException)
+			return true;
+		if (error instanceof WebClientResponseException response) {
+			var status = response.getRawStatusCode();
+			return status >= 500 || status == HttpStatus.TOO_MANY_REQUESTS.value()
+					|| (status == HttpStatus.FORBIDDEN.value() && isRateLimited(response));
+		}
+		return false;
+	}
+
+	/**
+	 * YouTube reports that we're sending requests too quickly with a {@code 403}, unlike
+	 * a {@code 403} for a spent daily quota, which won't succeed however long we wait.
+	 */
+	private static boolean isRateLimited(WebClientResponseException response) {
+		var body = response.getResponseBodyAsString();
+		return body.contains("\"rateLimitExceeded\"") || body.contains("\"userRateLimitExceeded\"");
+	}
+
+	/**
+	 * full jitter: anywhere between half and all of the exponentially growing backoff.
+	 */
+	private Duration backoff(long retries) {
+		var exponential = this.minBackoff.multipliedBy(1L << Math.min(retries, 20));
+		var capped = exponential.compareTo(this.maxBackoff) > 0 ? this.maxBackoff : exponential;
+		var millis = capped.toMillis();
+		return Duration.ofMillis(millis / 2 + ThreadLocalRandom.current().nextLong(millis / 2 + 1));
+	}
+
+	private Optional<Duration> retryAfter(Throwable error) {
+		if (!(error instanceof WebClientResponseException response))
+			return Optional.empty();
+		var retryAfter = response.getHeaders().getFirst("Retry-After");
+		if (retryAfter == null)
+			return Optional.empty();
+		try {
+			return Optional.of(Duration.ofSeconds(Long.parseLong(retryAfter.trim())));
+		}
+		catch (NumberFormatException e) {
+			try {
+				var at = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+				var wait = Duration.between(this.clock.instant(), at);
+				return Optional.of(wait.isNegative() ? Duration.ZERO : wait);
+			}
+			catch (RuntimeException unparseable) {
+				return Optional.empty();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,219 @@
+package com.joshlong.youtube.client;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.stream.Stream;
+
+/**
+ * Remembers the {@code ETag} and raw body of YouTube API responses, keyed by request URI,
+ * so that we can make conditional requests and reuse what we've already got when YouTube
+ * answers {@code 304 Not Modified}. Bodies are decoded again on each hit, rather than
+ * kept decoded, and the cache holds at most {@code maxSize} of them, so that a crawl of a
+ * large channel can't fill the heap with pages it'll likely never ask for again. If given
+ * a directory, it also mirrors the bodies to disk so that they survive a restart.
+ *
+ * @author Josh Long
+ */
+@Slf4j
+class YoutubeResponseCache {
+
+	record Entry(String etag, Object value) {
+	}
+
+	private record Response(String etag, byte[] body) {
+	}
+
+	private final Cache<String, Response> responses;
+
+	private final Path directory;
+
+	/**
+	 * @param maxSize the most response bodies to keep, by their size in bytes
+	 * @param directory where to store the responses on disk. This may be {@code null}, in
+	 * which case they're only kept in memory.
+	 */
+	YoutubeResponseCache(DataSize maxSize, @Nullable Path directory) {
+		this.directory = directory;
+		this.responses = Caffeine.newBuilder()//
+				.maximumWeight(maxSize.toBytes())//
+				.weigher((String uri, Response response) -> response.body().length)//
+				.evictionListener((String uri, Response response, RemovalCause cause) -> delete(uri))//
+				.build();
+		if (directory != null)
+			prune(maxSize);
+	}
+
+	/**
+	 * @param uri the request URI
+	 * @param reader decodes the cached response body
+	 */
+	Mono<Entry> get(String uri, YoutubeJsonDecoder.Reader<?> reader) {
+		var response = this.responses.getIfPresent(uri);
+		if (response != null || this.directory == null)
+			return Mono.justOrEmpty(response).mapNotNull(cached -> decode(uri, cached, reader));
+		return Mono.fromCallable(() -> read(uri))//
+				.subscribeOn(Schedulers.boundedElastic())//
+				.doOnNext(read -> this.responses.asMap().putIfAbsent(uri, read))//
+				.mapNotNull(read -> decode(uri, read, reader));
+	}
+
+	void put(String uri, String etag, byte[] body) {
+		this.responses.put(uri, new Response(etag, body));
+		if (this.directory != null)
+			Schedulers.boundedElastic().schedule(() -> write(uri, etag, body));
+	}
+
+	/**
+	 * @return the bytes of the responses held in memory
+	 */
+	long size() {
+		this.responses.cleanUp();
+		return this.responses.policy().eviction().orElseThrow().weightedSize().orElseThrow();
+	}
+
+	/**
+	 * a body that can't be decoded, say because the file it was read from was cut short,
+	 * is a miss, and is forgotten so that the next response replaces it.
+	 */
+	@Nullable
+	private Entry decode(String uri, Response response, YoutubeJsonDecoder.Reader<?> reader) {
+		try {
+			return new Entry(response.etag(), YoutubeJsonDecoder.decode(response.body(), reader));
+		}
+		catch (IOException | RuntimeException e) {
+			log.warn("couldn't decode the cached response for " + uri + ", so it's being deleted", e);
+			this.responses.invalidate(uri);
+			delete(uri);
+			return null;
+		}
+	}
+
+	/**
+	 * the file holds the {@code ETag} on the first line and the response body after it. A
+	 * file that can't be read back is a miss, and is deleted so that the next response
+	 * replaces it.
+	 */
+	@Nullable
+	private Response read(String uri) {
+		var file = fileFor(uri);
+		if (!Files.exists(file))
+			return null;
+		try {
+			var bytes = Files.readAllBytes(file);
+			var newline = 0;
+			while (newline < bytes.length && bytes[newline] != '\n')
+				newline += 1;
+			if (newline == bytes.length)
+				throw new IOException("there's no ETag line");
+			var etag = new String(bytes, 0, newline, StandardCharsets.UTF_8);
+			return new Response(etag, Arrays.copyOfRange(bytes, newline + 1, bytes.length));
+		}
+		catch (IOException e) {
+			log.warn("couldn't read the cached response " + file + ", so it's being deleted", e);
+			try {
+				Files.deleteIfExists(file);
+			}
+			catch (IOException deleteException) {
+				log.warn("couldn't delete the cached response " + file, deleteException);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * writes to a temporary file that's then moved into place, so that a crash mid-write
+	 * never leaves a partial response where {@link #read} will find it.
+	 */
+	private void write(String uri, String etag, byte[] body) {
+		try {
+			Files.createDirectories(this.directory);
+			var file = fileFor(uri);
+			var temporary = Files.createTempFile(this.directory, file.getFileName().toString(), ".tmp");
+			try {
+				try (var out = Files.newOutputStream(temporary)) {
+					out.write((etag + '\n').getBytes(StandardCharsets.UTF_8));
+					out.write(body);
+				}
+				Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			finally {
+				Files.deleteIfExists(temporary);
+			}
+		}
+		catch (IOException e) {
+			log.warn("couldn't write the cached response for " + uri + " to disk", e);
+		}
+	}
+
+	private void delete(String uri) {
+		if (this.directory == null)
+			return;
+		var file = fileFor(uri);
+		Schedulers.boundedElastic().schedule(() -> {
+			try {
+				Files.deleteIfExists(file);
+			}
+			catch (IOException e) {
+				log.warn("couldn't delete the cached response " + file, e);
+			}
+		});
+	}
+
+	/**
+	 * keeps only the most recently written files from a previous run, up to
+	 * {@code maxSize} of them.
+	 */
+	private void prune(DataSize maxSize) {
+		if (!Files.isDirectory(this.directory))
+			return;
+		try (Stream<Path> files = Files.list(this.directory)) {
+			var kept = 0L;
+			for (var file : files.sorted(Comparator.comparing(this::lastModified).reversed()).toList()) {
+				kept += Files.size(file);
+				if (kept > maxSize.toBytes())
+					Files.deleteIfExists(file);
+			}
+		}
+		catch (IOException e) {
+			log.warn("couldn't prune the response cache in " + this.directory, e);
+		}
+	}
+
+	private long lastModified(Path file) {
+		try {
+			return Files.getLastModifiedTime(file).toMillis();
+		}
+		catch (IOException e) {
+			return 0;
+		}
+	}
+
+	private Path fileFor(String uri) {
+		try {
+			// the uri carries the api key, so keep it out of the file name
+			var hash = MessageDigest.getInstance("SHA-256").digest(uri.getBytes(StandardCharsets.UTF_8));
+			return this.directory.resolve(HexFormat.of().formatHex(hash) + ".json");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -0,0 +1,24 @@
+package com.joshlong.youtube.client;
+
+import java.time.Duration;
+
+/**
+ * Signals that the YouTube Data API has been failing so often that we've stopped calling
+ * it for a while, to give it room to recover.
+ *
+ * @author Josh Long
+ */
+public class YoutubeUnavailableException extends RuntimeException {
+
+	private final Duration untilRetry;
+
+	YoutubeUnavailableException(YoutubeEndpoint endpoint, Duration untilRetry) {
+		super("not calling " + endpoint + " because the YouTube Data API is failing. We'll try again in " + untilRetry);
+		this.untilRetry = untilRetry;
+	}
+
+	public Duration getUntilRetry() {
+		return this.untilRetry;
+	}
+
+}
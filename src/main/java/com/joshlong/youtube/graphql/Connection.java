@@ -0,0 +1,87 @@
+package com.joshlong.youtube.graphql;
+
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A page of a <a href="https://relay.dev/graphql/connections.htm">Relay connection</a>.
+ * Each cursor is the position of its node in the sort order, rather than an offset, so
+ * that the next page is a range scan starting right after it, however deep into the
+ * connection it is.
+ *
+ * @author Josh Long
+ */
+record Connection<T> (List<Edge<T>> edges, PageInfo pageInfo) {
+
+	/**
+	 * the most nodes we'll return in a single page, whatever {@code first} asks for.
+	 */
+	static final int MAX_FIRST = 100;
+
+	/**
+	 * how many nodes we'll return when {@code first} is {@code null}, as the schema's
+	 * default is only used when a client leaves {@code first} out altogether.
+	 */
+	static final int DEFAULT_FIRST = 20;
+
+	record Edge<T> (String cursor, T node) {
+	}
+
+	record PageInfo(boolean hasNextPage, @Nullable String endCursor) {
+	}
+
+	/**
+	 * @param nodes up to {@code first + 1} nodes, in order. The extra one only says that
+	 * there's another page.
+	 * @param first how many nodes were asked for
+	 * @param cursor the cursor of each node
+	 */
+	static <T> Connection<T> of(List<T> nodes, int first, Function<T, String> cursor) {
+		var page = nodes.subList(0, Math.min(first, nodes.size()));
+		var edges = page.stream().map(node -> new Edge<>(cursor.apply(node), node)).toList();
+		var endCursor = edges.isEmpty() ? null : edges.get(edges.size() - 1).cursor();
+		return new Connection<>(edges, new PageInfo(nodes.size() > first, endCursor));
+	}
+
+	static int first(@Nullable Integer first) {
+		if (first == null)
+			return DEFAULT_FIRST;
+		Assert.isTrue(first >= 0, () -> "first must not be negative, but was " + first);
+		return Math.min(first, MAX_FIRST);
+	}
+
+	/**
+	 * @param order the sort order the cursor belongs to
+	 * @param value the sort key of the node
+	 * @param id the ID of the node, which breaks ties between equal sort keys
+	 */
+	static String cursor(String order, String value, String id) {
+		var cursor = order + "\n" + value + "\n" + id;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return the sort key and the ID in the {@code cursor}
+	 */
+	static Keyset keyset(String cursor, String order) {
+		String[] parts;
+		try {
+			parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\n", 3);
+		}
+		catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("the cursor " + cursor + " is not valid", e);
+		}
+		Assert.isTrue(parts.length == 3, () -> "the cursor " + cursor + " is not valid");
+		Assert.isTrue(parts[0].equals(order), () -> "the cursor " + cursor + " belongs to a different order");
+		return new Keyset(parts[1], parts[2]);
+	}
+
+	record Keyset(String value, String id) {
+	}
+
+}
@@ -0,0 +1,20 @@
+package com.joshlong.youtube.graphql;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Narrows down the videos in a {@link Connection}. Every criterion that's given has to
+ * match.
+ * @param tag only videos with this tag
+ * @param categoryId only videos in this category
+ * @param publishedAfter only videos published at or after this ISO-8601 instant
+ * @param publishedBefore only videos published before this ISO-8601 instant
+ * @param minViews only videos with at least this many views
+ * @author Josh Long
+ */
+record VideoFilter(@Nullable String tag, @Nullable Integer categoryId, @Nullable String publishedAfter,
+		@Nullable String publishedBefore, @Nullable Integer minViews) {
+
+	static final VideoFilter NONE = new VideoFilter(null, null, null, null, null);
+
+}
@@ -0,0 +1,49 @@
+package com.joshlong.youtube.graphql;
+
+import com.joshlong.youtube.client.Video;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+
+/**
+ * The orders in which a {@link Connection} of videos can be sorted. Ties are broken by
+ * the video ID, so that every video has a distinct position to resume from.
+ *
+ * @author Josh Long
+ */
+enum VideoOrder {
+
+	PUBLISHED_AT_DESC, PUBLISHED_AT_ASC, VIEW_COUNT_DESC;
+
+	boolean ascending() {
+		return this == PUBLISHED_AT_ASC;
+	}
+
+	boolean byViews() {
+		return this == VIEW_COUNT_DESC;
+	}
+
+	/**
+	 * @return the video's sort key, as it's written in a cursor
+	 */
+	String sortKey(Video video) {
+		return byViews() ? Integer.toString(video.viewCount())
+				: LocalDateTime.ofInstant(video.publishedAt().toInstant(), ZoneOffset.UTC).toString();
+	}
+
+	/**
+	 * @return the sort key written in a cursor, as it's compared and bound to a query
+	 */
+	Comparable<?> sortKey(String value) {
+		return byViews() ? Integer.valueOf(value) : LocalDateTime.parse(value);
+	}
+
+	Comparator<Video> comparator() {
+		Comparator<Video> comparator = byViews() ? Comparator.comparingInt(Video::viewCount)
+				: Comparator.comparing(Video::publishedAt);
+		comparator = comparator.thenComparing(Video::videoId);
+		return ascending() ? comparator : comparator.reversed();
+	}
+
+}
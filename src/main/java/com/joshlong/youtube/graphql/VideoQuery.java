@@ -0,0 +1,89 @@
+package com.joshlong.youtube.graphql;
+
+import com.joshlong.youtube.client.Video;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The arguments of a {@link Connection} of videos. Videos from the database are filtered,
+ * sorted and paged by the query itself, and videos fetched from the API by
+ * {@link #apply(Collection)} or {@link #apply(Flux)}, to the same effect.
+ * @param filter which videos to return
+ * @param order the order to return them in
+ * @param first the most videos to return
+ * @param after the position after which to start, or {@code null} to start at the
+ * beginning
+ * @author Josh Long
+ */
+record VideoQuery(VideoFilter filter, VideoOrder order, int first, @Nullable Connection.Keyset after) {
+
+	static VideoQuery of(@Nullable Integer first, @Nullable String after, @Nullable VideoFilter filter,
+			@Nullable VideoOrder orderBy) {
+		var order = orderBy == null ? VideoOrder.PUBLISHED_AT_DESC : orderBy;
+		return new VideoQuery(filter == null ? VideoFilter.NONE : filter, order, Connection.first(first),
+				after == null ? null : Connection.keyset(after, order.name()));
+	}
+
+	String cursor(Video video) {
+		return Connection.cursor(this.order.name(), this.order.sortKey(video), video.videoId());
+	}
+
+	/**
+	 * @return up to {@code first + 1} of the {@code videos}, filtered and sorted
+	 */
+	List<Video> apply(Collection<Video> videos) {
+		return videos.stream()//
+				.filter(this::matches)//
+				.filter(this::isAfter)//
+				.sorted(this.order.comparator())//
+				.limit(this.first + 1L)//
+				.toList();
+	}
+
+	/**
+	 * Like {@link #apply(Collection)}, but keeps no more than {@code first + 1} of the
+	 * {@code videos} at any time, however many there are.
+	 * @return up to {@code first + 1} of the {@code videos}, filtered and sorted
+	 */
+	Mono<Collection<Video>> apply(Flux<Video> videos) {
+		var order = this.order.comparator();
+		var limit = this.first + 1;
+		return videos//
+				.filter(this::matches)//
+				.filter(this::isAfter)//
+				.collect(() -> new PriorityQueue<>(order.reversed()), (PriorityQueue<Video> page, Video video) -> {
+					page.add(video);
+					if (page.size() > limit)
+						page.poll();
+				})//
+				.map(page -> page.stream().sorted(order).toList());
+	}
+
+	private boolean matches(Video video) {
+		var filter = this.filter;
+		var publishedAt = video.publishedAt().toInstant();
+		return (filter.tag() == null || video.tags().contains(filter.tag()))
+				&& (filter.categoryId() == null || video.categoryId() == filter.categoryId())
+				&& (filter.publishedAfter() == null || !publishedAt.isBefore(Instant.parse(filter.publishedAfter())))
+				&& (filter.publishedBefore() == null || publishedAt.isBefore(Instant.parse(filter.publishedBefore())))
+				&& (filter.minViews() == null || video.viewCount() >= filter.minViews());
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private boolean isAfter(Video video) {
+		if (this.after == null)
+			return true;
+		var sortKey = (Comparable) this.order.sortKey(this.order.sortKey(video));
+		var comparison = sortKey.compareTo(this.order.sortKey(this.after.value()));
+		if (comparison == 0)
+			comparison = video.videoId().compareTo(this.after.id());
+		return this.order.ascending() ? comparison > 0 : comparison < 0;
+	}
+
+}
@@ -1,40 +1,311 @@
 package com.joshlong.youtube.graphql;
 
+import com.joshlong.youtube.YoutubeProperties;
 import com.joshlong.youtube.client.Channel;
 import com.joshlong.youtube.client.Playlist;
 import com.joshlong.youtube.client.Video;
 import com.joshlong.youtube.client.YoutubeClient;
+import graphql.schema.DataFetchingEnvironment;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.dataloader.DataLoader;
 import org.springframework.graphql.data.method.annotation.Argument;
 import org.springframework.graphql.data.method.annotation.QueryMapping;
 import org.springframework.graphql.data.method.annotation.SchemaMapping;
+import org.springframework.graphql.execution.BatchLoaderRegistry;
+import org.springframework.lang.Nullable;
+import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Controller;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+/**
+ * Serves the channels, playlists and videos that the ingest has stored, so that a query
+ * costs a few database round trips rather than quota. Playlists and videos are
+ * {@link Connection connections}, paged with keyset cursors. Nested fields are resolved
+ * through {@link DataLoader data loaders}, so each level of the response is a single
+ * query however many parents it has, and each parent's page is loaded once per request.
+ * If {@code bootiful.graphql.live-fallback} is set, a channel or playlist that hasn't
+ * been ingested is fetched from the YouTube API instead.
+ *
+ * @author Josh Long
+ */
 @Controller
 class YoutubeGraphqlController {
 
 	private final YoutubeClient yt;
 
-	YoutubeGraphqlController(YoutubeClient youtubeClient) {
+	private final YoutubeRepository repository;
+
+	private final boolean liveFallback;
+
+	private final MeterRegistry registry;
+
+	private static final String CHANNEL_PLAYLISTS = "channelPlaylists";
+
+	private static final String CHANNEL_VIDEOS = "channelVideos";
+
+	private static final String PLAYLIST_VIDEOS = "playlistVideos";
+
+	/**
+	 * playlists are always newest first.
+	 */
+	private static final String PLAYLIST_ORDER = "PLAYLISTS_PUBLISHED_AT_DESC";
+
+	private record Page(int first, @Nullable Connection.Keyset after) {
+	}
+
+	private record ChannelPlaylistsKey(String channelId, int first, @Nullable Connection.Keyset after) {
+	}
+
+	private record ChannelVideosKey(String channelId, VideoQuery query) {
+	}
+
+	private record PlaylistVideosKey(String playlistId, VideoQuery query) {
+	}
+
+	YoutubeGraphqlController(YoutubeClient youtubeClient, DatabaseClient databaseClient, YoutubeProperties properties,
+			BatchLoaderRegistry loaders, MeterRegistry registry) {
 		this.yt = youtubeClient;
+		this.repository = new YoutubeRepository(databaseClient);
+		this.liveFallback = properties.graphql().liveFallback();
+		this.registry = registry;
+		loaders.<ChannelPlaylistsKey, Connection<Playlist>>forName(CHANNEL_PLAYLISTS).registerMappedBatchLoader(
+				(keys, environment) -> timed(CHANNEL_PLAYLISTS, keys.size(), loadPlaylists(keys)));
+		loaders.<ChannelVideosKey, Connection<Video>>forName(CHANNEL_VIDEOS)
+				.registerMappedBatchLoader((keys, environment) -> timed(CHANNEL_VIDEOS, keys.size(),
+						loadVideos(keys, ChannelVideosKey::channelId, ChannelVideosKey::query,
+								this.repository::findVideosByChannels, this.repository::findStoredChannelIds,
+								this::liveChannelVideos)));
+		loaders.<PlaylistVideosKey, Connection<Video>>forName(PLAYLIST_VIDEOS)
+				.registerMappedBatchLoader((keys, environment) -> timed(PLAYLIST_VIDEOS, keys.size(),
+						loadVideos(keys, PlaylistVideosKey::playlistId, PlaylistVideosKey::query,
+								this.repository::findVideosByPlaylists, this.repository::findStoredPlaylistIds,
+								this::liveVideos)));
 	}
 
 	@QueryMapping
 	Mono<Channel> channelByUsername(@Argument String username) {
-		return this.yt.getChannelByUsername(username);
+		var stored = this.repository.findChannelByUsername(username);
+		return this.liveFallback ? stored.switchIfEmpty(Mono.defer(() -> this.yt.getChannelByUsername(username)))
+				: stored;
 	}
 
 	@SchemaMapping(typeName = "Channel")
-	Flux<Playlist> playlists(Channel channel) {
-		return this.yt.getAllPlaylistsByChannel(channel.channelId());
+	CompletableFuture<Connection<Playlist>> playlists(Channel channel, @Argument @Nullable Integer first,
+			@Argument @Nullable String after, DataFetchingEnvironment environment) {
+		DataLoader<ChannelPlaylistsKey, Connection<Playlist>> loader = environment.getDataLoader(CHANNEL_PLAYLISTS);
+		return loader.load(new ChannelPlaylistsKey(channel.channelId(), Connection.first(first),
+				after == null ? null : Connection.keyset(after, PLAYLIST_ORDER)));
+	}
+
+	@SchemaMapping(typeName = "Channel")
+	CompletableFuture<Connection<Video>> videos(Channel channel, @Argument @Nullable Integer first,
+			@Argument @Nullable String after, @Argument @Nullable VideoFilter filter,
+			@Argument @Nullable VideoOrder orderBy, DataFetchingEnvironment environment) {
+		DataLoader<ChannelVideosKey, Connection<Video>> loader = environment.getDataLoader(CHANNEL_VIDEOS);
+		return loader.load(new ChannelVideosKey(channel.channelId(), VideoQuery.of(first, after, filter, orderBy)));
 	}
 
 	@SchemaMapping(typeName = "Playlist")
-	Flux<Video> videos(Playlist playlist) {
-		return this.yt.getAllVideosByPlaylist(playlist.playlistId());
+	CompletableFuture<Connection<Video>> videos(Playlist playlist, @Argument @Nullable Integer first,
+			@Argument @Nullable String after, @Argument @Nullable VideoFilter filter,
+			@Argument @Nullable VideoOrder orderBy, DataFetchingEnvironment environment) {
+		DataLoader<PlaylistVideosKey, Connection<Video>> loader = environment.getDataLoader(PLAYLIST_VIDEOS);
+		return loader.load(new PlaylistVideosKey(playlist.playlistId(), VideoQuery.of(first, after, filter, orderBy)));
+	}
+
+	/**
+	 * Times each batch a data loader loads, and records how many keys were in it. Spring
+	 * Boot publishes how long each field took to resolve as {@code graphql.datafetcher}.
+	 */
+	private <T> Mono<T> timed(String loader, int keys, Mono<T> load) {
+		return Mono.defer(() -> {
+			var sample = Timer.start(this.registry);
+			DistributionSummary.builder("youtube.graphql.loader.keys")//
+					.description("how many parents each batch loaded the children of")//
+					.tag("loader", loader)//
+					.register(this.registry)//
+					.record(keys);
+			return load.doOnTerminate(() -> sample.stop(Timer.builder("youtube.graphql.loader")//
+					.description("how long each batch took to load")//
+					.tag("loader", loader)//
+					.publishPercentileHistogram()//
+					.register(this.registry)));
+		});
+	}
+
+	/**
+	 * Resolves a page of playlists for every channel that asks for the same page with a
+	 * single query. The live fallback can't do the same, as the API lists one channel's
+	 * playlists at a time.
+	 */
+	private Mono<Map<ChannelPlaylistsKey, Connection<Playlist>>> loadPlaylists(Set<ChannelPlaylistsKey> keys) {
+		var pages = keys.stream().collect(Collectors.groupingBy(key -> new Page(key.first(), key.after())));
+		return Flux//
+				.fromIterable(pages.entrySet())//
+				.flatMap(page -> {
+					var first = page.getKey().first();
+					var after = page.getKey().after();
+					var channelIds = page.getValue().stream().map(ChannelPlaylistsKey::channelId).distinct().toList();
+					return this.repository//
+							.findPlaylistsByChannels(channelIds, first, after)//
+							.collectMultimap(Playlist::channelId)//
+							.flatMap(stored -> withLiveFallback(channelIds, stored,
+									this.repository::findStoredChannelIds, ids -> livePlaylists(ids, first, after)))//
+							.flatMapIterable(playlists -> page.getValue()//
+									.stream()//
+									.map(key -> Map.entry(key,
+											Connection.of(children(playlists, key.channelId()), first,
+													YoutubeGraphqlController::cursor)))//
+									.toList());
+				})//
+				.collectMap(Map.Entry::getKey, Map.Entry::getValue);
+	}
+
+	/**
+	 * Resolves the videos of every parent that asks for the same page of the same query
+	 * with a single query, each parent's page starting where its cursor points.
+	 * @param parentIds the ID of the channel or playlist in each key
+	 * @param stored finds the page of each parent's videos that we've stored
+	 * @param findStored which of the parents we've stored, even if without videos
+	 * @param live fetches the page of each parent's videos that matches the query from
+	 * the API
+	 */
+	private <K> Mono<Map<K, Connection<Video>>> loadVideos(Set<K> keys, Function<K, String> parentIds,
+			Function<K, VideoQuery> queries,
+			BiFunction<List<String>, VideoQuery, Flux<YoutubeRepository.ParentVideo>> stored,
+			Function<Collection<String>, Mono<Set<String>>> findStored,
+			BiFunction<Collection<String>, VideoQuery, Mono<Map<String, Collection<Video>>>> live) {
+		var queried = keys.stream().collect(Collectors.groupingBy(queries));
+		return Flux//
+				.fromIterable(queried.entrySet())//
+				.flatMap(entry -> {
+					var query = entry.getKey();
+					var ids = entry.getValue().stream().map(parentIds).distinct().toList();
+					return stored.apply(ids, query)//
+							.collectMultimap(YoutubeRepository.ParentVideo::parentId,
+									YoutubeRepository.ParentVideo::video)//
+							.flatMap(videos -> withLiveFallback(ids, videos, findStored,
+									unknown -> live.apply(unknown, query)))//
+							.flatMapIterable(videos -> entry.getValue()//
+									.stream()//
+									.map(key -> Map.entry(key,
+											Connection.of(children(videos, parentIds.apply(key)), query.first(),
+													query::cursor)))//
+									.toList());
+				})//
+				.collectMap(Map.Entry::getKey, Map.Entry::getValue);
+	}
+
+	/**
+	 * @param ids the IDs of all the parents
+	 * @param stored the children we've stored, keyed by the ID of their parent
+	 * @param findStored which of the parents we've stored, even if without children
+	 * @param live fetches the children of the parents we haven't stored from the API
+	 */
+	private <T> Mono<Map<String, Collection<T>>> withLiveFallback(List<String> ids, Map<String, Collection<T>> stored,
+			Function<Collection<String>, Mono<Set<String>>> findStored,
+			Function<Collection<String>, Mono<Map<String, Collection<T>>>> live) {
+		var missing = ids.stream().filter(id -> !stored.containsKey(id)).toList();
+		if (!this.liveFallback || missing.isEmpty())
+			return Mono.just(stored);
+		return findStored.apply(missing)//
+				.flatMap(known -> {
+					var unknown = missing.stream().filter(id -> !known.contains(id)).toList();
+					return unknown.isEmpty() ? Mono.just(Map.<String, Collection<T>>of()) : live.apply(unknown);
+				})//
+				.map(fetched -> {
+					var merged = new HashMap<>(stored);
+					merged.putAll(fetched);
+					return merged;
+				});
+	}
+
+	private Mono<Map<String, Collection<Playlist>>> livePlaylists(Collection<String> channelIds, int first,
+			@Nullable Connection.Keyset after) {
+		Comparator<Playlist> newestFirst = Comparator.comparing(Playlist::publishedAt)
+				.thenComparing(Playlist::playlistId).reversed();
+		return Flux//
+				.fromIterable(channelIds)//
+				.flatMap(this.yt::getAllPlaylistsByChannel)//
+				.filter(playlist -> after == null || isAfter(playlist, after))//
+				.collectMultimap(Playlist::channelId)//
+				.map(playlists -> {
+					var page = new HashMap<String, Collection<Playlist>>();
+					playlists.forEach((channelId, all) -> page.put(channelId,
+							all.stream().sorted(newestFirst).limit(first + 1L).toList()));
+					return page;
+				});
+	}
+
+	private Mono<Map<String, Collection<Video>>> liveVideos(Collection<String> playlistIds, VideoQuery query) {
+		return Flux//
+				.fromIterable(playlistIds)//
+				.flatMap(playlistId -> this.yt//
+						.getAllVideoIdsByPlaylist(playlistId)//
+						.collectList()//
+						.map(videoIds -> Map.entry(playlistId, videoIds)))//
+				.collectMap(Map.Entry::getKey, Map.Entry::getValue)//
+				.flatMap(videoIdsByPlaylist -> {
+					var videoIds = videoIdsByPlaylist.values().stream().flatMap(List::stream).distinct().toList();
+					return this.yt//
+							.getVideosByIds(videoIds)//
+							.map(videos -> {
+								var videosByPlaylist = new HashMap<String, Collection<Video>>();
+								videoIdsByPlaylist.forEach((playlistId, ids) -> videosByPlaylist.put(playlistId,
+										query.apply(ids.stream().map(videos::get).filter(Objects::nonNull).toList())));
+								return videosByPlaylist;
+							});
+				});
+	}
+
+	/**
+	 * Streams each channel's videos through the {@code query}, which only ever holds on
+	 * to the page it's building, rather than collecting whole channels first.
+	 */
+	private Mono<Map<String, Collection<Video>>> liveChannelVideos(Collection<String> channelIds, VideoQuery query) {
+		return Flux//
+				.fromIterable(channelIds)//
+				.flatMap(channelId -> query//
+						.apply(this.yt.getAllVideosByChannel(channelId))//
+						.map(videos -> Map.entry(channelId, videos)))//
+				.collectMap(Map.Entry::getKey, Map.Entry::getValue);
+	}
+
+	private static <T> List<T> children(Map<String, Collection<T>> children, String parentId) {
+		return List.copyOf(children.getOrDefault(parentId, List.of()));
+	}
+
+	/**
+	 * @return whether the {@code playlist} comes after the {@code cursor}, newest first,
+	 * comparing the cursor's {@code (published_at, playlist_id)} as the database does
+	 */
+	private static boolean isAfter(Playlist playlist, Connection.Keyset cursor) {
+		var publishedAt = LocalDateTime.ofInstant(playlist.publishedAt().toInstant(), ZoneOffset.UTC);
+		var comparison = publishedAt.compareTo(LocalDateTime.parse(cursor.value()));
+		return comparison < 0 || (comparison == 0 && playlist.playlistId().compareTo(cursor.id()) < 0);
+	}
+
+	private static String cursor(Playlist playlist) {
+		var publishedAt = LocalDateTime.ofInstant(playlist.publishedAt().toInstant(), ZoneOffset.UTC);
+		return Connection.cursor(PLAYLIST_ORDER, publishedAt.toString(), playlist.playlistId());
 	}
 
 	@SchemaMapping(typeName = "Video")
@@ -0,0 +1,244 @@
+package com.joshlong.youtube.graphql;
+
+import com.joshlong.youtube.client.Channel;
+import com.joshlong.youtube.client.Playlist;
+import com.joshlong.youtube.client.Video;
+import io.r2dbc.spi.Row;
+import lombok.RequiredArgsConstructor;
+import org.springframework.lang.Nullable;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Reads what the ingest has stored in {@code yt_channels}, {@code yt_playlists},
+ * {@code yt_playlist_videos} and {@code yt_videos}. Rows that the channel's latest
+ * completed run didn't see are stale, and aren't returned even if they haven't been swept
+ * yet.
+ *
+ * @author Josh Long
+ */
+@RequiredArgsConstructor
+class YoutubeRepository {
+
+	private final DatabaseClient databaseClient;
+
+	/**
+	 * a video, and the ID of the channel or playlist it was found through.
+	 */
+	record ParentVideo(String parentId, Video video) {
+	}
+
+	Mono<Channel> findChannelByUsername(String username) {
+		return this.databaseClient//
+				.sql("select channel_id, title, description, published_at from yt_channels where lower(username) = lower(:username)")//
+				.bind("username", username)//
+				.map((row, metadata) -> new Channel(row.get("channel_id", String.class), row.get("title", String.class),
+						row.get("description", String.class), date(row, "published_at")))//
+				.first();
+	}
+
+	/**
+	 * @return up to {@code first + 1} of each channel's playlists, newest first, starting
+	 * after {@code after}
+	 */
+	Flux<Playlist> findPlaylistsByChannels(Collection<String> channelIds, int first,
+			@Nullable Connection.Keyset after) {
+		var sql = """
+				select p.*
+				from unnest(:channelIds::varchar[]) as k (channel_id)
+				cross join lateral (
+				    select p.playlist_id, p.channel_id, p.published_at, p.title, p.description, p.item_count
+				    from yt_playlists p
+				    where p.channel_id = k.channel_id
+				        and coalesce(p.last_seen_run, 0) >= coalesce((
+				            select max(r.run_id) from yt_ingest_runs r
+				            where r.channel_id = k.channel_id and r.completed_at is not null
+				        ), 0)
+				        %s
+				    order by p.published_at desc, p.playlist_id desc
+				    limit :limit
+				) p
+				""".formatted(
+				after == null ? "" : "and (p.published_at, p.playlist_id) < (:afterPublishedAt, :afterPlaylistId)");
+		var spec = this.databaseClient//
+				.sql(sql)//
+				.bind("channelIds", channelIds.toArray(String[]::new))//
+				.bind("limit", first + 1);
+		if (after != null)
+			spec = spec//
+					.bind("afterPublishedAt", LocalDateTime.parse(after.value()))//
+					.bind("afterPlaylistId", after.id());
+		return spec//
+				.map((row, metadata) -> new Playlist(row.get("playlist_id", String.class),
+						row.get("channel_id", String.class), date(row, "published_at"), row.get("title", String.class),
+						row.get("description", String.class), row.get("item_count", Integer.class)))//
+				.all();
+	}
+
+	/**
+	 * @return up to {@code first + 1} of each channel's videos that match the
+	 * {@code query}, in its order
+	 */
+	Flux<ParentVideo> findVideosByChannels(Collection<String> channelIds, VideoQuery query) {
+		var source = """
+				from yt_videos v
+				where v.channel_id = k.parent_id
+				    and coalesce(v.last_seen_run, 0) >= coalesce((
+				        select max(r.run_id) from yt_ingest_runs r
+				        where r.channel_id = k.parent_id and r.completed_at is not null and r.high_water_mark is null
+				    ), 0)
+				""";
+		return findVideos(source, channelIds, query);
+	}
+
+	/**
+	 * @return up to {@code first + 1} of each playlist's videos that match the
+	 * {@code query}, in its order, or none for a playlist that the channel's latest
+	 * completed run did not see. Unlike a channel's videos, these are sorted after the
+	 * join rather than read in order from an index: a playlist holds at most a few
+	 * thousand videos, all found through the playlist's memberships, so the sort is
+	 * bounded by the playlist, not by the channel.
+	 */
+	Flux<ParentVideo> findVideosByPlaylists(Collection<String> playlistIds, VideoQuery query) {
+		var source = """
+				from yt_playlist_videos pv
+				    join yt_playlists p on p.playlist_id = pv.playlist_id
+				    join yt_videos v on v.video_id = pv.video_id
+				where pv.playlist_id = k.parent_id
+				    and coalesce(pv.last_seen_run, 0) >= coalesce(p.walked_run, 0)
+				    and coalesce(p.last_seen_run, 0) >= coalesce((
+				        select max(r.run_id) from yt_ingest_runs r
+				        where r.channel_id = p.channel_id and r.completed_at is not null
+				    ), 0)
+				""";
+		return findVideos(source, playlistIds, query);
+	}
+
+	/**
+	 * Pages through each parent's videos with a lateral join, so that a single statement
+	 * serves all the parents, and each parent's page is a range scan of an index from the
+	 * position in the cursor, rather than an {@code offset}.
+	 */
+	private Flux<ParentVideo> findVideos(String source, Collection<String> parentIds, VideoQuery query) {
+		var order = query.order();
+		var sortKey = order.byViews() ? "v.view_count" : "v.published_at";
+		var direction = order.ascending() ? "asc" : "desc";
+		var filter = query.filter();
+		var criteria = new StringBuilder();
+		var bindings = new LinkedHashMap<String, Object>();
+		if (filter.tag() != null) {
+			criteria.append(" and v.tags @> :tags::text[]");
+			bindings.put("tags", new String[] { filter.tag() });
+		}
+		if (filter.categoryId() != null) {
+			criteria.append(" and v.category_id = :categoryId");
+			bindings.put("categoryId", filter.categoryId());
+		}
+		if (filter.publishedAfter() != null) {
+			criteria.append(" and v.published_at >= :publishedAfter");
+			bindings.put("publishedAfter", timestamp(filter.publishedAfter()));
+		}
+		if (filter.publishedBefore() != null) {
+			criteria.append(" and v.published_at < :publishedBefore");
+			bindings.put("publishedBefore", timestamp(filter.publishedBefore()));
+		}
+		if (filter.minViews() != null) {
+			criteria.append(" and v.view_count >= :minViews");
+			bindings.put("minViews", filter.minViews());
+		}
+		if (query.after() != null) {
+			criteria.append(" and (%s, v.video_id) %s (:afterSortKey, :afterVideoId)".formatted(sortKey,
+					order.ascending() ? ">" : "<"));
+			bindings.put("afterSortKey", order.sortKey(query.after().value()));
+			bindings.put("afterVideoId", query.after().id());
+		}
+		var sql = """
+				select k.parent_id, v.*
+				from unnest(:parentIds::varchar[]) as k (parent_id)
+				cross join lateral (
+				    select v.video_id, v.title, v.description, v.published_at, v.standard_thumbnail, v.tags,
+				        v.category_id, v.view_count, v.like_count, v.favorite_count, v.comment_count, v.channel_id
+				    %s %s
+				    order by %s %s, v.video_id %s
+				    limit :limit
+				) v
+				""".formatted(source, criteria, sortKey, direction, direction);
+		var spec = this.databaseClient//
+				.sql(sql)//
+				.bind("parentIds", parentIds.toArray(String[]::new))//
+				.bind("limit", query.first() + 1);
+		for (var binding : bindings.entrySet())
+			spec = spec.bind(binding.getKey(), binding.getValue());
+		return spec//
+				.map((row, metadata) -> new ParentVideo(row.get("parent_id", String.class), video(row)))//
+				.all();
+	}
+
+	/**
+	 * @return those of the {@code channelIds} that we've stored
+	 */
+	Mono<Set<String>> findStoredChannelIds(Collection<String> channelIds) {
+		return this.databaseClient//
+				.sql("select channel_id from yt_channels where channel_id = any(:channelIds)")//
+				.bind("channelIds", channelIds.toArray(String[]::new))//
+				.map((row, metadata) -> row.get("channel_id", String.class))//
+				.all()//
+				.collect(Collectors.toSet());
+	}
+
+	/**
+	 * @return those of the {@code playlistIds} that we've stored
+	 */
+	Mono<Set<String>> findStoredPlaylistIds(Collection<String> playlistIds) {
+		return this.databaseClient//
+				.sql("select playlist_id from yt_playlists where playlist_id = any(:playlistIds)")//
+				.bind("playlistIds", playlistIds.toArray(String[]::new))//
+				.map((row, metadata) -> row.get("playlist_id", String.class))//
+				.all()//
+				.collect(Collectors.toSet());
+	}
+
+	private static Video video(Row row) {
+		var tags = row.get("tags", String[].class);
+		return new Video(row.get("video_id", String.class), row.get("title", String.class),
+				row.get("description", String.class), date(row, "published_at"),
+				url(row.get("standard_thumbnail", String.class)), tags == null ? List.of() : List.of(tags),
+				row.get("category_id", Integer.class), row.get("view_count", Integer.class),
+				row.get("like_count", Integer.class), row.get("favorite_count", Integer.class),
+				row.get("comment_count", Integer.class), row.get("channel_id", String.class));
+	}
+
+	/**
+	 * {@code published_at} holds UTC without a zone.
+	 */
+	private static LocalDateTime timestamp(String instant) {
+		return LocalDateTime.ofInstant(Instant.parse(instant), ZoneOffset.UTC);
+	}
+
+	private static Date date(Row row, String column) {
+		return Date.from(row.get(column, Instant.class));
+	}
+
+	private static URL url(String url) {
+		try {
+			return new URL(url);
+		}
+		catch (MalformedURLException e) {
+			throw new IllegalStateException("the thumbnail URL " + url + " is not valid", e);
+		}
+	}
+
+}
@@ -0,0 +1,154 @@
+package com.joshlong.youtube.runner;
+
+import org.reactivestreams.Subscription;
+import org.springframework.lang.Nullable;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gathers pages into batches for the stage that writes them, like
+ * {@link Flux#bufferTimeout(int, Duration)}: a batch is emitted once it holds
+ * {@code maxSize} pages, or once its first page has waited for {@code window}.
+ * <p>
+ * {@code bufferTimeout} asks upstream for {@code maxSize} pages for every batch it's
+ * asked for, and then emits batches cut short by the window whether or not anyone's asked
+ * for them, so a writer that falls behind fails the ingest with an
+ * {@code OverflowException}. These batches only ask upstream for pages while the next
+ * stage is ready for another batch, and never for more than it takes to fill the batch
+ * being gathered, so a slow writer slows the fetching of pages all the way back to the
+ * HTTP requests, and no more than {@code maxSize} pages ever wait here.
+ *
+ * @author Josh Long
+ */
+final class IngestBatches {
+
+	private IngestBatches() {
+	}
+
+	static <T> Flux<List<T>> of(Flux<T> upstream, int maxSize, Duration window) {
+		return Flux.create(sink -> {
+			var batcher = new Batcher<>(sink, maxSize, window);
+			upstream.subscribe(batcher);
+			sink.onRequest(requested -> batcher.drain()).onDispose(batcher);
+		});
+	}
+
+	private static class Batcher<T> extends BaseSubscriber<T> {
+
+		private final FluxSink<List<T>> sink;
+
+		private final int maxSize;
+
+		private final Duration window;
+
+		private List<T> batch = new ArrayList<>();
+
+		/**
+		 * the pages asked for, but not yet received
+		 */
+		private int pending;
+
+		/**
+		 * whether the batch being gathered has waited for its window
+		 */
+		private boolean expired;
+
+		/**
+		 * expires the batch being gathered, unless it's emitted first
+		 */
+		@Nullable
+		private Disposable timer;
+
+		private boolean completed;
+
+		Batcher(FluxSink<List<T>> sink, int maxSize, Duration window) {
+			this.sink = sink;
+			this.maxSize = maxSize;
+			this.window = window;
+		}
+
+		@Override
+		protected void hookOnSubscribe(Subscription subscription) {
+			drain();
+		}
+
+		@Override
+		protected synchronized void hookOnNext(T page) {
+			this.pending -= 1;
+			this.batch.add(page);
+			if (this.batch.size() == 1) {
+				var started = this.batch;
+				cancelTimer();
+				this.timer = Schedulers.parallel().schedule(() -> expire(started), this.window.toMillis(),
+						TimeUnit.MILLISECONDS);
+			}
+			drain();
+		}
+
+		@Override
+		protected synchronized void hookOnComplete() {
+			this.completed = true;
+			drain();
+		}
+
+		@Override
+		protected synchronized void hookOnError(Throwable throwable) {
+			this.sink.error(throwable);
+		}
+
+		@Override
+		protected synchronized void hookFinally(SignalType type) {
+			cancelTimer();
+		}
+
+		private void cancelTimer() {
+			if (this.timer != null)
+				this.timer.dispose();
+			this.timer = null;
+		}
+
+		private synchronized void expire(List<T> started) {
+			if (this.batch != started)
+				return;
+			this.expired = true;
+			drain();
+		}
+
+		/**
+		 * Emits the batch if it's ready and asked for, then asks upstream for whatever it
+		 * takes to fill the next. Everything that the sink or upstream call back into
+		 * comes back through here, so the state is settled before either is called.
+		 */
+		synchronized void drain() {
+			var ready = this.batch.size() == this.maxSize
+					|| (!this.batch.isEmpty() && (this.expired || this.completed));
+			if (ready && this.sink.requestedFromDownstream() > 0) {
+				var full = this.batch;
+				this.batch = new ArrayList<>();
+				this.expired = false;
+				this.sink.next(full);
+			}
+			if (this.completed) {
+				if (this.batch.isEmpty())
+					this.sink.complete();
+				return;
+			}
+			var wanted = this.maxSize - this.batch.size() - this.pending;
+			if (wanted > 0 && this.sink.requestedFromDownstream() > 0) {
+				this.pending += wanted;
+				request(wanted);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,85 @@
+package com.joshlong.youtube.runner;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Mono;
+
+/**
+ * Publishes where an ingest spends its time, alongside what each {@link IngestStage}
+ * publishes:
+ * <ul>
+ * <li>{@code youtube.ingest.runs}: how long each channel took to ingest, and whether it
+ * succeeded</li>
+ * <li>{@code youtube.ingest.pages}: the pages fetched, from the uploads or from a
+ * playlist</li>
+ * <li>{@code youtube.ingest.statement.duration}: how long each write took, tagged with
+ * the statement</li>
+ * <li>{@code youtube.ingest.statement.batch.size}: how many rows each write was
+ * given</li>
+ * <li>{@code youtube.ingest.statement.rows}: how many rows each write changed</li>
+ * </ul>
+ *
+ * @author Josh Long
+ */
+@RequiredArgsConstructor
+class IngestMetrics {
+
+	private final MeterRegistry registry;
+
+	<T> Mono<T> run(Mono<T> ingest) {
+		return timed(ingest, Timer.builder("youtube.ingest.runs")//
+				.description("how long each channel took to ingest"));
+	}
+
+	/**
+	 * @param source {@code uploads} or {@code playlist}
+	 */
+	void page(String source) {
+		Counter.builder("youtube.ingest.pages")//
+				.description("the pages fetched from the YouTube Data API")//
+				.tag("source", source)//
+				.register(this.registry)//
+				.increment();
+	}
+
+	/**
+	 * @param statement names the write
+	 * @param batchSize how many rows the write was given
+	 * @param write the write, emitting how many rows it changed
+	 */
+	Mono<Integer> statement(String statement, int batchSize, Mono<Integer> write) {
+		var timer = Timer.builder("youtube.ingest.statement.duration")//
+				.description("how long each write took")//
+				.tag("statement", statement)//
+				.publishPercentileHistogram();
+		return timed(write, timer)//
+				.doOnNext(rows -> {
+					summary("youtube.ingest.statement.batch.size", "how many rows each write was given", statement)
+							.record(batchSize);
+					summary("youtube.ingest.statement.rows", "how many rows each write changed", statement)
+							.record(rows);
+				});
+	}
+
+	private DistributionSummary summary(String name, String description, String statement) {
+		return DistributionSummary.builder(name)//
+				.description(description)//
+				.baseUnit("rows")//
+				.tag("statement", statement)//
+				.register(this.registry);
+	}
+
+	private <T> Mono<T> timed(Mono<T> work, Timer.Builder timer) {
+		return Mono.defer(() -> {
+			var sample = Timer.start(this.registry);
+			return work//
+					.doOnSuccess(result -> sample.stop(timer.tag("outcome", "SUCCESS").register(this.registry)))//
+					.doOnError(error -> sample.stop(timer.tag("outcome", "ERROR").register(this.registry)))//
+					.doOnCancel(() -> sample.stop(timer.tag("outcome", "CANCELLED").register(this.registry)));
+		});
+	}
+
+}
@@ -0,0 +1,135 @@
+package com.joshlong.youtube.runner;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.lang.Nullable;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Remembers, in {@code yt_ingest_runs} and {@code yt_ingest_checkpoints}, how far each
+ * ingest run got, so that a run cut short by a crash or a deploy is resumed rather than
+ * started over. A run has a checkpoint for the channel's uploads and one for each of its
+ * playlists, holding the token of the next page to fetch and how many items have been
+ * written so far.
+ *
+ * @author Josh Long
+ */
+@RequiredArgsConstructor
+class IngestRunRepository {
+
+	/**
+	 * the checkpoint of the channel's uploads, as opposed to one of its playlists.
+	 */
+	static final String UPLOADS = "uploads";
+
+	private final DatabaseClient databaseClient;
+
+	/**
+	 * @param runId identifies the run
+	 * @param highWaterMark the publication date of the newest video we had when the run
+	 * started, which has to stay the same however often the run is resumed
+	 */
+	record IngestRun(long runId, @Nullable Date highWaterMark) {
+	}
+
+	/**
+	 * @param pageToken the next page to fetch, or {@code null} to start from the first
+	 * @param processed how many items have been written so far
+	 * @param completed whether every page has been written
+	 */
+	record Checkpoint(@Nullable String pageToken, long processed, boolean completed) {
+	}
+
+	/**
+	 * @return the channel's run that was started and never completed, if any
+	 */
+	Mono<Optional<IngestRun>> findUnfinished(String channelId) {
+		var sql = """
+				select run_id, high_water_mark from yt_ingest_runs
+				where channel_id = :channelId and completed_at is null
+				order by run_id desc
+				limit 1
+				""";
+		return this.databaseClient//
+				.sql(sql)//
+				.bind("channelId", channelId)//
+				.map((row, metadata) -> {
+					var highWaterMark = row.get("high_water_mark", Instant.class);
+					return Optional.of(new IngestRun(row.get("run_id", Long.class),
+							highWaterMark == null ? null : Date.from(highWaterMark)));
+				})//
+				.one()//
+				.defaultIfEmpty(Optional.empty());
+	}
+
+	Mono<IngestRun> start(String channelId, @Nullable Date highWaterMark) {
+		var spec = this.databaseClient//
+				.sql("insert into yt_ingest_runs (channel_id, high_water_mark) values (:channelId, :highWaterMark) returning run_id")//
+				.bind("channelId", channelId);
+		spec = highWaterMark == null ? spec.bindNull("highWaterMark", Date.class)
+				: spec.bind("highWaterMark", highWaterMark);
+		return spec//
+				.map((row, metadata) -> new IngestRun(row.get("run_id", Long.class), highWaterMark))//
+				.one();
+	}
+
+	/**
+	 * @return the run's checkpoints, keyed by playlist ID or {@link #UPLOADS}
+	 */
+	Mono<Map<String, Checkpoint>> findCheckpoints(long runId) {
+		return this.databaseClient//
+				.sql("select source, page_token, processed, completed from yt_ingest_checkpoints where run_id = :runId")//
+				.bind("runId", runId)//
+				.map((row, metadata) -> Map.entry(row.get("source", String.class),
+						new Checkpoint(row.get("page_token", String.class), row.get("processed", Long.class),
+								row.get("completed", Boolean.class))))//
+				.all()//
+				.collectMap(Map.Entry::getKey, Map.Entry::getValue);
+	}
+
+	/**
+	 * Records that everything up to {@code nextPageToken} has been written. Call this
+	 * only once the writes have committed.
+	 * @param nextPageToken the next page to fetch, or {@code null} if there are no more
+	 * pages
+	 */
+	Mono<Void> checkpoint(long runId, String source, @Nullable String nextPageToken, long processed) {
+		var sql = """
+				insert into yt_ingest_checkpoints (run_id, source, page_token, processed, completed)
+				values (:runId, :source, :pageToken, :processed, :completed)
+				on conflict on constraint yt_ingest_checkpoints_pkey
+				do update set page_token = :pageToken, processed = :processed, completed = :completed
+				""";
+		var spec = this.databaseClient//
+				.sql(sql)//
+				.bind("runId", runId)//
+				.bind("source", source)//
+				.bind("processed", processed)//
+				.bind("completed", nextPageToken == null);
+		spec = nextPageToken == null ? spec.bindNull("pageToken", String.class) : spec.bind("pageToken", nextPageToken);
+		return spec.fetch().rowsUpdated().then();
+	}
+
+	/**
+	 * Marks the run as completed, after which its checkpoints are no use to anyone.
+	 */
+	Mono<Void> complete(long runId) {
+		return this.databaseClient//
+				.sql("update yt_ingest_runs set completed_at = now() where run_id = :runId")//
+				.bind("runId", runId)//
+				.fetch()//
+				.rowsUpdated()//
+				.then(this.databaseClient//
+						.sql("delete from yt_ingest_checkpoints where run_id = :runId")//
+						.bind("runId", runId)//
+						.fetch()//
+						.rowsUpdated())//
+				.then();
+	}
+
+}
@@ -2,6 +2,8 @@ package com.joshlong.youtube.runner;
 
 import com.joshlong.youtube.YoutubeProperties;
 import com.joshlong.youtube.client.YoutubeClient;
+import com.joshlong.youtube.client.YoutubeQuota;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.r2dbc.spi.ConnectionFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -9,6 +11,11 @@ import org.springframework.r2dbc.connection.R2dbcTransactionManager;
 import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.transaction.ReactiveTransactionManager;
 import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.util.StringUtils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.LinkedHashMap;
 
 @Configuration
 class IngestRunnerJobConfiguration {
@@ -25,8 +32,45 @@ class IngestRunnerJobConfiguration {
 
 	@Bean
 	YoutubeIngestJobRunner youtubeIngestJobRunner(YoutubeClient client, DatabaseClient databaseClient,
+			YoutubeProperties properties, MeterRegistry registry) {
+		var batch = properties.batch();
+		var stages = batch.stages();
+		var ingestStages = new YoutubeIngestJobRunner.IngestStages(stage("playlists", stages.playlists(), registry),
+				stage("playlist-videos", stages.playlistVideos(), registry),
+				stage("playlist-video-writes", stages.playlistVideoWrites(), registry),
+				stage("video-writes", stages.videoWrites(), registry));
+		var metrics = new IngestMetrics(registry);
+		return new YoutubeIngestJobRunner(client, databaseClient, new VideoBatchWriter(databaseClient, metrics),
+				batch.videoBatchSize(), batch.videoBatchWindow(), batch.incremental(), ingestStages,
+				new IngestRunRepository(databaseClient),
+				new StaleRowSweeper(databaseClient, batch.sweep().enabled(), batch.sweep().batchSize()), metrics);
+	}
+
+	private static IngestStage stage(String name, YoutubeProperties.Stage stage, MeterRegistry registry) {
+		return new IngestStage(name, stage.concurrency(), stage.prefetch(), registry);
+	}
+
+	@Bean
+	StatisticsRefresher statisticsRefresher(YoutubeClient client, DatabaseClient databaseClient, YoutubeQuota quota,
+			YoutubeProperties properties) {
+		var statistics = properties.batch().statistics();
+		return new StatisticsRefresher(client, databaseClient, quota, statistics.refreshInterval(),
+				statistics.videosPerRefresh(), statistics.snapshots(), Clock.systemUTC());
+	}
+
+	@Bean
+	IngestScheduler ingestScheduler(YoutubeIngestJobRunner runner, DatabaseClient databaseClient, YoutubeQuota quota,
 			YoutubeProperties properties) {
-		return new YoutubeIngestJobRunner(client, databaseClient, properties.batch().channelUsername());
+		var batch = properties.batch();
+		var refreshIntervals = new LinkedHashMap<String, Duration>();
+		if (StringUtils.hasText(batch.channelUsername()))
+			refreshIntervals.put(batch.channelUsername(), batch.refreshInterval());
+		if (batch.channels() != null)
+			for (var channel : batch.channels())
+				refreshIntervals.put(channel.username(),
+						channel.refreshInterval() == null ? batch.refreshInterval() : channel.refreshInterval());
+		return new IngestScheduler(refreshIntervals, runner::ingest, new IngestScheduleRepository(databaseClient),
+				quota, batch.maxConcurrentChannels(), batch.pollInterval(), Clock.systemUTC());
 	}
 
 }
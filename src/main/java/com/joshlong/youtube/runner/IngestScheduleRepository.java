@@ -0,0 +1,70 @@
+package com.joshlong.youtube.runner;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers, in {@code yt_ingest_schedule}, when each channel was last ingested, so that
+ * a restart picks up the schedule where it left off instead of crawling every channel
+ * again.
+ *
+ * @author Josh Long
+ */
+@RequiredArgsConstructor
+class IngestScheduleRepository {
+
+	private final DatabaseClient databaseClient;
+
+	/**
+	 * @return when each channel's last successful ingest finished, keyed by username
+	 */
+	Mono<Map<String, Instant>> findLastCompleted() {
+		return this.databaseClient//
+				.sql("select username, last_completed_at from yt_ingest_schedule where last_completed_at is not null")//
+				.fetch()//
+				.all()//
+				.collect(HashMap::new, (map, row) -> map.put((String) row.get("username"),
+						((OffsetDateTime) row.get("last_completed_at")).toInstant()));
+	}
+
+	Mono<Void> started(String username, Instant startedAt) {
+		var sql = """
+				insert into yt_ingest_schedule (username, last_started_at) values (:username, :startedAt)
+				on conflict on constraint yt_ingest_schedule_pkey
+				do update set last_started_at = :startedAt
+				""";
+		return this.databaseClient.sql(sql)//
+				.bind("username", username)//
+				.bind("startedAt", startedAt)//
+				.fetch()//
+				.rowsUpdated()//
+				.then();
+	}
+
+	Mono<Void> completed(String username, Instant completedAt) {
+		return this.databaseClient//
+				.sql("update yt_ingest_schedule set last_completed_at = :completedAt, last_error = null where username = :username")//
+				.bind("username", username)//
+				.bind("completedAt", completedAt)//
+				.fetch()//
+				.rowsUpdated()//
+				.then();
+	}
+
+	Mono<Void> failed(String username, String error) {
+		return this.databaseClient//
+				.sql("update yt_ingest_schedule set last_error = :error where username = :username")//
+				.bind("username", username)//
+				.bind("error", error)//
+				.fetch()//
+				.rowsUpdated()//
+				.then();
+	}
+
+}
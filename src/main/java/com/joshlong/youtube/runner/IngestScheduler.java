@@ -0,0 +1,187 @@
+package com.joshlong.youtube.runner;
+
+import com.joshlong.youtube.client.QuotaExceededException;
+import com.joshlong.youtube.client.YoutubeQuota;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+/**
+ * Ingests many channels, each on its own refresh interval. Channels wait in a queue
+ * ordered by when they're next due, so finding the next one to ingest is a peek at the
+ * head of the queue. At most {@code maxConcurrentChannels} ingests run at once, and a
+ * channel is only ever in the queue once, going to the back of the line each time it's
+ * ingested, so busy channels can't starve quiet ones. Every ingest draws on the same
+ * {@link YoutubeQuota}, and no new ingest starts while there isn't enough left to finish
+ * one.
+ *
+ * @author Josh Long
+ */
+@Slf4j
+class IngestScheduler implements ApplicationRunner, DisposableBean {
+
+	/**
+	 * the least an ingest can cost: looking up the channel, its playlists and its
+	 * uploads.
+	 */
+	private static final long MINIMUM_INGEST_COST = 3;
+
+	private record Due(String username, Instant dueAt) {
+	}
+
+	private final PriorityQueue<Due> queue = new PriorityQueue<>(Comparator.comparing(Due::dueAt));
+
+	private final Map<String, Duration> refreshIntervals;
+
+	private final Function<String, Mono<IngestSummary>> ingest;
+
+	private final IngestScheduleRepository repository;
+
+	private final YoutubeQuota quota;
+
+	private final int maxConcurrentChannels;
+
+	private final Duration pollInterval;
+
+	private final Clock clock;
+
+	private int inFlight;
+
+	private Disposable ticker;
+
+	/**
+	 * @param refreshIntervals how often to ingest each channel, keyed by username
+	 * @param ingest ingests the channel owned by the given username
+	 * @param repository where to remember when each channel was last ingested
+	 * @param quota the quota that all ingests share
+	 * @param maxConcurrentChannels the most channels to ingest at the same time
+	 * @param pollInterval how often to look for channels that are due
+	 * @param clock the source of the current time
+	 */
+	IngestScheduler(Map<String, Duration> refreshIntervals, Function<String, Mono<IngestSummary>> ingest,
+			IngestScheduleRepository repository, YoutubeQuota quota, int maxConcurrentChannels, Duration pollInterval,
+			Clock clock) {
+		this.refreshIntervals = refreshIntervals;
+		this.ingest = ingest;
+		this.repository = repository;
+		this.quota = quota;
+		this.maxConcurrentChannels = maxConcurrentChannels;
+		this.pollInterval = pollInterval;
+		this.clock = clock;
+	}
+
+	/**
+	 * keeps trying to find when each channel was last ingested, every
+	 * {@code pollInterval}, so that the database not being up yet doesn't leave the
+	 * channels unscheduled for good.
+	 */
+	@Override
+	public void run(ApplicationArguments args) {
+		this.ticker = this.repository//
+				.findLastCompleted()//
+				.doOnError(error -> log.error(
+						"could not find when each channel was last ingested, so trying again in " + this.pollInterval,
+						error))//
+				.retryWhen(Retry.fixedDelay(Long.MAX_VALUE, this.pollInterval))//
+				.doOnNext(this::enqueue)//
+				.thenMany(Flux.interval(Duration.ZERO, this.pollInterval))//
+				.subscribe(tick -> poll());
+	}
+
+	@Override
+	public void destroy() {
+		if (this.ticker != null)
+			this.ticker.dispose();
+	}
+
+	private synchronized void enqueue(Map<String, Instant> lastCompleted) {
+		var now = this.clock.instant();
+		this.refreshIntervals.forEach((username, refreshInterval) -> {
+			var completedAt = lastCompleted.get(username);
+			var dueAt = completedAt == null ? now : completedAt.plus(refreshInterval);
+			this.queue.add(new Due(username, dueAt));
+			log.info(username + " is next due to be ingested at " + dueAt);
+		});
+	}
+
+	/**
+	 * an exception thrown here would cancel the ticker, and no channel would be ingested
+	 * again, so it's logged and the next tick tries again.
+	 */
+	private void poll() {
+		try {
+			drain();
+		}
+		catch (RuntimeException e) {
+			log.error("could not start the channels that are due", e);
+		}
+	}
+
+	/**
+	 * starts as many of the channels that are due as we have room for.
+	 */
+	private void drain() {
+		var now = this.clock.instant();
+		while (true) {
+			Due next;
+			synchronized (this) {
+				if (this.inFlight >= this.maxConcurrentChannels || this.queue.isEmpty()
+						|| this.queue.peek().dueAt().isAfter(now))
+					return;
+				if (!this.quota.canAfford(MINIMUM_INGEST_COST)) {
+					log.debug("not starting any ingests for the next " + this.quota.untilReset()
+							+ " because the quota is spent");
+					return;
+				}
+				next = this.queue.poll();
+				this.inFlight += 1;
+			}
+			start(next.username());
+		}
+	}
+
+	private void start(String username) {
+		var refreshInterval = this.refreshIntervals.get(username);
+		log.info("starting to ingest " + username);
+		Mono.defer(() -> this.repository.started(username, this.clock.instant()))//
+				.then(Mono.defer(() -> this.ingest.apply(username)))//
+				.flatMap(summary -> {
+					log.info("ingested " + username + ": " + summary);
+					return this.repository.completed(username, this.clock.instant());
+				})//
+				.thenReturn(refreshInterval)//
+				.onErrorResume(error -> {
+					log.error("could not ingest " + username, error);
+					var retryIn = error instanceof QuotaExceededException quotaExceeded
+							&& quotaExceeded.getUntilReset().compareTo(refreshInterval) > 0
+									? quotaExceeded.getUntilReset() : refreshInterval;
+					return this.repository//
+							.failed(username, String.valueOf(error.getMessage()))//
+							.onErrorResume(e -> Mono.empty())//
+							.thenReturn(retryIn);
+				})//
+				.subscribe(retryIn -> finished(username, retryIn));
+	}
+
+	private void finished(String username, Duration nextIn) {
+		synchronized (this) {
+			this.inFlight -= 1;
+			this.queue.add(new Due(username, this.clock.instant().plus(nextIn)));
+		}
+		poll();
+	}
+
+}
@@ -0,0 +1,101 @@
+package com.joshlong.youtube.runner;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * One step of the ingest pipeline: a {@code flatMap} with an explicit concurrency and
+ * prefetch, so that no step can have more than {@code concurrency} units of work in
+ * flight, or more than {@code concurrency * prefetch} results waiting for the next step.
+ * Each stage publishes, tagged with its name:
+ * <ul>
+ * <li>{@code youtube.ingest.stage.active}: the units of work in flight</li>
+ * <li>{@code youtube.ingest.stage.queued}: the results waiting for the next stage</li>
+ * <li>{@code youtube.ingest.stage.duration}: how long each unit of work took, and so the
+ * stage's throughput</li>
+ * </ul>
+ * The limits apply to each ingest, while the metrics add up across all the ingests
+ * running at once.
+ *
+ * @author Josh Long
+ */
+class IngestStage {
+
+	private final int concurrency;
+
+	private final int prefetch;
+
+	private final AtomicInteger active = new AtomicInteger();
+
+	private final AtomicInteger queued = new AtomicInteger();
+
+	private final Timer duration;
+
+	IngestStage(String name, int concurrency, int prefetch, MeterRegistry registry) {
+		this.concurrency = concurrency;
+		this.prefetch = prefetch;
+		Gauge.builder("youtube.ingest.stage.active", this.active, AtomicInteger::get)//
+				.tag("stage", name)//
+				.description("the units of work in flight")//
+				.register(registry);
+		Gauge.builder("youtube.ingest.stage.queued", this.queued, AtomicInteger::get)//
+				.tag("stage", name)//
+				.description("the results waiting for the next stage")//
+				.register(registry);
+		this.duration = Timer.builder("youtube.ingest.stage.duration")//
+				.tag("stage", name)//
+				.description("how long each unit of work took")//
+				.register(registry);
+	}
+
+	<T, R> Flux<R> flatMap(Flux<T> upstream, Function<T, Publisher<R>> work) {
+		return apply(upstream, work, false);
+	}
+
+	/**
+	 * Like {@link #flatMap(Flux, Function)}, with the same concurrency, but emits the
+	 * results in the order of the items they came from, so that each result also means
+	 * that all the work before it has finished.
+	 */
+	<T, R> Flux<R> flatMapSequential(Flux<T> upstream, Function<T, Publisher<R>> work) {
+		return apply(upstream, work, true);
+	}
+
+	private <T, R> Flux<R> apply(Flux<T> upstream, Function<T, Publisher<R>> work, boolean sequential) {
+		return Flux.defer(() -> {
+			// whatever's still queued when the stage is cancelled or fails is dropped
+			var pending = new AtomicInteger();
+			Function<T, Publisher<R>> instrumented = item -> {
+				this.active.incrementAndGet();
+				var start = System.nanoTime();
+				// before the next unit of work is let in, unlike doFinally
+				Runnable finished = () -> {
+					this.active.decrementAndGet();
+					this.duration.record(Duration.ofNanos(System.nanoTime() - start));
+				};
+				return Flux.from(work.apply(item))//
+						.doOnNext(result -> {
+							pending.incrementAndGet();
+							this.queued.incrementAndGet();
+						})//
+						.doOnTerminate(finished)//
+						.doOnCancel(finished);
+			};
+			return (sequential ? upstream.flatMapSequential(instrumented, this.concurrency, this.prefetch)
+					: upstream.flatMap(instrumented, this.concurrency, this.prefetch))//
+							.doOnNext(result -> {
+								pending.decrementAndGet();
+								this.queued.decrementAndGet();
+							})//
+							.doFinally(signal -> this.queued.addAndGet(-pending.getAndSet(0)));
+		});
+	}
+
+}
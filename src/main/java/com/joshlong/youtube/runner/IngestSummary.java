@@ -0,0 +1,69 @@
+package com.joshlong.youtube.runner;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tallies what happened to each {@link com.joshlong.youtube.client.Video} we saw during a
+ * single ingest run, and how many playlist memberships were written.
+ *
+ * @author Josh Long
+ */
+class IngestSummary {
+
+	private final AtomicLong inserted = new AtomicLong();
+
+	private final AtomicLong updated = new AtomicLong();
+
+	private final AtomicLong statisticsOnly = new AtomicLong();
+
+	private final AtomicLong skipped = new AtomicLong();
+
+	private final AtomicLong playlistVideos = new AtomicLong();
+
+	void recordInserted(int count) {
+		this.inserted.addAndGet(count);
+	}
+
+	void recordUpdated(int count) {
+		this.updated.addAndGet(count);
+	}
+
+	void recordStatisticsOnly(int count) {
+		this.statisticsOnly.addAndGet(count);
+	}
+
+	void recordSkipped(int count) {
+		this.skipped.addAndGet(count);
+	}
+
+	void recordPlaylistVideos(int count) {
+		this.playlistVideos.addAndGet(count);
+	}
+
+	long inserted() {
+		return this.inserted.get();
+	}
+
+	long updated() {
+		return this.updated.get();
+	}
+
+	long statisticsOnly() {
+		return this.statisticsOnly.get();
+	}
+
+	long skipped() {
+		return this.skipped.get();
+	}
+
+	long playlistVideos() {
+		return this.playlistVideos.get();
+	}
+
+	@Override
+	public String toString() {
+		return "inserted=" + inserted() + ", updated=" + updated() + ", statistics-only=" + statisticsOnly()
+				+ ", skipped=" + skipped() + ", playlist-videos=" + playlistVideos();
+	}
+
+}
@@ -0,0 +1,97 @@
+package com.joshlong.youtube.runner;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deletes the rows of a channel that its latest completed run didn't see, which is to say
+ * the rows whose {@code last_seen_run} is older than that run. Each statement deletes at
+ * most {@code batchSize} rows, so that no single statement holds many locks or runs for
+ * long, and statements are repeated until there's nothing left to delete.
+ * <ul>
+ * <li>playlists that the run didn't see, with their memberships</li>
+ * <li>memberships that the run didn't see in the playlists it walked all the way
+ * through</li>
+ * <li>videos that the run didn't see, but only after a run that crawled all the uploads,
+ * since an incremental run only sees the newest</li>
+ * </ul>
+ *
+ * @author Josh Long
+ */
+@Slf4j
+@RequiredArgsConstructor
+class StaleRowSweeper {
+
+	private final DatabaseClient databaseClient;
+
+	private final boolean enabled;
+
+	private final int batchSize;
+
+	/**
+	 * @param channelId the channel whose stale rows to delete
+	 * @param runId the run that just completed
+	 * @param allUploads whether the run crawled all of the channel's uploads
+	 * @return the number of rows deleted
+	 */
+	Mono<Long> sweep(String channelId, long runId, boolean allUploads) {
+		if (!this.enabled)
+			return Mono.just(0L);
+		var statements = new ArrayList<>(List.of("""
+				delete from yt_playlist_videos where ctid in (
+				    select pv.ctid from yt_playlist_videos pv join yt_playlists p on p.playlist_id = pv.playlist_id
+				    where p.channel_id = :channelId and (p.last_seen_run is null or p.last_seen_run < :runId)
+				    limit :batchSize
+				)
+				""", """
+				delete from yt_playlists where ctid in (
+				    select ctid from yt_playlists
+				    where channel_id = :channelId and (last_seen_run is null or last_seen_run < :runId)
+				    limit :batchSize
+				)
+				""", """
+				delete from yt_playlist_videos where ctid in (
+				    select pv.ctid from yt_playlist_videos pv join yt_playlists p on p.playlist_id = pv.playlist_id
+				    where p.channel_id = :channelId and p.walked_run = :runId
+				        and (pv.last_seen_run is null or pv.last_seen_run < :runId)
+				    limit :batchSize
+				)
+				"""));
+		if (allUploads)
+			statements.add("""
+					delete from yt_videos where ctid in (
+					    select ctid from yt_videos
+					    where channel_id = :channelId and (last_seen_run is null or last_seen_run < :runId)
+					    limit :batchSize
+					)
+					""");
+		return Flux//
+				.fromIterable(statements)//
+				.concatMap(sql -> deleteInBatches(sql, channelId, runId))//
+				.reduce(0L, Long::sum)//
+				.doOnNext(deleted -> log.info("deleted " + deleted + " stale rows of channel " + channelId));
+	}
+
+	private Mono<Long> deleteInBatches(String sql, String channelId, long runId) {
+		return delete(sql, channelId, runId)//
+				.expand(deleted -> deleted < this.batchSize ? Mono.empty() : delete(sql, channelId, runId))//
+				.reduce(0L, Long::sum);
+	}
+
+	private Mono<Integer> delete(String sql, String channelId, long runId) {
+		return this.databaseClient//
+				.sql(sql)//
+				.bind("channelId", channelId)//
+				.bind("runId", runId)//
+				.bind("batchSize", this.batchSize)//
+				.fetch()//
+				.rowsUpdated();
+	}
+
+}
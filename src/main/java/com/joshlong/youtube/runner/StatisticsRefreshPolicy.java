@@ -0,0 +1,60 @@
+package com.joshlong.youtube.runner;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Decides how soon a video's statistics are worth fetching again. Videos collect most of
+ * their views in their first days, so the interval grows with the age of the video. It
+ * then shrinks for videos whose views are still climbing quickly, and grows for videos
+ * whose views didn't move at all since we last looked.
+ *
+ * @author Josh Long
+ */
+abstract class StatisticsRefreshPolicy {
+
+	static final Duration MINIMUM = Duration.ofHours(1);
+
+	static final Duration MAXIMUM = Duration.ofDays(30);
+
+	/**
+	 * @param publishedAt when the video was published
+	 * @param now the current time
+	 * @return how long to wait before refreshing a video we know nothing else about
+	 */
+	static Duration nextRefreshIn(Instant publishedAt, Instant now) {
+		var age = Duration.between(publishedAt, now);
+		if (age.compareTo(Duration.ofDays(1)) < 0)
+			return Duration.ofHours(1);
+		if (age.compareTo(Duration.ofDays(7)) < 0)
+			return Duration.ofHours(4);
+		if (age.compareTo(Duration.ofDays(30)) < 0)
+			return Duration.ofHours(12);
+		if (age.compareTo(Duration.ofDays(365)) < 0)
+			return Duration.ofDays(3);
+		return Duration.ofDays(14);
+	}
+
+	/**
+	 * @param publishedAt when the video was published
+	 * @param previousViewCount the view count when we last looked
+	 * @param viewCount the view count now
+	 * @param sinceLastRefresh how long it's been since we last looked
+	 * @param now the current time
+	 * @return how long to wait before refreshing the video again
+	 */
+	static Duration nextRefreshIn(Instant publishedAt, long previousViewCount, long viewCount,
+			Duration sinceLastRefresh, Instant now) {
+		var interval = nextRefreshIn(publishedAt, now);
+		var days = Math.max(sinceLastRefresh.toMinutes(), 1) / (double) Duration.ofDays(1).toMinutes();
+		var growthPerDay = (viewCount - previousViewCount) / (double) Math.max(previousViewCount, 1) / days;
+		if (viewCount == previousViewCount)
+			interval = interval.multipliedBy(2);
+		else if (growthPerDay >= 0.10)
+			interval = interval.dividedBy(4);
+		else if (growthPerDay >= 0.01)
+			interval = interval.dividedBy(2);
+		return interval.compareTo(MINIMUM) < 0 ? MINIMUM : interval.compareTo(MAXIMUM) > 0 ? MAXIMUM : interval;
+	}
+
+}
@@ -0,0 +1,213 @@
+package com.joshlong.youtube.runner;
+
+import com.joshlong.youtube.client.VideoStatistics;
+import com.joshlong.youtube.client.YoutubeClient;
+import com.joshlong.youtube.client.YoutubeQuota;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.lang.Nullable;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Incremental ingests only fetch new uploads, so the counters of older videos are kept up
+ * to date here instead. Each video carries a {@code next_statistics_refresh_at}, chosen
+ * by the {@link StatisticsRefreshPolicy} from the video's age and how fast its views are
+ * growing, and the index on that column is our priority queue. Every
+ * {@code refreshInterval}, up to {@code videosPerRefresh} of the videos that are due are
+ * refreshed, most overdue first, asking the API for just their {@link VideoStatistics
+ * statistics}. That's one unit of quota per {@code 50} videos, spent where the counts are
+ * actually moving.
+ *
+ * @author Josh Long
+ */
+@Slf4j
+@RequiredArgsConstructor
+class StatisticsRefresher implements ApplicationRunner, DisposableBean {
+
+	private final YoutubeClient client;
+
+	private final DatabaseClient databaseClient;
+
+	private final YoutubeQuota quota;
+
+	private final Duration refreshInterval;
+
+	private final int videosPerRefresh;
+
+	private final boolean snapshots;
+
+	private final Clock clock;
+
+	private Disposable ticker;
+
+	private record DueVideo(String videoId, Instant publishedAt, int viewCount, @Nullable Instant refreshedAt) {
+	}
+
+	private record Refreshed(VideoStatistics statistics, Instant nextRefreshAt) {
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		this.ticker = Flux//
+				.interval(this.refreshInterval)//
+				.onBackpressureDrop()//
+				.concatMap(tick -> refresh()//
+						.onErrorResume(error -> {
+							log.error("could not refresh the statistics of our videos", error);
+							return Mono.empty();
+						}))//
+				.subscribe();
+	}
+
+	@Override
+	public void destroy() {
+		if (this.ticker != null)
+			this.ticker.dispose();
+	}
+
+	Mono<Integer> refresh() {
+		var cost = (this.videosPerRefresh + 49) / 50;
+		if (!this.quota.canAfford(cost)) {
+			log.debug("not refreshing any statistics for the next " + this.quota.untilReset()
+					+ " because the quota is spent");
+			return Mono.empty();
+		}
+		var start = System.nanoTime();
+		return findDueVideos()//
+				.filter(due -> !due.isEmpty())//
+				.flatMap(due -> this.client//
+						.getVideoStatisticsByIds(due.stream().map(DueVideo::videoId).toList())//
+						.flatMap(statistics -> write(due, statistics)))//
+				.doOnNext(count -> log.info("refreshed the statistics of " + count + " videos in "
+						+ Duration.ofNanos(System.nanoTime() - start).toMillis() + "ms"));
+	}
+
+	private Mono<List<DueVideo>> findDueVideos() {
+		var sql = """
+				select video_id, published_at, view_count, statistics_refreshed_at
+				from yt_videos
+				where next_statistics_refresh_at is null or next_statistics_refresh_at <= now()
+				order by next_statistics_refresh_at nulls first
+				limit :limit
+				""";
+		return this.databaseClient//
+				.sql(sql)//
+				.bind("limit", this.videosPerRefresh)//
+				.map((row, metadata) -> new DueVideo(row.get("video_id", String.class),
+						row.get("published_at", Instant.class), row.get("view_count", Integer.class),
+						row.get("statistics_refreshed_at", Instant.class)))//
+				.all()//
+				.collectList();
+	}
+
+	private Mono<Integer> write(List<DueVideo> due, Map<String, VideoStatistics> statistics) {
+		var now = this.clock.instant();
+		var refreshed = new ArrayList<Refreshed>();
+		var missing = new ArrayList<String>();
+		for (var video : due) {
+			var latest = statistics.get(video.videoId());
+			if (latest == null) {
+				missing.add(video.videoId());
+				continue;
+			}
+			var nextRefreshIn = video.refreshedAt() == null
+					? StatisticsRefreshPolicy.nextRefreshIn(video.publishedAt(), now)
+					: StatisticsRefreshPolicy.nextRefreshIn(video.publishedAt(), video.viewCount(), latest.viewCount(),
+							Duration.between(video.refreshedAt(), now), now);
+			refreshed.add(new Refreshed(latest, now.plus(nextRefreshIn)));
+		}
+		return updateStatistics(refreshed)//
+				.flatMap(count -> postponeMissing(missing, now.plus(StatisticsRefreshPolicy.MAXIMUM))//
+						.then(this.snapshots ? insertSnapshots(refreshed, now) : Mono.empty())//
+						.thenReturn(count));
+	}
+
+	/**
+	 * writes the four counters and when to look again, and nothing else, binding one
+	 * array per column so that the statement is the same however many videos there are.
+	 */
+	private Mono<Integer> updateStatistics(List<Refreshed> refreshed) {
+		if (refreshed.isEmpty())
+			return Mono.just(0);
+		var sql = """
+				update yt_videos set
+				    view_count = s.view_count,
+				    like_count = s.like_count,
+				    favorite_count = s.favorite_count,
+				    comment_count = s.comment_count,
+				    statistics_refreshed_at = now(),
+				    next_statistics_refresh_at = s.next_refresh_at
+				from unnest(:videoIds::varchar[], :viewCounts::int[], :likeCounts::int[], :favoriteCounts::int[],
+				    :commentCounts::int[], :nextRefreshAts::timestamptz[])
+				    as s (video_id, view_count, like_count, favorite_count, comment_count, next_refresh_at)
+				where yt_videos.video_id = s.video_id
+				""";
+		var statistics = refreshed.stream().map(Refreshed::statistics).toList();
+		return this.databaseClient//
+				.sql(sql)//
+				.bind("videoIds", statistics.stream().map(VideoStatistics::videoId).toArray(String[]::new))//
+				.bind("viewCounts", statistics.stream().map(VideoStatistics::viewCount).toArray(Integer[]::new))//
+				.bind("likeCounts", statistics.stream().map(VideoStatistics::likeCount).toArray(Integer[]::new))//
+				.bind("favoriteCounts", statistics.stream().map(VideoStatistics::favoriteCount).toArray(Integer[]::new))//
+				.bind("commentCounts", statistics.stream().map(VideoStatistics::commentCount).toArray(Integer[]::new))//
+				.bind("nextRefreshAts", refreshed.stream().map(Refreshed::nextRefreshAt).toArray(Instant[]::new))//
+				.fetch()//
+				.rowsUpdated();
+	}
+
+	/**
+	 * videos that YouTube no longer returns would otherwise stay at the head of the line
+	 * forever.
+	 */
+	private Mono<Void> postponeMissing(List<String> videoIds, Instant nextRefreshAt) {
+		if (videoIds.isEmpty())
+			return Mono.empty();
+		return this.databaseClient//
+				.sql("update yt_videos set next_statistics_refresh_at = :nextRefreshAt where video_id = any(:videoIds)")//
+				.bind("nextRefreshAt", nextRefreshAt)//
+				.bind("videoIds", videoIds.toArray(String[]::new))//
+				.fetch()//
+				.rowsUpdated()//
+				.then();
+	}
+
+	private Mono<Void> insertSnapshots(List<Refreshed> refreshed, Instant capturedAt) {
+		if (refreshed.isEmpty())
+			return Mono.empty();
+		var sql = """
+				insert into yt_video_statistics_snapshots (video_id, captured_at, view_count, like_count, favorite_count,
+				    comment_count)
+				select s.video_id, :capturedAt, s.view_count, s.like_count, s.favorite_count, s.comment_count
+				from unnest(:videoIds::varchar[], :viewCounts::int[], :likeCounts::int[], :favoriteCounts::int[],
+				    :commentCounts::int[])
+				    as s (video_id, view_count, like_count, favorite_count, comment_count)
+				on conflict do nothing
+				""";
+		var statistics = refreshed.stream().map(Refreshed::statistics).toList();
+		return this.databaseClient//
+				.sql(sql)//
+				.bind("capturedAt", capturedAt)//
+				.bind("videoIds", statistics.stream().map(VideoStatistics::videoId).toArray(String[]::new))//
+				.bind("viewCounts", statistics.stream().map(VideoStatistics::viewCount).toArray(Integer[]::new))//
+				.bind("likeCounts", statistics.stream().map(VideoStatistics::likeCount).toArray(Integer[]::new))//
+				.bind("favoriteCounts", statistics.stream().map(VideoStatistics::favoriteCount).toArray(Integer[]::new))//
+				.bind("commentCounts", statistics.stream().map(VideoStatistics::commentCount).toArray(Integer[]::new))//
+				.fetch()//
+				.rowsUpdated()//
+				.then();
+	}
+
+}
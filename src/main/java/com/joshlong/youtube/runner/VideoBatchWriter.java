@@ -0,0 +1,253 @@
+package com.joshlong.youtube.runner;
+
+import com.joshlong.youtube.client.Video;
+import com.joshlong.youtube.client.VideoStatistics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Writes windows of {@link Video videos} to {@code yt_videos}. Each video is compared
+ * against what's already stored: new and edited videos get a full multi-row upsert,
+ * videos whose statistics moved get a narrow update of just the counters, and videos that
+ * haven't changed at all aren't written, unless they have to be stamped with the current
+ * run, which is done for the whole batch at once.
+ *
+ * @author Josh Long
+ */
+@Slf4j
+@RequiredArgsConstructor
+class VideoBatchWriter {
+
+	private final DatabaseClient databaseClient;
+
+	private final IngestMetrics metrics;
+
+	private record StoredVideo(String fingerprint, int viewCount, int likeCount, int favoriteCount, int commentCount,
+			long lastSeenRun) {
+	}
+
+	/**
+	 * @param batch the videos to write
+	 * @param runId the ingest run that saw the videos, with which each is stamped
+	 * @param summary tallies what was written
+	 */
+	Mono<Void> write(List<Video> batch, long runId, IngestSummary summary) {
+		// postgres refuses to update the same row twice in one statement
+		var videos = new ArrayList<>(batch.stream()
+				.collect(Collectors.toMap(Video::videoId, v -> v, (a, b) -> b, LinkedHashMap::new)).values());
+		// elapsed() times from subscription, not from when the batch was queued
+		return findStoredVideos(videos)//
+				.flatMap(stored -> {
+					var upserts = new ArrayList<Video>();
+					var statistics = new ArrayList<VideoStatistics>();
+					var stamps = new ArrayList<String>();
+					var inserted = 0;
+					for (var video : videos) {
+						var existing = stored.get(video.videoId());
+						if (existing == null) {
+							inserted += 1;
+							upserts.add(video);
+						}
+						else if (!existing.fingerprint().equals(VideoFingerprints.fingerprint(video))) {
+							upserts.add(video);
+						}
+						else if (statisticsChanged(existing, video)) {
+							statistics.add(new VideoStatistics(video.videoId(), video.viewCount(), video.likeCount(),
+									video.favoriteCount(), video.commentCount()));
+						}
+						else if (existing.lastSeenRun() != runId) {
+							stamps.add(video.videoId());
+						}
+					}
+					summary.recordInserted(inserted);
+					summary.recordUpdated(upserts.size() - inserted);
+					summary.recordStatisticsOnly(statistics.size());
+					summary.recordSkipped(videos.size() - upserts.size() - statistics.size());
+					return Flux.concat(upsertVideos(upserts, runId), updateStatistics(statistics, runId),
+							stamp(stamps, runId)).reduce(0, Integer::sum);
+				})//
+				.elapsed()//
+				.doOnNext(timed -> log.info("wrote a batch of " + videos.size() + " videos (" + timed.getT2()
+						+ " rows changed) in " + timed.getT1() + "ms"))//
+				.then();
+	}
+
+	private static boolean statisticsChanged(StoredVideo stored, Video video) {
+		return stored.viewCount() != video.viewCount() || stored.likeCount() != video.likeCount()
+				|| stored.favoriteCount() != video.favoriteCount() || stored.commentCount() != video.commentCount();
+	}
+
+	private Mono<HashMap<String, StoredVideo>> findStoredVideos(List<Video> videos) {
+		var sql = """
+				select video_id, fingerprint, view_count, like_count, favorite_count, comment_count, last_seen_run
+				from yt_videos
+				where video_id = any(:videoIds)
+				""";
+		var ids = videos.stream().map(Video::videoId).toArray(String[]::new);
+		return this.databaseClient//
+				.sql(sql)//
+				.bind("videoIds", ids)//
+				.fetch()//
+				.all()//
+				.collect(HashMap::new, (map, row) -> {
+					var fingerprint = (String) row.get("fingerprint");
+					var lastSeenRun = (Long) row.get("last_seen_run");
+					map.put((String) row.get("video_id"),
+							new StoredVideo(fingerprint == null ? "" : fingerprint, (Integer) row.get("view_count"),
+									(Integer) row.get("like_count"), (Integer) row.get("favorite_count"),
+									(Integer) row.get("comment_count"), lastSeenRun == null ? 0 : lastSeenRun));
+				});
+	}
+
+	/**
+	 * writes whole rows as a single upsert of arrays, one per column, so that the number
+	 * of database round trips is a function of the number of batches, not the number of
+	 * videos, and the statement binds the same parameters however big the batch is.
+	 */
+	private Mono<Integer> upsertVideos(List<Video> videos, long runId) {
+		if (videos.isEmpty())
+			return Mono.just(0);
+		var sql = """
+				insert into yt_videos (
+				    video_id ,
+				    title,
+				    description,
+				    published_at ,
+				    standard_thumbnail,
+				    category_id,
+				    view_count,
+				    favorite_count,
+				    comment_count  ,
+				    like_count ,
+				    last_seen_run,
+				    channel_id,
+				    tags,
+				    fingerprint,
+				    statistics_refreshed_at,
+				    next_statistics_refresh_at
+				)
+				select s.video_id, s.title, s.description, s.published_at, s.standard_thumbnail, s.category_id,
+				    s.view_count, s.favorite_count, s.comment_count, s.like_count, :runId, s.channel_id,
+				    s.tags::text[], s.fingerprint, now(), s.next_statistics_refresh_at
+				from unnest(:videoIds::varchar[], :titles::varchar[], :descriptions::text[], :publishedAts::timestamptz[],
+				    :standardThumbnails::varchar[], :categoryIds::int[], :viewCounts::int[], :favoriteCounts::int[],
+				    :commentCounts::int[], :likeCounts::int[], :channelIds::varchar[], :tags::text[],
+				    :fingerprints::varchar[], :nextStatisticsRefreshAts::timestamptz[])
+				    as s (video_id, title, description, published_at, standard_thumbnail, category_id, view_count,
+				        favorite_count, comment_count, like_count, channel_id, tags, fingerprint,
+				        next_statistics_refresh_at)
+				on conflict on CONSTRAINT yt_videos_pkey
+				do update set
+				    last_seen_run = excluded.last_seen_run,
+				    title = excluded.title,
+				    description = excluded.description,
+				    published_at  = excluded.published_at,
+				    standard_thumbnail = excluded.standard_thumbnail,
+				    category_id = excluded.category_id,
+				    view_count = excluded.view_count,
+				    favorite_count = excluded.favorite_count,
+				    comment_count   = excluded.comment_count,
+				    like_count =  excluded.like_count ,
+				    tags = excluded.tags,
+				    fingerprint = excluded.fingerprint,
+				    statistics_refreshed_at = excluded.statistics_refreshed_at,
+				    next_statistics_refresh_at = excluded.next_statistics_refresh_at
+				""";
+		var now = Instant.now();
+		var spec = this.databaseClient//
+				.sql(sql)//
+				.bind("runId", runId)//
+				.bind("videoIds", column(videos, Video::videoId, String[]::new))//
+				.bind("titles", column(videos, Video::title, String[]::new))//
+				.bind("descriptions", column(videos, Video::description, String[]::new))//
+				.bind("publishedAts", column(videos, video -> video.publishedAt().toInstant(), Instant[]::new))//
+				.bind("standardThumbnails",
+						column(videos, video -> video.standardThumbnail().toExternalForm(), String[]::new))//
+				.bind("categoryIds", column(videos, Video::categoryId, Integer[]::new))//
+				.bind("viewCounts", column(videos, Video::viewCount, Integer[]::new))//
+				.bind("favoriteCounts", column(videos, Video::favoriteCount, Integer[]::new))//
+				.bind("commentCounts", column(videos, Video::commentCount, Integer[]::new))//
+				.bind("likeCounts", column(videos, Video::likeCount, Integer[]::new))//
+				.bind("channelIds", column(videos, Video::channelId, String[]::new))//
+				.bind("tags", column(videos, video -> arrayLiteral(video.tags()), String[]::new))//
+				.bind("fingerprints", column(videos, VideoFingerprints::fingerprint, String[]::new))//
+				.bind("nextStatisticsRefreshAts", column(videos,
+						video -> now.plus(StatisticsRefreshPolicy.nextRefreshIn(video.publishedAt().toInstant(), now)),
+						Instant[]::new));
+		return this.metrics.statement("upsert-videos", videos.size(), spec.fetch().rowsUpdated());
+	}
+
+	/**
+	 * stamps the videos that haven't changed at all with the run in a single statement,
+	 * rather than one row at a time, so that a full crawl of an unchanged channel costs a
+	 * statement per batch.
+	 */
+	private Mono<Integer> stamp(List<String> videoIds, long runId) {
+		if (videoIds.isEmpty())
+			return Mono.just(0);
+		var spec = this.databaseClient//
+				.sql("update yt_videos set last_seen_run = :runId where video_id = any(:videoIds)")//
+				.bind("runId", runId)//
+				.bind("videoIds", videoIds.toArray(String[]::new));
+		return this.metrics.statement("stamp-videos", videoIds.size(), spec.fetch().rowsUpdated());
+	}
+
+	/**
+	 * touches only the counters and the {@code last_seen_run} stamp, leaving the
+	 * (toasted) {@code description} and {@code tags} values where they are.
+	 */
+	private Mono<Integer> updateStatistics(List<VideoStatistics> videos, long runId) {
+		if (videos.isEmpty())
+			return Mono.just(0);
+		var sql = """
+				update yt_videos set
+				    last_seen_run = :runId,
+				    statistics_refreshed_at = now(),
+				    view_count = s.view_count,
+				    like_count = s.like_count,
+				    favorite_count = s.favorite_count,
+				    comment_count = s.comment_count
+				from unnest(:videoIds::varchar[], :viewCounts::int[], :likeCounts::int[], :favoriteCounts::int[],
+				    :commentCounts::int[]) as s (video_id, view_count, like_count, favorite_count, comment_count)
+				where yt_videos.video_id = s.video_id
+				""";
+		var spec = this.databaseClient//
+				.sql(sql)//
+				.bind("runId", runId)//
+				.bind("videoIds", column(videos, VideoStatistics::videoId, String[]::new))//
+				.bind("viewCounts", column(videos, VideoStatistics::viewCount, Integer[]::new))//
+				.bind("likeCounts", column(videos, VideoStatistics::likeCount, Integer[]::new))//
+				.bind("favoriteCounts", column(videos, VideoStatistics::favoriteCount, Integer[]::new))//
+				.bind("commentCounts", column(videos, VideoStatistics::commentCount, Integer[]::new));
+		return this.metrics.statement("update-video-statistics", videos.size(), spec.fetch().rowsUpdated());
+	}
+
+	private static <T, C> C[] column(List<T> rows, Function<T, C> value, IntFunction<C[]> array) {
+		return rows.stream().map(value).toArray(array);
+	}
+
+	/**
+	 * Postgres can't {@code unnest} an array of arrays into rows, so each video's tags
+	 * travel as the text of a {@code text[]} literal, and are cast back in the statement.
+	 */
+	private static String arrayLiteral(List<String> values) {
+		var literal = new StringJoiner(",", "{", "}");
+		for (var value : values)
+			literal.add("\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"");
+		return literal.toString();
+	}
+
+}
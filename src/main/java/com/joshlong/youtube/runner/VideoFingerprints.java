@@ -0,0 +1,35 @@
+package com.joshlong.youtube.runner;
+
+import com.joshlong.youtube.client.Video;
+import lombok.SneakyThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+/**
+ * Computes a compact fingerprint over the parts of a {@link Video} that don't change from
+ * one ingest to the next unless the author edits the video. The statistics are
+ * deliberately left out: they move all the time and are written separately.
+ *
+ * @author Josh Long
+ */
+abstract class VideoFingerprints {
+
+	private static final char SEPARATOR = '\u001f';
+
+	@SneakyThrows
+	static String fingerprint(Video video) {
+		var digest = MessageDigest.getInstance("SHA-256");
+		var fields = new Object[] { video.videoId(), video.title(), video.description(), video.publishedAt().getTime(),
+				video.standardThumbnail().toExternalForm(), video.categoryId(), video.channelId(),
+				String.join(String.valueOf(SEPARATOR), video.tags()) };
+		for (var field : fields) {
+			digest.update(String.valueOf(field).getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) SEPARATOR);
+		}
+		// 128 bits is plenty to tell two versions of the same video apart
+		return HexFormat.of().formatHex(digest.digest(), 0, 16);
+	}
+
+}
@@ -2,39 +2,288 @@ package com.joshlong.youtube.runner;
 
 import com.joshlong.youtube.client.Channel;
 import com.joshlong.youtube.client.Playlist;
+import com.joshlong.youtube.client.PlaylistVideoIds;
 import com.joshlong.youtube.client.Video;
 import com.joshlong.youtube.client.YoutubeClient;
+import com.joshlong.youtube.runner.IngestRunRepository.Checkpoint;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.boot.ApplicationArguments;
-import org.springframework.boot.ApplicationRunner;
+import org.springframework.lang.Nullable;
 import org.springframework.r2dbc.core.DatabaseClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
 @Slf4j
 @RequiredArgsConstructor
-class YoutubeIngestJobRunner implements ApplicationRunner {
+class YoutubeIngestJobRunner {
 
 	private final YoutubeClient client;
 
 	private final DatabaseClient databaseClient;
 
-	private final String channelUsername;
+	private final VideoBatchWriter videoBatchWriter;
+
+	private final int videoBatchSize;
+
+	private final Duration videoBatchWindow;
+
+	private final boolean incremental;
+
+	private final IngestStages stages;
+
+	private final IngestRunRepository runs;
+
+	private final StaleRowSweeper sweeper;
+
+	private final IngestMetrics metrics;
+
+	/**
+	 * memberships are two short strings, so we can afford to write many at once.
+	 */
+	private static final int MEMBERSHIP_BATCH_SIZE = 1000;
+
+	/**
+	 * the most items the YouTube API returns in a page.
+	 */
+	private static final int PAGE_SIZE = 50;
+
+	private record PlaylistVideo(String playlistId, String videoId) {
+	}
+
+	/**
+	 * a page of a playlist's video IDs, and how many of the playlist's videos we'll have
+	 * seen once it's written.
+	 */
+	private record PlaylistPage(PlaylistVideoIds page, long processed) {
+	}
+
+	/**
+	 * the run we're in, and how far it got before, if it's being resumed.
+	 */
+	private record ResumedRun(IngestRunRepository.IngestRun run, Map<String, Checkpoint> checkpoints) {
+
+		Checkpoint checkpoint(String source) {
+			return this.checkpoints.getOrDefault(source, new Checkpoint(null, 0, false));
+		}
 
-	@Override
-	public void run(ApplicationArguments args) {
-		resetTablesFreshStatus()//
-				.thenMany(writeChannel())//
-				.flatMap(channel -> client.getAllPlaylistsByChannel(channel.channelId()).flatMap(this::doWritePlaylist))// playlists
-				// .flatMap( playlist ->
-				// client.getAllVideosByPlaylist(playlist.playlistId()) ) // videos for
-				// playlists todo
-				.thenMany(c -> client.getAllVideosByUsernameUploads(channelUsername).flatMap(this::doWriteVideo))// videos
-				.doFinally(st -> log.info("finished...")).subscribe();
 	}
 
-	private Mono<Playlist> doWritePlaylist(Playlist playlist) {
+	/**
+	 * the {@link IngestStage stages} of an ingest, after the channel itself has been
+	 * fetched. Hydrating the videos is a stage of the {@link YoutubeClient}, governed by
+	 * {@code bootiful.youtube.hydration-concurrency}.
+	 */
+	record IngestStages(IngestStage playlists, IngestStage playlistVideos, IngestStage playlistVideoWrites,
+			IngestStage videoWrites) {
+	}
+
+	/**
+	 * @param walkedItemCount the playlist's item count when it was last walked all the
+	 * way through, or {@code null} if it never has been
+	 */
+	private record StoredPlaylist(String playlistId, @Nullable Integer walkedItemCount) {
+
+		/**
+		 * The item count is all that the playlist itself tells us about its items, so a
+		 * playlist that had one video swapped for another, or its videos reordered, looks
+		 * unchanged, and isn't walked again until a full crawl, which walks every
+		 * playlist.
+		 */
+		boolean unchanged(Playlist playlist) {
+			return this.walkedItemCount != null && playlist.itemCount() == this.walkedItemCount;
+		}
+
+	}
+
+	/**
+	 * Ingests one channel: the channel itself, its playlists and its uploaded videos.
+	 * Every row the run sees is stamped with the run's ID in {@code last_seen_run}, so
+	 * the rows that the channel's latest run didn't see are stale, without anything
+	 * having to be marked beforehand. If we're crawling {@link #incremental
+	 * incrementally} and already have some of the channel's videos, only the newer
+	 * uploads are fetched, and the videos we have are left as they are. Once the run
+	 * completes, the {@link StaleRowSweeper} may delete the stale rows.
+	 * <p>
+	 * Each run checkpoints its progress through the uploads and through each playlist as
+	 * the pages are written. If the channel's last run never completed, this resumes it
+	 * from those checkpoints, under the same run ID, without fetching the pages it
+	 * already wrote.
+	 * @param username the username that owns the channel
+	 * @return a tally of what was written
+	 */
+	Mono<IngestSummary> ingest(String username) {
+		var summary = new IngestSummary();
+		return this.client//
+				.getChannelByUsername(username)//
+				.flatMap(channel -> startOrResume(channel.channelId())//
+						.flatMap(run -> writeChannel(channel, username, run.run().runId())//
+								.then(writePlaylists(channel.channelId(), run, summary))// playlists
+								.then(writeVideos(username, run, summary))// videos
+								.then(this.runs.complete(run.run().runId()))//
+								.then(this.sweeper.sweep(channel.channelId(), run.run().runId(),
+										run.run().highWaterMark() == null))))//
+				.thenReturn(summary)//
+				.transform(this.metrics::run);
+	}
+
+	private Mono<ResumedRun> startOrResume(String channelId) {
+		return this.runs//
+				.findUnfinished(channelId)//
+				.flatMap(unfinished -> unfinished.isPresent() ? resume(unfinished.get()) : start(channelId));
+	}
+
+	private Mono<ResumedRun> resume(IngestRunRepository.IngestRun run) {
+		return this.runs//
+				.findCheckpoints(run.runId())//
+				.doOnNext(checkpoints -> log
+						.info("resuming ingest run #" + run.runId() + " from " + checkpoints.size() + " checkpoints"))//
+				.map(checkpoints -> new ResumedRun(run, checkpoints));
+	}
+
+	/**
+	 * The high water mark is stored with the run, since the videos written before a crash
+	 * would otherwise raise it, and a resumed run would skip the older videos it hadn't
+	 * reached yet.
+	 */
+	private Mono<ResumedRun> start(String channelId) {
+		return findHighWaterMark(channelId)//
+				.flatMap(highWaterMark -> this.runs.start(channelId, highWaterMark.orElse(null)))//
+				.map(run -> new ResumedRun(run, Map.of()));
+	}
+
+	/**
+	 * Writes the channel's playlists and which videos are in each of them. The uploads
+	 * crawl fetches the videos themselves, so only their IDs are read here, a few
+	 * playlists at a time, and the memberships from all the playlists are written
+	 * together in batches. When crawling {@link #incremental incrementally}, a playlist
+	 * whose item count hasn't changed since we last walked it all isn't walked again.
+	 * Once a batch is written, each playlist in it is checkpointed at the page after its
+	 * last page in the batch, and a playlist whose last page has been written is recorded
+	 * as walked by this run.
+	 */
+	private Mono<Void> writePlaylists(String channelId, ResumedRun run, IngestSummary summary) {
+		return findStoredPlaylists(channelId)//
+				.flatMapMany(stored -> this.stages.playlists()//
+						.flatMap(this.client.getAllPlaylistsByChannel(channelId),
+								playlist -> doWritePlaylist(playlist, run.run().runId()))//
+						.filter(playlist -> !run.checkpoint(playlist.playlistId()).completed())//
+						.filter(playlist -> !this.incremental || !stored.containsKey(playlist.playlistId())
+								|| run.checkpoints().containsKey(playlist.playlistId())
+								|| !stored.get(playlist.playlistId()).unchanged(playlist)))//
+				.transform(playlists -> this.stages.playlistVideos().flatMap(playlists, playlist -> {
+					var checkpoint = run.checkpoint(playlist.playlistId());
+					var processed = new AtomicLong(checkpoint.processed());
+					return this.client//
+							.getVideoIdPagesByPlaylist(playlist.playlistId(), checkpoint.pageToken())//
+							.doOnNext(page -> this.metrics.page("playlist"))//
+							.map(page -> new PlaylistPage(page, processed.addAndGet(page.videoIds().size())));
+				}))//
+				.transform(pages -> IngestBatches.of(pages, MEMBERSHIP_BATCH_SIZE / PAGE_SIZE, this.videoBatchWindow))//
+				.transform(batches -> this.stages.playlistVideoWrites().flatMapSequential(batches,
+						batch -> writePlaylistVideos(batch, run.run().runId()).map(count -> Map.entry(batch, count))))//
+				.concatMap(written -> checkpointPlaylists(run.run().runId(), written.getKey())
+						.thenReturn(written.getValue()))//
+				.doOnNext(summary::recordPlaylistVideos)//
+				.then();
+	}
+
+	/**
+	 * the batches come in order, so a playlist's last page in this batch is as far as
+	 * it's been written.
+	 */
+	private Mono<Void> checkpointPlaylists(long runId, List<PlaylistPage> batch) {
+		var lastPages = new LinkedHashMap<String, PlaylistPage>();
+		for (var page : batch)
+			lastPages.put(page.page().playlistId(), page);
+		return Flux//
+				.fromIterable(lastPages.values())//
+				.concatMap(page -> this.runs
+						.checkpoint(runId, page.page().playlistId(), page.page().nextPageToken(), page.processed())
+						.then(page.page().nextPageToken() == null ? walked(page.page().playlistId(), runId)
+								: Mono.empty()))//
+				.then();
+	}
+
+	/**
+	 * remembers the item count that the walk saw, which is what the next incremental
+	 * crawl compares the playlist's item count with.
+	 */
+	private Mono<Void> walked(String playlistId, long runId) {
+		var sql = """
+				update yt_playlists set walked_run = :runId, walked_item_count = item_count
+				where playlist_id = :playlistId
+				""";
+		return this.databaseClient//
+				.sql(sql)//
+				.bind("runId", runId)//
+				.bind("playlistId", playlistId)//
+				.fetch()//
+				.rowsUpdated()//
+				.then();
+	}
+
+	/**
+	 * the item count of each of the channel's playlists the last time we walked it all.
+	 */
+	private Mono<Map<String, StoredPlaylist>> findStoredPlaylists(String channelId) {
+		return this.databaseClient//
+				.sql("select playlist_id, walked_item_count from yt_playlists where channel_id = :channelId")//
+				.bind("channelId", channelId)//
+				.map((row, metadata) -> new StoredPlaylist(row.get("playlist_id", String.class),
+						row.get("walked_item_count", Integer.class)))//
+				.all()//
+				.collectMap(StoredPlaylist::playlistId);
+	}
+
+	private Mono<Integer> writePlaylistVideos(List<PlaylistPage> batch, long runId) {
+		// postgres refuses to update the same row twice in one statement
+		var playlistVideos = new ArrayList<>(new LinkedHashSet<>(batch.stream()//
+				.flatMap(page -> page.page().videoIds().stream()
+						.map(videoId -> new PlaylistVideo(page.page().playlistId(), videoId)))//
+				.toList()));
+		if (playlistVideos.isEmpty())
+			return Mono.just(0);
+		var sql = """
+				insert into yt_playlist_videos (playlist_id, video_id, last_seen_run)
+				select playlist_id, video_id, :runId
+				from unnest(:playlistIds::varchar[], :videoIds::varchar[]) as pv (playlist_id, video_id)
+				on conflict on constraint yt_playlist_videos_pkey
+				do update set last_seen_run = excluded.last_seen_run
+				""";
+		return this.metrics.statement("upsert-playlist-videos", playlistVideos.size(), this.databaseClient//
+				.sql(sql)//
+				.bind("runId", runId)//
+				.bind("playlistIds", playlistVideos.stream().map(PlaylistVideo::playlistId).toArray(String[]::new))//
+				.bind("videoIds", playlistVideos.stream().map(PlaylistVideo::videoId).toArray(String[]::new))//
+				.fetch()//
+				.rowsUpdated());
+	}
+
+	/**
+	 * the publication date of the newest video we've stored for the channel, if any.
+	 */
+	private Mono<Optional<Date>> findHighWaterMark(String channelId) {
+		if (!this.incremental)
+			return Mono.just(Optional.empty());
+		return this.databaseClient//
+				.sql("select max(published_at) as high_water_mark from yt_videos where channel_id = :channelId")//
+				.bind("channelId", channelId)//
+				.map((row, metadata) -> Optional.ofNullable(row.get("high_water_mark", Instant.class)).map(Date::from))//
+				.one();
+	}
+
+	private Mono<Playlist> doWritePlaylist(Playlist playlist, long runId) {
 		var sql = """
 				insert into yt_playlists (
 				    playlist_id,
@@ -43,107 +292,69 @@ class YoutubeIngestJobRunner implements ApplicationRunner {
 				    title,
 				    description,
 				    item_count,
-				    fresh
+				    last_seen_run
 				)
-				values( :playlistId  ,  :channelId,  :publishedAt, :title, :description, :itemCount , true )
+				values( :playlistId  ,  :channelId,  :publishedAt, :title, :description, :itemCount , :runId )
 				on conflict on constraint yt_playlists_pkey
-				do update SET fresh = true where yt_playlists.playlist_id = :playlistId
+				do update SET last_seen_run = :runId, title = :title, description = :description, item_count = :itemCount
+				where yt_playlists.playlist_id = :playlistId
 				""";
 
-		return this.databaseClient.sql(sql)//
-				.bind("itemCount", playlist.itemCount()).bind("description", playlist.description())
-				.bind("title", playlist.title()).bind("publishedAt", playlist.publishedAt())
-				.bind("channelId", playlist.channelId()).bind("playlistId", playlist.playlistId()).fetch().rowsUpdated()
-				.map(count -> playlist);//
+		var write = this.databaseClient.sql(sql)//
+				.bind("runId", runId).bind("itemCount", playlist.itemCount())
+				.bind("description", playlist.description()).bind("title", playlist.title())
+				.bind("publishedAt", playlist.publishedAt()).bind("channelId", playlist.channelId())
+				.bind("playlistId", playlist.playlistId()).fetch().rowsUpdated();
+		return this.metrics.statement("upsert-playlist", 1, write).map(count -> playlist);
 	}
 
-	private Mono<Video> doWriteVideo(Video video) {
-		var videoSql = """
-				insert into yt_videos (
-				    video_id ,
-				    title,
-				    description,
-				    published_at ,
-				    standard_thumbnail,
-				    category_id,
-				    view_count,
-				    favorite_count,
-				    comment_count  ,
-				    like_count ,
-				    fresh,
-				    channel_id,
-				    tags
-				)
-				values (
-				    :videoId,  :title,  :description, :publishedAt,
-				    :standardThumbnail,  :categoryId,  :viewCount,
-				    :favoriteCount, :commentCount, :likeCount , true, :channelId, :tags
-				)
-				on conflict on CONSTRAINT yt_videos_pkey
-				do update set
-				    fresh = true,
-				    video_id  = excluded.video_id,
-				    title = excluded.title,
-				    description = excluded.description,
-				    published_at  = excluded.published_at,
-				    standard_thumbnail = excluded.standard_thumbnail,
-				    category_id = excluded.category_id,
-				    view_count = excluded.view_count,
-				    favorite_count = excluded.favorite_count,
-				    comment_count   = excluded.comment_count,
-				    like_count =  excluded.like_count ,
-				    tags = excluded.tags
-				 where
-				    yt_videos.video_id =  :videoId
-				""";
-
-		return databaseClient//
-				.sql(videoSql)//
-				.bind("videoId", video.videoId())//
-				.bind("title", video.title()) //
-				.bind("description", video.description())//
-				.bind("publishedAt", video.publishedAt())//
-				.bind("standardThumbnail", video.standardThumbnail().toExternalForm())//
-				.bind("categoryId", video.categoryId())//
-				.bind("viewCount", video.viewCount())//
-				.bind("favoriteCount", video.favoriteCount())//
-				.bind("commentCount", video.commentCount())//
-				.bind("tags", video.tags().toArray(new String[0]))//
-				.bind("likeCount", video.likeCount())//
-				.bind("channelId", video.channelId())//
-				.fetch()//
-				.rowsUpdated()//
-				.map(count -> video);
+	/**
+	 * Batches are made of whole pages of uploads, as close to {@link #videoBatchSize} as
+	 * that allows. They're written concurrently, but come out of the stage in order, so
+	 * that once a batch has come out the uploads can be checkpointed at the page after
+	 * it.
+	 */
+	private Mono<Void> writeVideos(String username, ResumedRun run, IngestSummary summary) {
+		var checkpoint = run.checkpoint(IngestRunRepository.UPLOADS);
+		if (checkpoint.completed())
+			return Mono.empty();
+		var processed = new AtomicLong(checkpoint.processed());
+		return this.client//
+				.getVideoPagesByUsernameUploads(username, checkpoint.pageToken(), run.run().highWaterMark())//
+				.doOnNext(page -> this.metrics.page("uploads"))//
+				.transform(pages -> IngestBatches.of(pages, Math.max(1, this.videoBatchSize / PAGE_SIZE),
+						this.videoBatchWindow))//
+				.transform(batches -> this.stages.videoWrites().flatMapSequential(batches, batch -> {
+					var videos = batch.stream().flatMap(page -> page.videos().stream()).toList();
+					return this.videoBatchWriter.write(videos, run.run().runId(), summary).thenReturn(batch);
+				}))//
+				.concatMap(batch -> this.runs.checkpoint(run.run().runId(), IngestRunRepository.UPLOADS,
+						batch.get(batch.size() - 1).nextPageToken(),
+						processed.addAndGet(batch.stream().mapToInt(page -> page.videos().size()).sum())))//
+				.then();
 	}
 
-	private Mono<Channel> writeChannel() {
+	/**
+	 * the username is stored so that the channel can be looked up by it without asking
+	 * the API.
+	 */
+	private Mono<Channel> writeChannel(Channel channel, String username, long runId) {
 		var sql = """
-				    insert into yt_channels(channel_id, description, published_at, title, fresh)
-				    values (  :channelId , :description, :publishedAt, :title, true)
+				    insert into yt_channels(channel_id, username, description, published_at, title, last_seen_run)
+				    values (  :channelId , :username, :description, :publishedAt, :title, :runId)
 				    on conflict on constraint yt_channels_pkey
-				    do update SET fresh = true where yt_channels.channel_id = :channelId
+				    do update SET last_seen_run = :runId, username = :username where yt_channels.channel_id = :channelId
 				""";
-		return client//
-				.getChannelByUsername(this.channelUsername)//
-				.flatMap(c -> databaseClient.sql(sql)//
-						.bind("channelId", c.channelId())//
-						.bind("description", c.description())//
-						.bind("publishedAt", c.publishedAt())//
-						.bind("title", c.title())//
-						.fetch()//
-						.rowsUpdated()//
-						.thenReturn(c)//
-				);
-	}
-
-	private Flux<Integer> resetTablesFreshStatus() {
-		return Flux//
-				.fromArray("yt_playlist_videos,yt_channels,yt_playlists,yt_videos".split(","))//
-				.flatMap(table -> databaseClient//
-						.sql("update " + table + " set fresh = false")//
-						.fetch()//
-						.rowsUpdated()//
-				);
+		var write = databaseClient.sql(sql)//
+				.bind("runId", runId)//
+				.bind("username", username)//
+				.bind("channelId", channel.channelId())//
+				.bind("description", channel.description())//
+				.bind("publishedAt", channel.publishedAt())//
+				.bind("title", channel.title())//
+				.fetch()//
+				.rowsUpdated();
+		return this.metrics.statement("upsert-channel", 1, write).thenReturn(channel);
 	}
 
 }
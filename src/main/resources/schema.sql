@@ -44,3 +44,85 @@ create table if not exists yt_videos
     tags               text[]
 
 );
+
+alter table yt_videos add column if not exists fingerprint varchar(32);
+
+create table if not exists yt_ingest_schedule
+(
+    username          varchar(255) not null primary key,
+    last_started_at   timestamptz,
+    last_completed_at timestamptz,
+    last_error        text
+);
+
+alter table yt_videos add column if not exists statistics_refreshed_at timestamptz;
+
+alter table yt_videos add column if not exists next_statistics_refresh_at timestamptz;
+
+create index if not exists yt_videos_next_statistics_refresh_at_idx on yt_videos (next_statistics_refresh_at nulls first);
+
+create table if not exists yt_video_statistics_snapshots
+(
+    primary key (video_id, captured_at),
+    video_id       varchar(255) not null,
+    captured_at    timestamptz  not null,
+    view_count     int          not null,
+    like_count     int          not null,
+    favorite_count int          not null,
+    comment_count  int          not null
+);
+
+create table if not exists yt_ingest_runs
+(
+    run_id          bigserial    not null primary key,
+    channel_id      varchar(255) not null,
+    high_water_mark timestamp,
+    started_at      timestamptz  not null default now(),
+    completed_at    timestamptz
+);
+
+create index if not exists yt_ingest_runs_unfinished_idx on yt_ingest_runs (channel_id) where completed_at is null;
+
+create table if not exists yt_ingest_checkpoints
+(
+    primary key (run_id, source),
+    run_id     bigint       not null references yt_ingest_runs (run_id) on delete cascade,
+    source     varchar(255) not null,
+    page_token varchar(255),
+    processed  bigint       not null default 0,
+    completed  boolean      not null default false
+);
+
+alter table yt_channels add column if not exists last_seen_run bigint;
+
+alter table yt_playlists add column if not exists last_seen_run bigint;
+
+alter table yt_playlists add column if not exists walked_run bigint;
+
+alter table yt_playlist_videos add column if not exists last_seen_run bigint;
+
+alter table yt_videos add column if not exists last_seen_run bigint;
+
+create index if not exists yt_playlists_channel_id_last_seen_run_idx on yt_playlists (channel_id, last_seen_run);
+
+create index if not exists yt_playlist_videos_playlist_id_last_seen_run_idx on yt_playlist_videos (playlist_id, last_seen_run);
+
+create index if not exists yt_videos_channel_id_last_seen_run_idx on yt_videos (channel_id, last_seen_run);
+
+alter table yt_channels add column if not exists username varchar(255);
+
+create index if not exists yt_channels_username_idx on yt_channels (lower(username));
+
+create index if not exists yt_playlist_videos_video_id_idx on yt_playlist_videos (video_id);
+
+create index if not exists yt_videos_channel_id_published_at_idx on yt_videos (channel_id, published_at, video_id);
+
+create index if not exists yt_videos_channel_id_view_count_idx on yt_videos (channel_id, view_count, video_id);
+
+create index if not exists yt_videos_channel_id_category_id_idx on yt_videos (channel_id, category_id, published_at, video_id);
+
+create index if not exists yt_videos_tags_idx on yt_videos using gin (tags);
+
+create index if not exists yt_playlists_channel_id_published_at_idx on yt_playlists (channel_id, published_at, playlist_id);
+
+alter table yt_playlists add column if not exists walked_item_count int;
@@ -0,0 +1,89 @@
+package com.joshlong.youtube.client;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.joshlong.youtube.simulator.YoutubeApiSimulator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Exercises {@link CachingYoutubeClient} against the {@link YoutubeApiSimulator}, slowed
+ * down so that concurrent lookups overlap.
+ *
+ * @author Josh Long
+ */
+class CachingYoutubeClientTest {
+
+	private final YoutubeApiSimulator simulator = new YoutubeApiSimulator(
+			new YoutubeApiSimulator.Settings(2, 60, 3, 100, Duration.ofMillis(100), 0));
+
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+
+	private final CachingYoutubeClient client = new CachingYoutubeClient(delegate(),
+			cache("youtube.channels", this.registry), cache("youtube.playlists", this.registry),
+			cache("youtube.videos", this.registry), Duration.ofMillis(20));
+
+	private YoutubeClient delegate() {
+		var quota = new YoutubeQuota(10_000, 1_000, false, Clock.systemUTC());
+		var circuitBreaker = new YoutubeCircuitBreaker(20, 0.5, Duration.ofSeconds(30), Clock.systemUTC());
+		var resilience = new YoutubeResilience(Duration.ofSeconds(5), Map.of(), 0, Duration.ofMillis(10),
+				Duration.ofSeconds(2), circuitBreaker, Clock.systemUTC());
+		return new DefaultYoutubeClient(WebClient.create(), "test-key", this.simulator.baseUrl(), 4, quota,
+				new YoutubeResponseCache(DataSize.ofMegabytes(1), null), resilience, new SimpleMeterRegistry());
+	}
+
+	private static <V> AsyncCache<String, V> cache(String name, MeterRegistry registry) {
+		AsyncCache<String, V> cache = Caffeine.newBuilder().maximumSize(100).recordStats().buildAsync();
+		return CaffeineCacheMetrics.monitor(registry, cache, name);
+	}
+
+	@AfterEach
+	void close() {
+		this.simulator.close();
+	}
+
+	@Test
+	void sharesOneLookupBetweenConcurrentMisses() {
+		var username = YoutubeApiSimulator.username(1);
+		var lookups = Flux.range(0, 10).flatMap(i -> this.client.getChannelByUsername(username));
+		StepVerifier.create(lookups.map(Channel::channelId).distinct()).expectNext(YoutubeApiSimulator.channelId(1))//
+				.verifyComplete();
+		StepVerifier.create(this.client.getChannelByUsername(username)).expectNextCount(1).verifyComplete();
+		Assertions.assertEquals(1, this.simulator.requests("channels"));
+	}
+
+	@Test
+	void looksUpConcurrentVideoMissesTogether() {
+		var videoIds = IntStream.range(0, 30).mapToObj(i -> YoutubeApiSimulator.videoId(0, i)).toList();
+		var lookups = Flux.fromIterable(videoIds).flatMap(this.client::getVideoById);
+		StepVerifier.create(lookups.map(Video::videoId).collectList())
+				.assertNext(found -> Assertions.assertEquals(30, found.size()))//
+				.verifyComplete();
+		StepVerifier.create(lookups.count()).expectNext(30L).verifyComplete();
+		Assertions.assertEquals(1, this.simulator.requests("videos"));
+		var misses = this.registry.get("cache.gets").tags("cache", "youtube.videos", "result", "miss");
+		Assertions.assertEquals(30, misses.functionCounter().count());
+	}
+
+	@Test
+	void remembersTheChannelsPlaylists() {
+		var channelId = YoutubeApiSimulator.channelId(0);
+		for (var i = 0; i < 3; i++)
+			StepVerifier.create(this.client.getAllPlaylistsByChannel(channelId)).expectNextCount(3).verifyComplete();
+		Assertions.assertEquals(1, this.simulator.requests("playlists"));
+	}
+
+}
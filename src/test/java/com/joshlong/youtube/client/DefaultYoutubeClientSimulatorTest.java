@@ -0,0 +1,270 @@
+package com.joshlong.youtube.client;
+
+import com.joshlong.youtube.YoutubeProperties;
+import com.joshlong.youtube.simulator.YoutubeApiSimulator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.test.StepVerifier;
+
+import java.lang.management.ManagementFactory;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Exercises {@link DefaultYoutubeClient} against the {@link YoutubeApiSimulator}, so that
+ * it runs without network access or an API key.
+ *
+ * @author Josh Long
+ */
+class DefaultYoutubeClientSimulatorTest {
+
+	private final YoutubeApiSimulator simulator = new YoutubeApiSimulator(
+			new YoutubeApiSimulator.Settings(3, 230, 4, 100, Duration.ZERO, 0));
+
+	private final YoutubeQuota quota = new YoutubeQuota(10_000, 1_000, false, Clock.systemUTC());
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private final YoutubeResponseCache responses = new YoutubeResponseCache(
+			DataSize.parse(YoutubeProperties.Cache.DEFAULT_MAX_SIZE), null);
+
+	private final DefaultYoutubeClient client = client(this.simulator);
+
+	private DefaultYoutubeClient client(YoutubeApiSimulator simulator) {
+		return client(simulator, WebClient.create());
+	}
+
+	private DefaultYoutubeClient client(YoutubeApiSimulator simulator, WebClient http) {
+		return client(simulator, http, this.quota);
+	}
+
+	private DefaultYoutubeClient client(YoutubeApiSimulator simulator, WebClient http, YoutubeQuota quota) {
+		var circuitBreaker = new YoutubeCircuitBreaker(20, 0.5, Duration.ofSeconds(30), Clock.systemUTC());
+		var resilience = new YoutubeResilience(Duration.ofSeconds(5), Map.of(), 6, Duration.ofMillis(10),
+				Duration.ofSeconds(2), circuitBreaker, Clock.systemUTC());
+		return new DefaultYoutubeClient(http, "test-key", simulator.baseUrl(), 4, quota, this.responses, resilience,
+				this.registry);
+	}
+
+	@AfterEach
+	void close() {
+		this.simulator.close();
+	}
+
+	@Test
+	void pagesThroughAllUploads() {
+		var username = YoutubeApiSimulator.username(1);
+		StepVerifier.create(this.client.getAllVideosByUsernameUploads(username).map(Video::videoId).collectList())
+				.assertNext(ids -> {
+					Assertions.assertEquals(230, ids.size());
+					Assertions.assertEquals(YoutubeApiSimulator.videoId(1, 0), ids.get(0));
+					Assertions.assertEquals(YoutubeApiSimulator.videoId(1, 229), ids.get(229));
+				})//
+				.verifyComplete();
+		Assertions.assertEquals(5, this.simulator.requests("playlistItems"));
+		Assertions.assertEquals(5, this.simulator.requests("videos"));
+	}
+
+	@Test
+	void stopsPagingAtVideosWeAlreadyHave() {
+		var username = YoutubeApiSimulator.username(1);
+		var publishedAfter = Date.from(YoutubeApiSimulator.publishedAt(11));
+		StepVerifier.create(this.client.getAllVideosByUsernameUploads(username, publishedAfter).map(Video::videoId))
+				.expectNextSequence(IntStream.range(0, 11).mapToObj(i -> YoutubeApiSimulator.videoId(1, i)).toList())//
+				.verifyComplete();
+		Assertions.assertEquals(1, this.simulator.requests("playlistItems"));
+		Assertions.assertEquals(1, this.simulator.requests("videos"));
+	}
+
+	@Test
+	void timesEachRequest() {
+		StepVerifier.create(this.client.getAllVideosByUsernameUploads(YoutubeApiSimulator.username(1)))
+				.expectNextCount(230)//
+				.verifyComplete();
+		var requests = this.registry.get("youtube.client.requests").tags("endpoint", "playlist_items", "status", "200",
+				"outcome", "SUCCESS");
+		Assertions.assertEquals(5, requests.timer().count());
+		var sizes = this.registry.get("youtube.client.response.size").tags("endpoint", "videos").summary();
+		Assertions.assertEquals(5, sizes.count());
+		Assertions.assertTrue(sizes.totalAmount() > 0);
+	}
+
+	@Test
+	void listsAChannelFromItsUploadsPlaylist() {
+		var channelId = YoutubeApiSimulator.channelId(2);
+		StepVerifier.create(this.client.getAllVideosByChannel(channelId).map(Video::videoId).collectList())
+				.assertNext(ids -> {
+					Assertions.assertEquals(230, ids.size());
+					Assertions.assertEquals(YoutubeApiSimulator.videoId(2, 0), ids.get(0));
+				})//
+				.verifyComplete();
+		StepVerifier.create(this.client.getVideosByChannel(channelId, null)).assertNext(page -> {
+			Assertions.assertEquals(50, page.videos().size());
+			Assertions.assertEquals("p50", page.nextPageToken());
+		}).verifyComplete();
+		Assertions.assertEquals(0, this.simulator.requests("search"));
+		Assertions.assertEquals(1, this.simulator.requests("channels"));
+		Assertions.assertEquals(1 + 5 + 5, cost("getAllVideosByChannel"));
+		Assertions.assertEquals(1 + 1, cost("getVideosByChannel"));
+	}
+
+	@Test
+	void findsNoVideosForAChannelThatDoesNotExist() {
+		var channelId = YoutubeApiSimulator.channelId(99);
+		StepVerifier.create(this.client.getAllVideosByChannel(channelId)).verifyComplete();
+		StepVerifier.create(this.client.getVideosByChannel(channelId, null)).verifyComplete();
+		Assertions.assertEquals(2, this.simulator.requests("channels"), "an unknown channel isn't remembered");
+		Assertions.assertEquals(0, this.simulator.requests("playlistItems"));
+	}
+
+	@Test
+	void searchesForADateRange() {
+		var channelId = YoutubeApiSimulator.channelId(0);
+		var publishedAfter = Date.from(YoutubeApiSimulator.publishedAt(100));
+		var publishedBefore = Date.from(YoutubeApiSimulator.publishedAt(40));
+		var videos = this.client.searchVideosByChannel(channelId, null, publishedAfter, publishedBefore);
+		StepVerifier.create(videos.map(Video::videoId).collectList()).assertNext(ids -> {
+			Assertions.assertEquals(60, ids.size());
+			Assertions.assertEquals(YoutubeApiSimulator.videoId(0, 41), ids.get(0));
+		}).verifyComplete();
+		Assertions.assertEquals(2 * 100 + 2, cost("searchVideosByChannel"));
+	}
+
+	private double cost(String call) {
+		return this.registry.get("youtube.client.call.cost").tag("call", call).summary().totalAmount();
+	}
+
+	@Test
+	void fetchesJustTheStatistics() {
+		var ids = IntStream.range(0, 120).mapToObj(i -> YoutubeApiSimulator.videoId(0, i)).toList();
+		StepVerifier.create(this.client.getVideoStatisticsByIds(ids)).assertNext(statistics -> {
+			Assertions.assertEquals(120, statistics.size());
+			Assertions.assertEquals(7, statistics.get(YoutubeApiSimulator.videoId(0, 7)).likeCount());
+		}).verifyComplete();
+		Assertions.assertEquals(3, this.simulator.requests("videos"));
+	}
+
+	@Test
+	void readsPlaylistMembershipWithoutHydratingVideos() {
+		var playlistId = YoutubeApiSimulator.playlistId(0, 1);
+		StepVerifier.create(this.client.getAllVideoIdsByPlaylist(playlistId).collectList()).assertNext(ids -> {
+			Assertions.assertEquals(58, ids.size());
+			Assertions.assertEquals(YoutubeApiSimulator.videoId(0, 5), ids.get(1));
+		}).verifyComplete();
+		Assertions.assertEquals(2, this.simulator.requests("playlistItems"));
+		Assertions.assertEquals(0, this.simulator.requests("videos"));
+	}
+
+	@Test
+	void retriesFailedPagesWithoutStartingOver() {
+		var settings = new YoutubeApiSimulator.Settings(1, 500, 1, 100, Duration.ZERO, 0.1);
+		try (var flaky = new YoutubeApiSimulator(settings)) {
+			var username = YoutubeApiSimulator.username(0);
+			StepVerifier.create(client(flaky).getAllVideosByUsernameUploads(username).count())//
+					.expectNext(500L)//
+					.verifyComplete();
+			Assertions.assertTrue(flaky.requests("playlistItems") < 20,
+					() -> "made " + flaky.requests("playlistItems") + " requests for 10 pages");
+		}
+	}
+
+	@Test
+	void findsPlaylistsAcrossPages() {
+		StepVerifier.create(this.client.getAllPlaylistsByChannel(YoutubeApiSimulator.channelId(2)).collectList())
+				.assertNext(playlists -> {
+					Assertions.assertEquals(4, playlists.size());
+					Assertions.assertEquals(58, playlists.get(0).itemCount());
+					Assertions.assertEquals(57, playlists.get(3).itemCount());
+				})//
+				.verifyComplete();
+	}
+
+	@Test
+	void revalidatesCachedResponses() {
+		var username = YoutubeApiSimulator.username(0);
+		StepVerifier.create(this.client.getChannelByUsername(username)).expectNextCount(1).verifyComplete();
+		StepVerifier.create(this.client.getChannelByUsername(username))
+				.assertNext(channel -> Assertions.assertEquals(YoutubeApiSimulator.channelId(0), channel.channelId()))//
+				.verifyComplete();
+		Assertions.assertEquals(2, this.simulator.requests("channels"));
+		Assertions.assertEquals(1, this.simulator.notModified());
+	}
+
+	@Test
+	void fetchesGzippedResponsesThroughItsOwnConnectionPool() {
+		var http = YoutubeClientConfiguration.webClient(WebClient.builder(), this.simulator.baseUrl(),
+				http(DataSize.ofMegabytes(4)));
+		StepVerifier.create(client(this.simulator, http).getAllVideosByUsernameUploads(YoutubeApiSimulator.username(1)))
+				.expectNextCount(230)//
+				.verifyComplete();
+	}
+
+	@Test
+	void refusesResponsesTooLargeToHoldInMemory() {
+		var http = YoutubeClientConfiguration.webClient(WebClient.builder(), this.simulator.baseUrl(),
+				http(DataSize.ofKilobytes(1)));
+		StepVerifier.create(client(this.simulator, http).getAllVideosByUsernameUploads(YoutubeApiSimulator.username(1)))
+				.verifyError(DataBufferLimitException.class);
+	}
+
+	private static YoutubeProperties.Http http(DataSize maxInMemorySize) {
+		return new YoutubeProperties.Http(10, 100, Duration.ofSeconds(5), Duration.ofSeconds(60),
+				Duration.ofMinutes(10), Duration.ofSeconds(5), Duration.ofSeconds(5), Duration.ofSeconds(5), true, true,
+				maxInMemorySize);
+	}
+
+	/**
+	 * The response cache is the only thing that may grow with the channel, up to its
+	 * default size. Everything else the crawl holds has to stay flat.
+	 */
+	@Test
+	void streamsALargeChannelInBoundedMemory() {
+		var settings = new YoutubeApiSimulator.Settings(1, 100_000, 1, 1_000, Duration.ZERO, 0);
+		try (var large = new YoutubeApiSimulator(settings)) {
+			var quota = new YoutubeQuota(Long.MAX_VALUE, 1_000_000, false, Clock.systemUTC());
+			var client = client(large, WebClient.create(), quota);
+			var baseline = usedHeap();
+			var mostUsed = new AtomicLong();
+			var mostCached = new AtomicLong();
+			var mostAhead = new AtomicLong();
+			var videos = client//
+					.getAllVideosByChannel(YoutubeApiSimulator.channelId(0))//
+					.index()//
+					.doOnNext(video -> {
+						var streamed = video.getT1();
+						if (streamed % 10_000 == 0) {
+							var cached = this.responses.size();
+							mostCached.accumulateAndGet(cached, Math::max);
+							mostUsed.accumulateAndGet(usedHeap() - cached, Math::max);
+						}
+						mostAhead.accumulateAndGet(
+								large.requests("playlistItems") * DefaultYoutubeClient.MAX_RESULTS - streamed,
+								Math::max);
+					});
+			StepVerifier.create(videos.count()).expectNext(100_000L).verifyComplete();
+			var grown = mostUsed.get() - baseline;
+			Assertions.assertTrue(grown < DataSize.ofMegabytes(32).toBytes(),
+					() -> "besides the cached responses, the heap grew by " + grown);
+			Assertions.assertTrue(
+					mostCached.get() <= DataSize.parse(YoutubeProperties.Cache.DEFAULT_MAX_SIZE).toBytes(),
+					() -> "cached " + mostCached.get() + " bytes of responses");
+			Assertions.assertTrue(mostAhead.get() <= 10L * DefaultYoutubeClient.MAX_RESULTS,
+					() -> "fetched " + mostAhead.get() + " videos ahead of the subscriber");
+		}
+	}
+
+	private static long usedHeap() {
+		System.gc();
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+}
@@ -38,12 +38,12 @@ class DefaultYoutubeClientTest {
 
 	@Test
 	void videosByChannel() throws Exception {
-		// this result is paged, and the max is 20
+		// this result is a page of the uploads playlist, and the max is 50
 		var all = this.youtubeClient.getChannelByUsername("starbuxman")
 				.flatMapMany(channel -> this.youtubeClient.getVideosByChannel(channel.channelId(), null));
 		StepVerifier//
 				.create(all.map(cv -> cv.videos().size()))//
-				.expectNextMatches(count -> count == 20)//
+				.expectNextMatches(count -> count == 50)//
 				.verifyComplete();
 	}
 
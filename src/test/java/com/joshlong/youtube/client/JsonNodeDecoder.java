@@ -0,0 +1,104 @@
+package com.joshlong.youtube.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.SneakyThrows;
+import org.springframework.util.Assert;
+
+import java.net.URL;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The tree-based mapping {@link DefaultYoutubeClient} used before it moved to
+ * {@link YoutubeJsonDecoder}, kept as a baseline for the decoder tests and benchmarks.
+ *
+ * @author Josh Long
+ */
+abstract class JsonNodeDecoder {
+
+	static List<Video> videos(JsonNode jsonNode) {
+		var list = new ArrayList<Video>();
+		for (var item : jsonNode.get("items"))
+			list.add(buildVideoFromJsonNode(item));
+		return list;
+	}
+
+	static List<Playlist> playlists(JsonNode jsonNode) {
+		var list = new ArrayList<Playlist>();
+		for (var item : jsonNode.get("items"))
+			list.add(buildPlaylistForJsonNode(item));
+		return list;
+	}
+
+	static List<String> playlistItemVideoIds(JsonNode jsonNode) {
+		var list = new ArrayList<String>();
+		for (var item : jsonNode.get("items"))
+			list.add(item.get("contentDetails").get("videoId").textValue());
+		return list;
+	}
+
+	@SneakyThrows
+	static Video buildVideoFromJsonNode(JsonNode item) {
+		var id = item.get("id").textValue();
+		var snippet = item.get("snippet");
+		var channelId = snippet.get("channelId").textValue();
+		var publishedAt = buildDateFrom(snippet.get("publishedAt").textValue());
+		var description = snippet.get("description").textValue();
+		var title = snippet.get("title").textValue();
+		var thumbnailUrl = new URL(snippet.get("thumbnails").get("default").get("url").textValue());
+		var tags = jsonNodeOrNull(snippet, "tags");
+		var statistics = item.get("statistics");
+		var viewCount = numberOrZero(statistics, "viewCount");
+		var likeCount = numberOrZero(statistics, "likeCount");
+		var favCount = numberOrZero(statistics, "favoriteCount");
+		var commentCount = numberOrZero(statistics, "commentCount");
+		var categoryId = Integer.parseInt(snippet.get("categoryId").textValue());
+		var tagsList = new ArrayList<String>();
+		if (null != tags)
+			for (var tag : tags)
+				tagsList.add(tag.textValue());
+		return new Video(id, title, description, publishedAt, thumbnailUrl, tagsList, categoryId, viewCount, likeCount,
+				favCount, commentCount, channelId);
+	}
+
+	static Playlist buildPlaylistForJsonNode(JsonNode jsonNode) {
+		var itemCount = jsonNode.get("contentDetails").get("itemCount").intValue();
+		var playlistId = jsonNode.get("id").textValue();
+		var snippet = jsonNode.get("snippet");
+		var title = snippet.get("title").textValue();
+		var description = snippet.get("description").textValue();
+		var publishedAt = buildDateFrom(snippet.get("publishedAt").textValue());
+		var channelId = snippet.get("channelId").textValue();
+		return new Playlist(playlistId, channelId, publishedAt, title, description, itemCount);
+	}
+
+	static Channel buildChannelFromJsonNode(JsonNode jsonNode) {
+		var items = jsonNode.get("items");
+		for (var i : items) {
+			Assert.isTrue(i.get("kind").textValue().equals("youtube#channel"), "the item is a YouTube channel");
+			var id = i.get("id").textValue();
+			var title = i.get("snippet").get("title").textValue();
+			var description = i.get("snippet").get("description").textValue();
+			var publishedAt = i.get("snippet").get("publishedAt").textValue();
+
+			return new Channel(id, title, description, buildDateFrom(publishedAt));
+		}
+		throw new RuntimeException("we should never reach this point! there was no Channel found");
+	}
+
+	private static int numberOrZero(JsonNode node, String propertyName) {
+		var json = jsonNodeOrNull(node, propertyName);
+		return json != null ? Integer.parseInt(json.textValue()) : 0;
+	}
+
+	private static Date buildDateFrom(String isoDate) {
+		return Date.from(Instant.parse(isoDate));
+	}
+
+	private static JsonNode jsonNodeOrNull(JsonNode node, String propertyName) {
+		return node.has(propertyName) ? node.get(propertyName) : null;
+	}
+
+}
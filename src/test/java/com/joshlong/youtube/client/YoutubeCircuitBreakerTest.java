@@ -0,0 +1,101 @@
+package com.joshlong.youtube.client;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Map;
+
+class YoutubeCircuitBreakerTest {
+
+	private final MutableClock clock = new MutableClock();
+
+	private final YoutubeCircuitBreaker circuitBreaker = new YoutubeCircuitBreaker(4, 0.5, Duration.ofSeconds(30),
+			this.clock);
+
+	private final Mono<String> failure = Mono
+			.error(WebClientResponseException.create(503, "Service Unavailable", null, null, null));
+
+	private final Mono<String> notFound = Mono
+			.error(WebClientResponseException.create(404, "Not Found", null, null, null));
+
+	@Test
+	void opensWhenTooManyCallsFail() {
+		call(this.failure).verifyError(WebClientResponseException.class);
+		call(Mono.just("ok")).expectNext("ok").verifyComplete();
+		call(this.notFound).verifyError(WebClientResponseException.class);
+		Assertions.assertEquals(YoutubeCircuitBreaker.State.CLOSED, this.circuitBreaker.state());
+		call(this.failure).verifyError(WebClientResponseException.class);
+		Assertions.assertEquals(YoutubeCircuitBreaker.State.OPEN, this.circuitBreaker.state());
+		call(Mono.just("ok")).verifyError(YoutubeUnavailableException.class);
+	}
+
+	@Test
+	void letsATrialCallThroughOnceItsWaitedLongEnough() {
+		for (var i = 0; i < 4; i++)
+			call(this.failure).verifyError(WebClientResponseException.class);
+		this.clock.advance(Duration.ofSeconds(31));
+		call(this.failure).verifyError(WebClientResponseException.class);
+		Assertions.assertEquals(YoutubeCircuitBreaker.State.OPEN, this.circuitBreaker.state());
+		call(Mono.just("ok")).verifyError(YoutubeUnavailableException.class);
+		this.clock.advance(Duration.ofSeconds(31));
+		call(Mono.just("ok")).expectNext("ok").verifyComplete();
+		Assertions.assertEquals(YoutubeCircuitBreaker.State.CLOSED, this.circuitBreaker.state());
+	}
+
+	@Test
+	void keepsTheTrialForACallThatNeverReachedTheApi() {
+		for (var i = 0; i < 4; i++)
+			call(this.failure).verifyError(WebClientResponseException.class);
+		this.clock.advance(Duration.ofSeconds(31));
+		var resilience = new YoutubeResilience(Duration.ofSeconds(5), Map.of(), 3, Duration.ofMillis(1),
+				Duration.ofSeconds(1), this.circuitBreaker, this.clock);
+		var spent = Mono.<Void>error(new QuotaExceededException(YoutubeEndpoint.VIDEOS, 0, Duration.ofHours(1)));
+		StepVerifier.create(resilience.call(YoutubeEndpoint.VIDEOS, spent, Mono.just("ok")))
+				.verifyError(QuotaExceededException.class);
+		Assertions.assertNotEquals(YoutubeCircuitBreaker.State.CLOSED, this.circuitBreaker.state(),
+				"the API wasn't called, so it can't have recovered");
+		call(this.failure).verifyError(WebClientResponseException.class);
+		Assertions.assertEquals(YoutubeCircuitBreaker.State.OPEN, this.circuitBreaker.state(),
+				"the trial was still there to fail");
+	}
+
+	private StepVerifier.FirstStep<String> call(Mono<String> call) {
+		return StepVerifier
+				.create(this.circuitBreaker.guard(YoutubeEndpoint.VIDEOS, call, YoutubeResilience::isRetryable));
+	}
+
+	private static class MutableClock extends Clock {
+
+		private Instant instant = Instant.parse("2022-07-01T00:00:00Z");
+
+		void advance(Duration duration) {
+			this.instant = this.instant.plus(duration);
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public Instant instant() {
+			return this.instant;
+		}
+
+	}
+
+}
@@ -0,0 +1,88 @@
+package com.joshlong.youtube.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Callable;
+
+@Slf4j
+class YoutubeJsonDecoderTest {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	void decodesTheSameVideosAsTheTree() throws Exception {
+		var json = fixture("videos.json");
+		var streamed = YoutubeJsonDecoder.decode(json, YoutubeJsonDecoder::videos).items();
+		var tree = JsonNodeDecoder.videos(this.objectMapper.readTree(json));
+		Assertions.assertEquals(50, streamed.size());
+		Assertions.assertEquals(tree, streamed);
+	}
+
+	@Test
+	void decodesTheSamePlaylistsAsTheTree() throws Exception {
+		var json = fixture("playlists.json");
+		var page = YoutubeJsonDecoder.decode(json, YoutubeJsonDecoder::playlists);
+		Assertions.assertEquals(JsonNodeDecoder.playlists(this.objectMapper.readTree(json)), page.items());
+		Assertions.assertEquals(84, page.totalResults());
+		Assertions.assertEquals("CBQQAA", page.nextPageToken());
+		Assertions.assertEquals("CAoQAQ", page.previousPageToken());
+	}
+
+	@Test
+	void decodesPlaylistItemsAndChannels() throws Exception {
+		var items = fixture("playlistItems.json");
+		var page = YoutubeJsonDecoder.decode(items, YoutubeJsonDecoder::playlistItems);
+		Assertions.assertEquals(JsonNodeDecoder.playlistItemVideoIds(this.objectMapper.readTree(items)),
+				page.items().stream().map(YoutubeJsonDecoder.PlaylistItem::videoId).toList());
+		Assertions.assertEquals(2000, page.totalResults());
+		Assertions.assertEquals(50, page.resultsPerPage());
+
+		var channels = fixture("channels.json");
+		var channel = YoutubeJsonDecoder.decode(channels, YoutubeJsonDecoder::channels).items().get(0);
+		Assertions.assertEquals(JsonNodeDecoder.buildChannelFromJsonNode(this.objectMapper.readTree(channels)),
+				channel.channel());
+		Assertions.assertEquals("UU7yfnfvEUlXUIfm8rGLwZdA", channel.uploadsPlaylistId());
+	}
+
+	/**
+	 * compares the bytes allocated while decoding a page of fifty videos with either
+	 * approach, after giving the JIT a chance to warm up.
+	 */
+	@Test
+	void allocatesLessThanTheTree() throws Exception {
+		var json = fixture("videos.json");
+		Callable<Object> streaming = () -> YoutubeJsonDecoder.decode(json, YoutubeJsonDecoder::videos);
+		Callable<Object> tree = () -> JsonNodeDecoder.videos(this.objectMapper.readTree(json));
+		var streamingBytes = allocatedBytesPerCall(streaming);
+		var treeBytes = allocatedBytesPerCall(tree);
+		log.info("decoding " + json.length + " bytes of videos allocates " + streamingBytes + " bytes streaming and "
+				+ treeBytes + " bytes with a tree");
+		Assertions.assertTrue(streamingBytes < treeBytes);
+	}
+
+	private static long allocatedBytesPerCall(Callable<Object> callable) throws Exception {
+		var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		var thread = Thread.currentThread().getId();
+		var iterations = 200;
+		for (var i = 0; i < iterations; i++)
+			callable.call();
+		var before = threads.getThreadAllocatedBytes(thread);
+		for (var i = 0; i < iterations; i++)
+			callable.call();
+		return (threads.getThreadAllocatedBytes(thread) - before) / iterations;
+	}
+
+	@SneakyThrows
+	private static byte[] fixture(String name) {
+		try (var in = new ClassPathResource("fixtures/" + name).getInputStream()) {
+			return in.readAllBytes();
+		}
+	}
+
+}
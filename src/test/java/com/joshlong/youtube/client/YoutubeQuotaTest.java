@@ -0,0 +1,74 @@
+package com.joshlong.youtube.client;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+class YoutubeQuotaTest {
+
+	private final Instant noonPacific = Instant.parse("2022-07-01T19:00:00Z");
+
+	@Test
+	void failsFastWhenTheBudgetIsSpent() {
+		var quota = new YoutubeQuota(150, 1000, false, Clock.fixed(this.noonPacific, ZoneOffset.UTC));
+		StepVerifier.create(quota.acquire(YoutubeEndpoint.SEARCH)).verifyComplete();
+		StepVerifier.create(quota.acquire(YoutubeEndpoint.SEARCH)).verifyError(QuotaExceededException.class);
+		StepVerifier.create(quota.acquire(YoutubeEndpoint.VIDEOS)).verifyComplete();
+		Assertions.assertEquals(49, quota.remaining());
+		Assertions.assertEquals(100, quota.spent(YoutubeEndpoint.SEARCH));
+		Assertions.assertFalse(quota.canAfford(YoutubeEndpoint.SEARCH.cost()));
+		Assertions.assertEquals(Duration.ofHours(12), quota.untilReset());
+	}
+
+	@Test
+	void resetsAtMidnightPacific() {
+		var clock = new MutableClock(this.noonPacific);
+		var quota = new YoutubeQuota(100, 1000, false, clock);
+		StepVerifier.create(quota.acquire(YoutubeEndpoint.SEARCH)).verifyComplete();
+		Assertions.assertEquals(0, quota.remaining());
+		clock.instant = this.noonPacific.plus(Duration.ofHours(12));
+		Assertions.assertEquals(100, quota.remaining());
+	}
+
+	@Test
+	void spacesOutRequests() {
+		var quota = new YoutubeQuota(10_000, 20, false, Clock.systemUTC());
+		var start = System.nanoTime();
+		StepVerifier.create(Flux.range(0, 5).concatMap(i -> quota.acquire(YoutubeEndpoint.VIDEOS))).verifyComplete();
+		var elapsed = Duration.ofNanos(System.nanoTime() - start);
+		Assertions.assertTrue(elapsed.toMillis() >= 190, () -> "five requests at 20/s took only " + elapsed);
+	}
+
+	private static class MutableClock extends Clock {
+
+		private Instant instant;
+
+		MutableClock(Instant instant) {
+			this.instant = instant;
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return Clock.fixed(this.instant, zone);
+		}
+
+		@Override
+		public Instant instant() {
+			return this.instant;
+		}
+
+	}
+
+}
@@ -0,0 +1,94 @@
+package com.joshlong.youtube.client;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.unit.DataSize;
+import reactor.test.StepVerifier;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+class YoutubeResponseCacheTest {
+
+	private static final String URI = "https://www.googleapis.com/youtube/v3/videos?id=a&key=secret";
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void readsResponsesBackFromDisk() {
+		var body = fixture("videos.json");
+		new YoutubeResponseCache(DataSize.ofMegabytes(1), this.directory).put(URI, "an-etag", body);
+		var file = awaitFile();
+		Assertions.assertTrue(file.getFileName().toString().endsWith(".json"), "nothing's left mid-write");
+		StepVerifier
+				.create(new YoutubeResponseCache(DataSize.ofMegabytes(1), this.directory).get(URI,
+						YoutubeJsonDecoder::videos))//
+				.assertNext(entry -> {
+					Assertions.assertEquals("an-etag", entry.etag());
+					Assertions.assertEquals(50, ((YoutubeJsonDecoder.Page<?>) entry.value()).items().size());
+				})//
+				.verifyComplete();
+	}
+
+	@Test
+	@SneakyThrows
+	void treatsACorruptResponseAsAMiss() {
+		var body = fixture("videos.json");
+		new YoutubeResponseCache(DataSize.ofMegabytes(1), this.directory).put(URI, "an-etag", body);
+		var file = awaitFile();
+		Files.write(file, Arrays.copyOf(Files.readAllBytes(file), 4));
+		StepVerifier
+				.create(new YoutubeResponseCache(DataSize.ofMegabytes(1), this.directory).get(URI,
+						YoutubeJsonDecoder::videos))//
+				.verifyComplete();
+		Assertions.assertFalse(Files.exists(file), "the corrupt response was deleted");
+
+		new YoutubeResponseCache(DataSize.ofMegabytes(1), this.directory).put(URI, "an-etag", body);
+		Files.write(awaitFile(), "an-etag\n{ \"items\": [".getBytes());
+		StepVerifier
+				.create(new YoutubeResponseCache(DataSize.ofMegabytes(1), this.directory).get(URI,
+						YoutubeJsonDecoder::videos))//
+				.verifyComplete();
+	}
+
+	@Test
+	void holdsNoMoreResponsesThanFitInItsSize() {
+		var body = fixture("videos.json");
+		var cache = new YoutubeResponseCache(DataSize.ofBytes(3L * body.length), null);
+		for (var page = 0; page < 10; page++)
+			cache.put(URI + "&page=" + page, "an-etag", body);
+		Assertions.assertEquals(3L * body.length, cache.size());
+		var hits = IntStream.range(0, 10).filter(
+				page -> cache.get(URI + "&page=" + page, YoutubeJsonDecoder::videos).blockOptional().isPresent())
+				.count();
+		Assertions.assertEquals(3, hits);
+	}
+
+	@SneakyThrows
+	private Path awaitFile() {
+		for (var attempt = 0; attempt < 100; attempt++) {
+			try (var files = Files.list(this.directory)) {
+				List<Path> written = files.filter(file -> file.toString().endsWith(".json")).toList();
+				if (!written.isEmpty())
+					return written.get(0);
+			}
+			Thread.sleep(20);
+		}
+		throw new AssertionError("the response was never written to " + this.directory);
+	}
+
+	@SneakyThrows
+	private static byte[] fixture(String name) {
+		try (var in = new ClassPathResource("fixtures/" + name).getInputStream()) {
+			return in.readAllBytes();
+		}
+	}
+
+}
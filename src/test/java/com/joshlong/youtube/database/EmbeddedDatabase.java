@@ -0,0 +1,69 @@
+package com.joshlong.youtube.database;
+
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import lombok.SneakyThrows;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.util.StreamUtils;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A real, but embedded, PostgreSQL with {@code schema.sql} applied, for the tests of the
+ * SQL that the ingest writes and the GraphQL API reads.
+ *
+ * @author Josh Long
+ */
+public class EmbeddedDatabase implements AutoCloseable {
+
+	private final EmbeddedPostgres postgres;
+
+	private final ConnectionFactory connectionFactory;
+
+	private final DatabaseClient databaseClient;
+
+	@SneakyThrows
+	private EmbeddedDatabase() {
+		this.postgres = EmbeddedPostgres.start();
+		this.connectionFactory = ConnectionFactories
+				.get("r2dbc:postgresql://postgres@localhost:" + this.postgres.getPort() + "/postgres");
+		this.databaseClient = DatabaseClient.create(this.connectionFactory);
+		var schema = StreamUtils.copyToString(new ClassPathResource("schema.sql").getInputStream(),
+				StandardCharsets.UTF_8);
+		Flux.fromArray(schema.split(";"))//
+				.filter(sql -> !sql.isBlank())//
+				.concatMap(sql -> this.databaseClient.sql(sql).then())//
+				.blockLast();
+	}
+
+	public static EmbeddedDatabase start() {
+		return new EmbeddedDatabase();
+	}
+
+	public ConnectionFactory connectionFactory() {
+		return this.connectionFactory;
+	}
+
+	public DatabaseClient databaseClient() {
+		return this.databaseClient;
+	}
+
+	/**
+	 * runs each statement in turn, for setting up the rows that a test starts from.
+	 */
+	public void execute(String... statements) {
+		Flux.fromArray(statements)//
+				.concatMap(sql -> this.databaseClient.sql(sql).then())//
+				.blockLast();
+	}
+
+	@Override
+	@SneakyThrows
+	public void close() {
+		this.postgres.close();
+	}
+
+}
@@ -0,0 +1,49 @@
+package com.joshlong.youtube.graphql;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+class ConnectionTest {
+
+	@Test
+	void readsBackTheKeysetInACursor() {
+		var cursor = Connection.cursor("PUBLISHED_AT_DESC", "2022-07-01T10:15:30", "an\nid");
+		Assertions.assertEquals(new Connection.Keyset("2022-07-01T10:15:30", "an\nid"),
+				Connection.keyset(cursor, "PUBLISHED_AT_DESC"));
+		Assertions.assertFalse(cursor.contains("="), "cursors are URL safe, and unpadded");
+	}
+
+	@Test
+	void rejectsCursorsThatAreNotValid() {
+		var twoParts = Base64.getUrlEncoder().encodeToString("PUBLISHED_AT_DESC\nid".getBytes(StandardCharsets.UTF_8));
+		var anotherOrder = Connection.cursor("VIEW_COUNT_DESC", "1000", "id");
+		for (var cursor : List.of("not base64!", twoParts, anotherOrder))
+			Assertions.assertThrows(IllegalArgumentException.class,
+					() -> Connection.keyset(cursor, "PUBLISHED_AT_DESC"), cursor);
+	}
+
+	@Test
+	void hasANextPageOnlyWhenThereIsANodePastTheFirst() {
+		var page = Connection.of(List.of("a", "b", "c"), 2, Function.identity());
+		Assertions.assertEquals(List.of("a", "b"), page.edges().stream().map(Connection.Edge::node).toList());
+		Assertions.assertEquals(new Connection.PageInfo(true, "b"), page.pageInfo());
+		Assertions.assertEquals(new Connection.PageInfo(false, "b"),
+				Connection.of(List.of("a", "b"), 2, Function.identity()).pageInfo());
+		Assertions.assertEquals(new Connection.PageInfo(false, null),
+				Connection.of(List.<String>of(), 2, Function.identity()).pageInfo());
+	}
+
+	@Test
+	void capsFirst() {
+		Assertions.assertEquals(Connection.DEFAULT_FIRST, Connection.first(null));
+		Assertions.assertEquals(0, Connection.first(0));
+		Assertions.assertEquals(Connection.MAX_FIRST, Connection.first(1000));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> Connection.first(-1));
+	}
+
+}
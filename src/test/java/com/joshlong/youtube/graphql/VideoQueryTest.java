@@ -0,0 +1,79 @@
+package com.joshlong.youtube.graphql;
+
+import com.joshlong.youtube.client.Video;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.net.URL;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Pages through videos fetched from the API, where {@code b}, {@code c} and {@code d}
+ * were published at the same time, and {@code a}, {@code b} and {@code e} have the same
+ * number of views.
+ *
+ * @author Josh Long
+ */
+class VideoQueryTest {
+
+	private final List<Video> videos = List.of(video("c", "2022-07-01T10:00:00Z", 20),
+			video("a", "2022-07-01T09:00:00Z", 10), video("e", "2022-07-01T11:00:00Z", 10),
+			video("d", "2022-07-01T10:00:00Z", 30), video("b", "2022-07-01T10:00:00Z", 10));
+
+	@Test
+	void writesWhenAVideoWasPublishedInUtc() {
+		var video = video("a", "2022-07-01T23:15:30Z", 10);
+		Assertions.assertEquals("2022-07-01T23:15:30", VideoOrder.PUBLISHED_AT_DESC.sortKey(video));
+		var query = VideoQuery.of(1, null, null, VideoOrder.PUBLISHED_AT_DESC);
+		Assertions.assertEquals(new Connection.Keyset("2022-07-01T23:15:30", "a"),
+				Connection.keyset(query.cursor(video), VideoOrder.PUBLISHED_AT_DESC.name()));
+	}
+
+	@Test
+	void breaksTiesOnTheSortKeyByVideoId() {
+		Assertions.assertEquals(List.of("e", "d", "c", "b", "a"), pageThrough(VideoOrder.PUBLISHED_AT_DESC, 2));
+		Assertions.assertEquals(List.of("a", "b", "c", "d", "e"), pageThrough(VideoOrder.PUBLISHED_AT_ASC, 2));
+		Assertions.assertEquals(List.of("d", "c", "e", "b", "a"), pageThrough(VideoOrder.VIEW_COUNT_DESC, 2));
+		Assertions.assertEquals(List.of("d", "c", "e", "b", "a"), pageThrough(VideoOrder.VIEW_COUNT_DESC, 1));
+	}
+
+	@Test
+	void keepsOneVideoPastTheFirstToSayThatThereIsAnotherPage() {
+		var query = VideoQuery.of(2, null, null, null);
+		Assertions.assertEquals(VideoOrder.PUBLISHED_AT_DESC, query.order());
+		Assertions.assertEquals(List.of("e", "d", "c"), query.apply(this.videos).stream().map(Video::videoId).toList());
+		Assertions.assertEquals(Connection.DEFAULT_FIRST, VideoQuery.of(null, null, null, null).first());
+	}
+
+	/**
+	 * @return the IDs of the videos on every page, checking that both ways of applying a
+	 * query agree on each
+	 */
+	private List<String> pageThrough(VideoOrder order, int first) {
+		var videoIds = new ArrayList<String>();
+		String after = null;
+		while (true) {
+			var query = VideoQuery.of(first, after, null, order);
+			var nodes = query.apply(this.videos);
+			Assertions.assertEquals(nodes, query.apply(Flux.fromIterable(this.videos)).block());
+			var page = Connection.of(nodes, query.first(), query::cursor);
+			page.edges().forEach(edge -> videoIds.add(edge.node().videoId()));
+			if (!page.pageInfo().hasNextPage())
+				return videoIds;
+			after = page.pageInfo().endCursor();
+		}
+	}
+
+	@SneakyThrows
+	private static Video video(String id, String publishedAt, int views) {
+		return new Video(id, "title", "description", Date.from(Instant.parse(publishedAt)),
+				new URL("https://i.ytimg.com/vi/" + id + "/default.jpg"), List.of("spring"), 28, views, 0, 0, 0,
+				"channel");
+	}
+
+}
@@ -0,0 +1,132 @@
+package com.joshlong.youtube.graphql;
+
+import com.joshlong.youtube.client.YoutubeClient;
+import com.joshlong.youtube.database.EmbeddedDatabase;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.graphql.GraphQlTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.graphql.test.tester.GraphQlTester;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+/**
+ * Queries the videos of a channel's playlists, stored in a real, but embedded,
+ * PostgreSQL.
+ *
+ * @author Josh Long
+ */
+@GraphQlTest(YoutubeGraphqlController.class)
+class YoutubeGraphqlControllerTest {
+
+	@TestConfiguration
+	static class DatabaseConfiguration {
+
+		@Bean(destroyMethod = "close")
+		EmbeddedDatabase embeddedDatabase() {
+			return EmbeddedDatabase.start();
+		}
+
+		@Bean
+		DatabaseClient databaseClient(EmbeddedDatabase database) {
+			return database.databaseClient();
+		}
+
+		@Bean
+		MeterRegistry meterRegistry() {
+			return new SimpleMeterRegistry();
+		}
+
+	}
+
+	@MockBean
+	YoutubeClient youtubeClient;
+
+	@Autowired
+	GraphQlTester graphQlTester;
+
+	@Autowired
+	EmbeddedDatabase database;
+
+	@Autowired
+	MeterRegistry registry;
+
+	@BeforeEach
+	void reset() {
+		this.database.execute("delete from yt_playlist_videos", "delete from yt_playlists", "delete from yt_videos",
+				"delete from yt_channels", """
+						insert into yt_channels (channel_id, username, description, published_at, title)
+						values ('channel', 'user', 'description', '2020-01-01', 'title')
+						""", """
+						insert into yt_playlists (playlist_id, channel_id, published_at, title, description) values
+						    ('a', 'channel', '2022-01-03', 'title', 'description'),
+						    ('b', 'channel', '2022-01-02', 'title', 'description'),
+						    ('c', 'channel', '2022-01-01', 'title', 'description')
+						""", """
+						insert into yt_videos (video_id, title, description, published_at, standard_thumbnail,
+						    category_id, channel_id)
+						select 'video-' || i, 'title', 'description', timestamp '2022-01-01' + i * interval '1 hour',
+						    'https://i.ytimg.com/default.jpg', 28, 'channel'
+						from generate_series(1, 5) as i
+						""", """
+						insert into yt_playlist_videos (playlist_id, video_id) values
+						    ('a', 'video-1'), ('a', 'video-2'), ('a', 'video-3'),
+						    ('b', 'video-4'),
+						    ('c', 'video-5'), ('c', 'video-1')
+						""");
+	}
+
+	@Test
+	void loadsTheVideosOfEveryPlaylistInOneBatch() {
+		var response = this.graphQlTester.document("""
+				{
+				    channelByUsername(username: "user") {
+				        playlists {
+				            edges {
+				                node {
+				                    playlistId
+				                    videos(first: 2) {
+				                        edges { node { videoId } }
+				                        pageInfo { hasNextPage }
+				                    }
+				                }
+				            }
+				        }
+				    }
+				}
+				""").execute();
+		var playlists = "channelByUsername.playlists.edges";
+		response.path(playlists + "[*].node.playlistId").entityList(String.class).containsExactly("a", "b", "c");
+		response.path(playlists + "[0].node.videos.edges[*].node.videoId").entityList(String.class)
+				.containsExactly("video-3", "video-2");
+		response.path(playlists + "[0].node.videos.pageInfo.hasNextPage").entity(Boolean.class).isEqualTo(true);
+		response.path(playlists + "[1].node.videos.edges[*].node.videoId").entityList(String.class)
+				.containsExactly("video-4");
+		response.path(playlists + "[2].node.videos.edges[*].node.videoId").entityList(String.class)
+				.containsExactly("video-5", "video-1");
+		response.path(playlists + "[2].node.videos.pageInfo.hasNextPage").entity(Boolean.class).isEqualTo(false);
+		var keys = this.registry.get("youtube.graphql.loader.keys").tag("loader", "playlistVideos").summary();
+		Assertions.assertEquals(1, keys.count(), "one batch for all three playlists");
+		Assertions.assertEquals(3, keys.totalAmount());
+	}
+
+	@Test
+	void usesTheDefaultsWhenArgumentsAreExplicitlyNull() {
+		this.graphQlTester.document("""
+				{
+				    channelByUsername(username: "user") {
+				        videos(first: null, orderBy: null) { edges { node { videoId } } }
+				    }
+				}
+				""").execute()//
+				.path("channelByUsername.videos.edges[*].node.videoId")//
+				.entityList(String.class)//
+				.containsExactly("video-5", "video-4", "video-3", "video-2", "video-1");
+	}
+
+}
@@ -0,0 +1,199 @@
+package com.joshlong.youtube.graphql;
+
+import com.joshlong.youtube.client.Playlist;
+import com.joshlong.youtube.client.Video;
+import com.joshlong.youtube.database.EmbeddedDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Reads rows stamped by the runs of a channel: run {@code 1} crawled all the uploads, run
+ * {@code 2} crawled incrementally, and run {@code 3} hasn't completed.
+ *
+ * @author Josh Long
+ */
+class YoutubeRepositoryTest {
+
+	private static EmbeddedDatabase database;
+
+	private static YoutubeRepository repository;
+
+	@BeforeAll
+	static void start() {
+		database = EmbeddedDatabase.start();
+		repository = new YoutubeRepository(database.databaseClient());
+	}
+
+	@AfterAll
+	static void stop() {
+		database.close();
+	}
+
+	@BeforeEach
+	void reset() {
+		database.execute("delete from yt_playlist_videos", "delete from yt_playlists", "delete from yt_videos",
+				"delete from yt_channels", "delete from yt_ingest_runs", """
+						insert into yt_channels (channel_id, description, published_at, title) values
+						    ('channel', 'description', now(), 'title'),
+						    ('never-ingested', 'description', now(), 'title')
+						""", """
+						insert into yt_ingest_runs (run_id, channel_id, high_water_mark, completed_at) values
+						    (1, 'channel', null, now()),
+						    (2, 'channel', '2022-06-01', now()),
+						    (3, 'channel', null, null)
+						""");
+	}
+
+	@Test
+	void leavesOutTheVideosThatTheLatestFullCrawlDidNotSee() {
+		insertVideo("channel", "seen-by-the-full-crawl", 1, "2022-06-01T00:00:00");
+		insertVideo("channel", "seen-by-the-incremental-crawl", 2, "2022-06-02T00:00:00");
+		insertVideo("channel", "seen-by-the-unfinished-crawl", 3, "2022-06-03T00:00:00");
+		insertVideo("channel", "never-seen", null, "2022-06-04T00:00:00");
+		insertVideo("never-ingested", "unstamped", null, "2022-06-01T00:00:00");
+		Assertions.assertEquals(
+				List.of("seen-by-the-unfinished-crawl", "seen-by-the-incremental-crawl", "seen-by-the-full-crawl"),
+				videoIds(repository.findVideosByChannels(List.of("channel"), query(10, null))),
+				"an incremental crawl only sees the newest uploads, so it doesn't make the others stale");
+		Assertions.assertEquals(List.of("unstamped"),
+				videoIds(repository.findVideosByChannels(List.of("never-ingested"), query(10, null))));
+		database.execute("update yt_ingest_runs set high_water_mark = null where run_id = 2");
+		Assertions.assertEquals(List.of("seen-by-the-unfinished-crawl", "seen-by-the-incremental-crawl"),
+				videoIds(repository.findVideosByChannels(List.of("channel"), query(10, null))));
+	}
+
+	@Test
+	void leavesOutThePlaylistsThatTheLatestCompletedRunDidNotSee() {
+		database.execute("""
+				insert into yt_playlists (playlist_id, channel_id, published_at, title, description, last_seen_run)
+				values
+				    ('seen', 'channel', '2022-06-01', 'title', 'description', 2),
+				    ('seen-by-the-unfinished-run', 'channel', '2022-06-02', 'title', 'description', 3),
+				    ('removed', 'channel', '2022-06-03', 'title', 'description', 1)
+				""");
+		Assertions.assertEquals(List.of("seen-by-the-unfinished-run", "seen"),
+				repository.findPlaylistsByChannels(List.of("channel"), 10, null)//
+						.map(Playlist::playlistId)//
+						.collectList()//
+						.block());
+	}
+
+	@Test
+	void leavesOutTheMembershipsThatThePlaylistsLatestWalkDidNotSee() {
+		insertVideo("channel", "a", 1, "2022-06-01T00:00:00");
+		insertVideo("channel", "b", 1, "2022-06-02T00:00:00");
+		database.execute("""
+				insert into yt_playlists (playlist_id, channel_id, published_at, title, description, last_seen_run,
+				    walked_run)
+				values
+				    ('walked', 'channel', '2022-06-01', 'title', 'description', 2, 2),
+				    ('never-walked', 'channel', '2022-06-01', 'title', 'description', 2, null)
+				""", """
+				insert into yt_playlist_videos (playlist_id, video_id, last_seen_run) values
+				    ('walked', 'a', 2), ('walked', 'b', 1),
+				    ('never-walked', 'a', 1), ('never-walked', 'b', null)
+				""");
+		Assertions.assertEquals(List.of("a"),
+				videoIds(repository.findVideosByPlaylists(List.of("walked"), query(10, null))));
+		Assertions.assertEquals(List.of("b", "a"),
+				videoIds(repository.findVideosByPlaylists(List.of("never-walked"), query(10, null))));
+	}
+
+	@Test
+	void leavesOutTheVideosOfAPlaylistThatTheLatestCompletedRunDidNotSee() {
+		insertVideo("channel", "a", 1, "2022-06-01T00:00:00");
+		database.execute("""
+				insert into yt_playlists (playlist_id, channel_id, published_at, title, description, last_seen_run,
+				    walked_run)
+				values
+				    ('seen', 'channel', '2022-06-01', 'title', 'description', 2, 1),
+				    ('removed', 'channel', '2022-06-01', 'title', 'description', 1, 1)
+				""", """
+				insert into yt_playlist_videos (playlist_id, video_id, last_seen_run) values
+				    ('seen', 'a', 1), ('removed', 'a', 1)
+				""");
+		Assertions.assertEquals(List.of("a"),
+				videoIds(repository.findVideosByPlaylists(List.of("seen"), query(10, null))));
+		Assertions.assertEquals(List.of(),
+				videoIds(repository.findVideosByPlaylists(List.of("removed"), query(10, null))));
+	}
+
+	@Test
+	void pagesThroughAChannelWithoutGapsOrDuplicates() {
+		database.execute("""
+				insert into yt_videos (video_id, title, description, published_at, standard_thumbnail, category_id,
+				    view_count, channel_id, last_seen_run)
+				select 'video-' || i, 'title', 'description', timestamp '2022-06-01' + (i / 3) * interval '1 hour',
+				    'https://i.ytimg.com/default.jpg', 28, 1000 + i % 4, 'channel', 1
+				from generate_series(1, 20) as i
+				""");
+		var zone = TimeZone.getDefault();
+		TimeZone.setDefault(TimeZone.getTimeZone("America/Los_Angeles"));
+		try {
+			Assertions.assertEquals(strings("select video_id from yt_videos order by published_at desc, video_id desc"),
+					pageThrough(VideoOrder.PUBLISHED_AT_DESC));
+			Assertions.assertEquals(strings("select video_id from yt_videos order by published_at, video_id"),
+					pageThrough(VideoOrder.PUBLISHED_AT_ASC));
+			Assertions.assertEquals(strings("select video_id from yt_videos order by view_count desc, video_id desc"),
+					pageThrough(VideoOrder.VIEW_COUNT_DESC));
+		}
+		finally {
+			TimeZone.setDefault(zone);
+		}
+	}
+
+	/**
+	 * @return the IDs of the videos on every page of the channel, three at a time
+	 */
+	private static List<String> pageThrough(VideoOrder order) {
+		var videoIds = new ArrayList<String>();
+		String after = null;
+		while (true) {
+			var query = VideoQuery.of(3, after, null, order);
+			var nodes = repository.findVideosByChannels(List.of("channel"), query)//
+					.map(YoutubeRepository.ParentVideo::video)//
+					.collectList()//
+					.block();
+			var page = Connection.of(nodes, query.first(), query::cursor);
+			page.edges().forEach(edge -> videoIds.add(edge.node().videoId()));
+			if (!page.pageInfo().hasNextPage())
+				return videoIds;
+			after = page.pageInfo().endCursor();
+		}
+	}
+
+	private static List<String> strings(String sql) {
+		return database.databaseClient()//
+				.sql(sql)//
+				.map((row, metadata) -> row.get(0, String.class))//
+				.all()//
+				.collectList()//
+				.block();
+	}
+
+	private static VideoQuery query(int first, String after) {
+		return VideoQuery.of(first, after, null, VideoOrder.PUBLISHED_AT_DESC);
+	}
+
+	private static List<String> videoIds(Flux<YoutubeRepository.ParentVideo> videos) {
+		return videos.map(YoutubeRepository.ParentVideo::video).map(Video::videoId).collectList().block();
+	}
+
+	private static void insertVideo(String channelId, String videoId, Integer lastSeenRun, String publishedAt) {
+		database.execute("""
+				insert into yt_videos (video_id, title, description, published_at, standard_thumbnail, category_id,
+				    view_count, channel_id, tags, last_seen_run)
+				values ('%s', 'title', 'description', '%s', 'https://i.ytimg.com/default.jpg', 28, 1000, '%s',
+				    '{spring}', %s)
+				""".formatted(videoId, publishedAt, channelId, lastSeenRun));
+	}
+
+}
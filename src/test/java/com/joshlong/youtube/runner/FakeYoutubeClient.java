@@ -0,0 +1,246 @@
+package com.joshlong.youtube.runner;
+
+import com.joshlong.youtube.client.Channel;
+import com.joshlong.youtube.client.ChannelPlaylists;
+import com.joshlong.youtube.client.ChannelVideos;
+import com.joshlong.youtube.client.Playlist;
+import com.joshlong.youtube.client.PlaylistVideoIds;
+import com.joshlong.youtube.client.PlaylistVideos;
+import com.joshlong.youtube.client.Video;
+import com.joshlong.youtube.client.VideoStatistics;
+import com.joshlong.youtube.client.YoutubeClient;
+import lombok.SneakyThrows;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URL;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ * A channel held in memory, whose uploads and playlists the tests can change between
+ * ingests, serving only what {@link YoutubeIngestJobRunner} asks for. Page tokens are the
+ * offset of the page's first item, so that the tests can tell where a resumed crawl
+ * started, and the crawl can be made to fail partway through.
+ *
+ * @author Josh Long
+ */
+class FakeYoutubeClient implements YoutubeClient {
+
+	static final String USERNAME = "fake-user";
+
+	static final String CHANNEL_ID = "UCfake";
+
+	private static final Instant NEWEST_VIDEO = Instant.parse("2022-07-01T00:00:00Z");
+
+	private final int pageSize;
+
+	/**
+	 * the channel's uploads, newest first
+	 */
+	private final List<Video> uploads = new CopyOnWriteArrayList<>();
+
+	private final Map<String, List<String>> playlists = new LinkedHashMap<>();
+
+	/**
+	 * every page fetched, as the playlist ID, or {@code uploads}, and the page token
+	 */
+	private final List<String> fetched = new CopyOnWriteArrayList<>();
+
+	/**
+	 * the IDs of every video whose statistics were asked for
+	 */
+	private final List<String> statisticsFetched = new CopyOnWriteArrayList<>();
+
+	private final AtomicInteger pagesUntilFailure = new AtomicInteger(Integer.MAX_VALUE);
+
+	FakeYoutubeClient(int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * sets the channel's uploads to videos {@code 0} to {@code count - 1}, newest first.
+	 */
+	void uploads(int count) {
+		this.uploads.clear();
+		for (var i = 0; i < count; i++)
+			this.uploads.add(video(i));
+	}
+
+	/**
+	 * replaces the uploads with the given videos, newest first.
+	 */
+	void uploads(List<Video> videos) {
+		this.uploads.clear();
+		this.uploads.addAll(videos);
+	}
+
+	synchronized void playlist(String playlistId, List<String> videoIds) {
+		this.playlists.put(playlistId, List.copyOf(videoIds));
+	}
+
+	synchronized void removePlaylist(String playlistId) {
+		this.playlists.remove(playlistId);
+	}
+
+	/**
+	 * fails the page after the next {@code pages} pages, once, as a crash would. It fails
+	 * a moment later than it would otherwise have been fetched, so that the pages before
+	 * it have been written and checkpointed by then.
+	 */
+	void failAfter(int pages) {
+		this.pagesUntilFailure.set(pages);
+	}
+
+	List<String> fetched() {
+		return List.copyOf(this.fetched);
+	}
+
+	List<String> statisticsFetched() {
+		return List.copyOf(this.statisticsFetched);
+	}
+
+	void forget() {
+		this.fetched.clear();
+	}
+
+	static String videoId(int video) {
+		return "video-" + video;
+	}
+
+	@SneakyThrows
+	static Video video(int video) {
+		var id = videoId(video);
+		return new Video(id, "video " + video, "a description of video " + video,
+				Date.from(NEWEST_VIDEO.minus(Duration.ofHours(video))),
+				new URL("https://i.ytimg.com/vi/" + id + "/default.jpg"), List.of("spring"), 28, 1000 + video, 0, 0, 0,
+				CHANNEL_ID);
+	}
+
+	@Override
+	public Mono<Channel> getChannelByUsername(String username) {
+		return Mono.just(new Channel(CHANNEL_ID, "a channel", "a description", Date.from(NEWEST_VIDEO)));
+	}
+
+	@Override
+	public synchronized Flux<Playlist> getAllPlaylistsByChannel(String channelId) {
+		var playlists = new ArrayList<Playlist>();
+		this.playlists.forEach((playlistId, videoIds) -> playlists.add(new Playlist(playlistId, channelId,
+				Date.from(NEWEST_VIDEO), "playlist " + playlistId, "a description", videoIds.size())));
+		return Flux.fromIterable(playlists);
+	}
+
+	@Override
+	public synchronized Flux<PlaylistVideoIds> getVideoIdPagesByPlaylist(String playlistId,
+			@Nullable String pageToken) {
+		return pages(playlistId, this.playlists.getOrDefault(playlistId, List.of()), pageToken,
+				(videoIds, next) -> new PlaylistVideoIds(playlistId, videoIds, next));
+	}
+
+	@Override
+	public Flux<PlaylistVideos> getVideoPagesByUsernameUploads(String username, @Nullable String pageToken,
+			@Nullable Date publishedAfter) {
+		var videos = this.uploads.stream()
+				.filter(video -> publishedAfter == null || video.publishedAt().after(publishedAfter))//
+				.toList();
+		return pages("uploads", videos, pageToken,
+				(page, next) -> new PlaylistVideos("uploads", page, next, null, this.pageSize, videos.size()));
+	}
+
+	private <I, P> Flux<P> pages(String source, List<I> items, @Nullable String pageToken,
+			BiFunction<List<I>, String, P> page) {
+		var start = pageToken == null ? 0 : Integer.parseInt(pageToken);
+		var count = Math.max(1, (items.size() - start + this.pageSize - 1) / this.pageSize);
+		return Flux.range(0, count).concatMap(i -> {
+			var from = start + i * this.pageSize;
+			var to = Math.min(items.size(), from + this.pageSize);
+			this.fetched.add(source + "@" + (from == 0 ? null : String.valueOf(from)));
+			if (this.pagesUntilFailure.getAndDecrement() == 0)
+				return Mono.delay(Duration.ofMillis(200))
+						.then(Mono.error(new IllegalStateException("the ingest was interrupted")));
+			return Mono.just(page.apply(items.subList(from, to), to < items.size() ? String.valueOf(to) : null));
+		});
+	}
+
+	@Override
+	public Flux<Video> getAllVideosByUsernameUploads(String username) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Flux<Video> getAllVideosByUsernameUploads(String username, @Nullable Date publishedAfter) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Mono<PlaylistVideos> getVideosByPlaylist(String playlistId, @Nullable String pageToken) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Flux<Video> getAllVideosByPlaylist(String playlistId) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Flux<Video> getAllVideosByPlaylist(String playlistId, boolean ordered) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Flux<String> getAllVideoIdsByPlaylist(String playlistId) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Mono<ChannelPlaylists> getPlaylistsByChannel(String channelId, String nextPageToken) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Mono<Map<String, Video>> getVideosByIds(List<String> videoIds) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Mono<Video> getVideoById(String videoId) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Mono<Map<String, VideoStatistics>> getVideoStatisticsByIds(List<String> videoIds) {
+		this.statisticsFetched.addAll(videoIds);
+		var statistics = new LinkedHashMap<String, VideoStatistics>();
+		for (var video : this.uploads)
+			if (videoIds.contains(video.videoId()))
+				statistics.put(video.videoId(), new VideoStatistics(video.videoId(), video.viewCount(),
+						video.likeCount(), video.favoriteCount(), video.commentCount()));
+		return Mono.just(statistics);
+	}
+
+	@Override
+	public Mono<ChannelVideos> getVideosByChannel(String channelId, String pageToken) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Flux<Video> getAllVideosByChannel(String channelId) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Flux<Video> searchVideosByChannel(String channelId, @Nullable String query, @Nullable Date publishedAfter,
+			@Nullable Date publishedBefore) {
+		throw new UnsupportedOperationException();
+	}
+
+}
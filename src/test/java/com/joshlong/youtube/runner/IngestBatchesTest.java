@@ -0,0 +1,52 @@
+package com.joshlong.youtube.runner;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+class IngestBatchesTest {
+
+	@Test
+	void slowsTheUpstreamDownToTheWriter() {
+		var requested = new AtomicLong();
+		var written = new AtomicLong();
+		var mostWaiting = new AtomicLong();
+		var pages = Flux//
+				.range(0, 200)//
+				.concatMap(page -> page % 7 == 0 ? Mono.delay(Duration.ofMillis(3)).thenReturn(page) : Mono.just(page))//
+				.doOnRequest(requested::addAndGet)//
+				.doOnNext(page -> mostWaiting.accumulateAndGet(requested.get() - written.get(), Math::max));
+		var writes = IngestBatches//
+				.of(pages, 10, Duration.ofMillis(2))//
+				.concatMap(batch -> Mono.delay(Duration.ofMillis(5)).doOnNext(tick -> written.addAndGet(batch.size()))
+						.thenReturn(batch.size()), 1);
+		StepVerifier.create(writes.reduce(0, Integer::sum)).expectNext(200).verifyComplete();
+		Assertions.assertTrue(mostWaiting.get() <= 30, () -> mostWaiting.get() + " pages waited for the writer");
+	}
+
+	@Test
+	void emitsTheBatchOnceItsWindowHasPassed() {
+		var pages = Flux.just(1, 2, 3).concatWith(Flux.never());
+		StepVerifier.create(IngestBatches.of(pages, 10, Duration.ofMillis(50)))//
+				.expectNext(List.of(1, 2, 3))//
+				.expectNoEvent(Duration.ofMillis(100))//
+				.thenCancel()//
+				.verify();
+	}
+
+	@Test
+	void emitsWhatsLeftWhenTheUpstreamCompletes() {
+		StepVerifier.create(IngestBatches.of(Flux.range(0, 25), 10, Duration.ofMinutes(1)))//
+				.expectNext(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9))//
+				.expectNext(List.of(10, 11, 12, 13, 14, 15, 16, 17, 18, 19))//
+				.expectNext(List.of(20, 21, 22, 23, 24))//
+				.verifyComplete();
+	}
+
+}
@@ -0,0 +1,71 @@
+package com.joshlong.youtube.runner;
+
+import com.joshlong.youtube.database.EmbeddedDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+
+class IngestRunRepositoryTest {
+
+	private static EmbeddedDatabase database;
+
+	private static IngestRunRepository runs;
+
+	@BeforeAll
+	static void start() {
+		database = EmbeddedDatabase.start();
+		runs = new IngestRunRepository(database.databaseClient());
+	}
+
+	@AfterAll
+	static void stop() {
+		database.close();
+	}
+
+	@BeforeEach
+	void reset() {
+		database.execute("delete from yt_ingest_runs");
+	}
+
+	@Test
+	void findsTheRunThatNeverCompleted() {
+		var highWaterMark = Date.from(Instant.parse("2022-07-01T00:00:00Z"));
+		Assertions.assertEquals(Optional.empty(), runs.findUnfinished("channel").block());
+		var run = runs.start("channel", highWaterMark).block();
+		runs.start("another-channel", null).block();
+		var unfinished = runs.findUnfinished("channel").block();
+		Assertions.assertEquals(Optional.of(run), unfinished);
+		Assertions.assertEquals(highWaterMark, unfinished.get().highWaterMark(),
+				"a resumed run keeps the high water mark it started with");
+		runs.complete(run.runId()).block();
+		Assertions.assertEquals(Optional.empty(), runs.findUnfinished("channel").block());
+	}
+
+	@Test
+	void remembersHowFarEachSourceGot() {
+		var run = runs.start("channel", null).block().runId();
+		runs.checkpoint(run, IngestRunRepository.UPLOADS, "page-2", 100).block();
+		runs.checkpoint(run, "playlist", "page-1", 50).block();
+		runs.checkpoint(run, "playlist", null, 75).block();
+		Assertions.assertEquals(
+				Map.of(IngestRunRepository.UPLOADS, new IngestRunRepository.Checkpoint("page-2", 100, false),
+						"playlist", new IngestRunRepository.Checkpoint(null, 75, true)),
+				runs.findCheckpoints(run).block());
+	}
+
+	@Test
+	void forgetsTheCheckpointsOfACompletedRun() {
+		var run = runs.start("channel", null).block().runId();
+		runs.checkpoint(run, IngestRunRepository.UPLOADS, "page-2", 100).block();
+		runs.complete(run).block();
+		Assertions.assertEquals(Map.of(), runs.findCheckpoints(run).block());
+	}
+
+}
@@ -0,0 +1,148 @@
+package com.joshlong.youtube.runner;
+
+import com.joshlong.youtube.client.YoutubeQuota;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class IngestSchedulerTest {
+
+	private final YoutubeQuota quota = new YoutubeQuota(10_000, 1_000, false, Clock.systemUTC());
+
+	private final InMemoryIngestScheduleRepository repository = new InMemoryIngestScheduleRepository();
+
+	private final List<String> ingested = new CopyOnWriteArrayList<>();
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private final AtomicInteger mostInFlight = new AtomicInteger();
+
+	@Test
+	void ingestsDueChannelsWithinTheConcurrencyCap() throws Exception {
+		var channels = new LinkedHashMap<String, Duration>();
+		for (var i = 0; i < 6; i++)
+			channels.put("channel-" + i, Duration.ofHours(1));
+		var scheduler = new IngestScheduler(channels, this::ingest, this.repository, this.quota, 2,
+				Duration.ofMillis(10), Clock.systemUTC());
+		scheduler.run(null);
+		awaitIngested(6);
+		scheduler.destroy();
+		Assertions.assertEquals(channels.keySet(), Map.copyOf(this.repository.completed).keySet());
+		Assertions.assertEquals(2, this.mostInFlight.get());
+		Assertions.assertEquals(6, this.ingested.size(), "nothing is due again for an hour");
+	}
+
+	@Test
+	void remembersWhenChannelsWereLastIngested() throws Exception {
+		var channels = new LinkedHashMap<String, Duration>();
+		channels.put("fresh", Duration.ofHours(1));
+		channels.put("stale", Duration.ofHours(1));
+		this.repository.completed.put("fresh", Instant.now().minus(Duration.ofMinutes(10)));
+		this.repository.completed.put("stale", Instant.now().minus(Duration.ofMinutes(90)));
+		var scheduler = new IngestScheduler(channels, this::ingest, this.repository, this.quota, 2,
+				Duration.ofMillis(10), Clock.systemUTC());
+		scheduler.run(null);
+		awaitIngested(1);
+		Thread.sleep(200);
+		scheduler.destroy();
+		Assertions.assertEquals(List.of("stale"), this.ingested);
+	}
+
+	@Test
+	void keepsTryingToFindWhenChannelsWereLastIngested() throws Exception {
+		this.repository.lookupFailures.set(3);
+		var scheduler = new IngestScheduler(Map.of("channel", Duration.ofHours(1)), this::ingest, this.repository,
+				this.quota, 2, Duration.ofMillis(10), Clock.systemUTC());
+		scheduler.run(null);
+		awaitIngested(1);
+		scheduler.destroy();
+		Assertions.assertEquals(List.of("channel"), this.ingested);
+		Assertions.assertEquals(0, this.repository.lookupFailures.get());
+	}
+
+	@Test
+	void keepsSchedulingWhenAnIngestCannotStart() throws Exception {
+		var channels = new LinkedHashMap<String, Duration>();
+		channels.put("broken", Duration.ofHours(1));
+		channels.put("working", Duration.ofHours(1));
+		this.repository.broken.add("broken");
+		var scheduler = new IngestScheduler(channels, this::ingest, this.repository, this.quota, 1,
+				Duration.ofMillis(10), Clock.systemUTC());
+		scheduler.run(null);
+		awaitIngested(1);
+		scheduler.destroy();
+		Assertions.assertEquals(List.of("working"), this.ingested);
+	}
+
+	private Mono<IngestSummary> ingest(String username) {
+		return Mono.fromRunnable(() -> this.mostInFlight.accumulateAndGet(this.inFlight.incrementAndGet(), Math::max))//
+				.then(Mono.delay(Duration.ofMillis(50)))//
+				.doOnNext(tick -> {
+					this.inFlight.decrementAndGet();
+					this.ingested.add(username);
+				})//
+				.thenReturn(new IngestSummary());
+	}
+
+	private void awaitIngested(int count) throws InterruptedException {
+		var deadline = System.currentTimeMillis() + 5_000;
+		while (this.ingested.size() < count && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		Thread.sleep(50);
+	}
+
+	private static class InMemoryIngestScheduleRepository extends IngestScheduleRepository {
+
+		private final Map<String, Instant> completed = new ConcurrentHashMap<>();
+
+		private final AtomicInteger lookupFailures = new AtomicInteger();
+
+		/**
+		 * the channels whose ingests throw before they even start
+		 */
+		private final Set<String> broken = ConcurrentHashMap.newKeySet();
+
+		InMemoryIngestScheduleRepository() {
+			super(null);
+		}
+
+		@Override
+		Mono<Map<String, Instant>> findLastCompleted() {
+			return Mono.fromSupplier(() -> {
+				if (this.lookupFailures.getAndUpdate(failures -> Math.max(0, failures - 1)) > 0)
+					throw new IllegalStateException("the database isn't up yet");
+				return Map.copyOf(this.completed);
+			});
+		}
+
+		@Override
+		Mono<Void> started(String username, Instant startedAt) {
+			if (this.broken.contains(username))
+				throw new IllegalStateException("couldn't record that " + username + " started");
+			return Mono.empty();
+		}
+
+		@Override
+		Mono<Void> completed(String username, Instant completedAt) {
+			return Mono.fromRunnable(() -> this.completed.put(username, completedAt));
+		}
+
+		@Override
+		Mono<Void> failed(String username, String error) {
+			return Mono.empty();
+		}
+
+	}
+
+}
@@ -0,0 +1,52 @@
+package com.joshlong.youtube.runner;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class IngestStageTest {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private final IngestStage stage = new IngestStage("test", 3, 8, this.registry);
+
+	@Test
+	void boundsTheWorkInFlight() {
+		var mostActive = new AtomicInteger();
+		var work = this.stage.flatMap(Flux.range(0, 20), i -> {
+			mostActive.accumulateAndGet((int) gauge("youtube.ingest.stage.active"), Math::max);
+			return Mono.delay(Duration.ofMillis(10)).thenReturn(i);
+		});
+		StepVerifier.create(work).expectNextCount(20).verifyComplete();
+		Assertions.assertEquals(3, mostActive.get());
+		Assertions.assertEquals(20, this.registry.get("youtube.ingest.stage.duration").timer().count());
+		Assertions.assertEquals(0, gauge("youtube.ingest.stage.active"));
+		Assertions.assertEquals(0, gauge("youtube.ingest.stage.queued"));
+	}
+
+	@Test
+	void forgetsWhatWasQueuedWhenCancelled() {
+		var work = this.stage.flatMap(Flux.range(0, 5), i -> Flux.range(0, 8));
+		StepVerifier.create(work, 1).expectNextCount(1).thenCancel().verify();
+		Assertions.assertEquals(0, gauge("youtube.ingest.stage.queued"));
+	}
+
+	@Test
+	void keepsTheOrderWhenSequential() {
+		var work = this.stage.flatMapSequential(Flux.range(0, 6),
+				i -> Mono.delay(Duration.ofMillis(60 - i * 10)).thenReturn(i));
+		StepVerifier.create(work).expectNext(0, 1, 2, 3, 4, 5).verifyComplete();
+		Assertions.assertEquals(0, gauge("youtube.ingest.stage.queued"));
+	}
+
+	private double gauge(String name) {
+		return this.registry.get(name).tag("stage", "test").gauge().value();
+	}
+
+}
@@ -0,0 +1,107 @@
+package com.joshlong.youtube.runner;
+
+import com.joshlong.youtube.database.EmbeddedDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+/**
+ * Sweeps rows stamped by two runs of a channel, where run {@code 2} is the one that just
+ * completed, and the sweeper deletes two rows at a time.
+ *
+ * @author Josh Long
+ */
+class StaleRowSweeperTest {
+
+	private static EmbeddedDatabase database;
+
+	private static StaleRowSweeper sweeper;
+
+	@BeforeAll
+	static void start() {
+		database = EmbeddedDatabase.start();
+		sweeper = new StaleRowSweeper(database.databaseClient(), true, 2);
+	}
+
+	@AfterAll
+	static void stop() {
+		database.close();
+	}
+
+	@BeforeEach
+	void reset() {
+		database.execute("delete from yt_playlist_videos", "delete from yt_playlists", "delete from yt_videos",
+				"delete from yt_channels", """
+						insert into yt_channels (channel_id, description, published_at, title, last_seen_run) values
+						    ('channel', 'description', now(), 'title', 2),
+						    ('another-channel', 'description', now(), 'title', 1)
+						""", """
+						insert into yt_playlists (playlist_id, channel_id, published_at, title, description,
+						    last_seen_run, walked_run) values
+						    ('walked', 'channel', now(), 'title', 'description', 2, 2),
+						    ('skipped', 'channel', now(), 'title', 'description', 2, 1),
+						    ('half-walked', 'channel', now(), 'title', 'description', 2, null),
+						    ('gone', 'channel', now(), 'title', 'description', 1, 1),
+						    ('elsewhere', 'another-channel', now(), 'title', 'description', 1, 1)
+						""", """
+						insert into yt_playlist_videos (playlist_id, video_id, last_seen_run) values
+						    ('walked', 'seen', 2), ('walked', 'removed-1', 1), ('walked', 'removed-2', 1),
+						    ('walked', 'removed-3', null),
+						    ('skipped', 'unchanged', 1),
+						    ('half-walked', 'seen', 2), ('half-walked', 'not-reached', 1),
+						    ('gone', 'a', 1), ('gone', 'b', 1), ('gone', 'c', 1),
+						    ('elsewhere', 'a', 1)
+						""");
+		for (var video = 0; video < 7; video++)
+			insertVideo("channel", "video-" + video, video < 2 ? 2 : 1);
+		insertVideo("another-channel", "elsewhere", 1);
+	}
+
+	@Test
+	void deletesWhatTheCompletedRunDidNotSee() {
+		Assertions.assertEquals(1 + 3 + 3 + 5, sweeper.sweep("channel", 2, true).block());
+		Assertions.assertEquals(List.of("elsewhere", "half-walked", "skipped", "walked"),
+				strings("select playlist_id from yt_playlists order by playlist_id"));
+		Assertions.assertEquals(
+				List.of("elsewhere:a", "half-walked:not-reached", "half-walked:seen", "skipped:unchanged",
+						"walked:seen"),
+				strings("select playlist_id || ':' || video_id from yt_playlist_videos order by 1"));
+		Assertions.assertEquals(List.of("elsewhere", "video-0", "video-1"),
+				strings("select video_id from yt_videos order by video_id"));
+	}
+
+	@Test
+	void keepsTheVideosThatAnIncrementalRunDidNotReach() {
+		Assertions.assertEquals(1 + 3 + 3, sweeper.sweep("channel", 2, false).block());
+		Assertions.assertEquals(8, strings("select video_id from yt_videos").size());
+	}
+
+	@Test
+	void deletesNothingWhenDisabled() {
+		Assertions.assertEquals(0,
+				new StaleRowSweeper(database.databaseClient(), false, 2).sweep("channel", 2, true).block());
+		Assertions.assertEquals(11, strings("select video_id from yt_playlist_videos").size());
+	}
+
+	private static void insertVideo(String channelId, String videoId, long lastSeenRun) {
+		database.execute("""
+				insert into yt_videos (video_id, title, description, published_at, standard_thumbnail, category_id,
+				    channel_id, last_seen_run)
+				values ('%s', 'title', 'description', now(), 'https://i.ytimg.com/default.jpg', 28, '%s', %d)
+				""".formatted(videoId, channelId, lastSeenRun));
+	}
+
+	private static List<String> strings(String sql) {
+		return database.databaseClient()//
+				.sql(sql)//
+				.map((row, metadata) -> row.get(0, String.class))//
+				.all()//
+				.collectList()//
+				.block();
+	}
+
+}
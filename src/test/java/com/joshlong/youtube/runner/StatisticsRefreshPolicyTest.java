@@ -0,0 +1,45 @@
+package com.joshlong.youtube.runner;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+class StatisticsRefreshPolicyTest {
+
+	private final Instant now = Instant.parse("2022-07-01T00:00:00Z");
+
+	@Test
+	void refreshesNewVideosMoreOftenThanOldOnes() {
+		Assertions.assertEquals(Duration.ofHours(1),
+				StatisticsRefreshPolicy.nextRefreshIn(this.now.minus(Duration.ofHours(3)), this.now));
+		Assertions.assertEquals(Duration.ofHours(12),
+				StatisticsRefreshPolicy.nextRefreshIn(this.now.minus(Duration.ofDays(10)), this.now));
+		Assertions.assertEquals(Duration.ofDays(14),
+				StatisticsRefreshPolicy.nextRefreshIn(this.now.minus(Duration.ofDays(1000)), this.now));
+	}
+
+	@Test
+	void refreshesFastGrowingVideosSooner() {
+		var publishedAt = this.now.minus(Duration.ofDays(100));
+		var day = Duration.ofDays(1);
+		Assertions.assertEquals(Duration.ofHours(18),
+				StatisticsRefreshPolicy.nextRefreshIn(publishedAt, 1_000, 1_200, day, this.now));
+		Assertions.assertEquals(Duration.ofHours(36),
+				StatisticsRefreshPolicy.nextRefreshIn(publishedAt, 1_000, 1_020, day, this.now));
+		Assertions.assertEquals(Duration.ofDays(3),
+				StatisticsRefreshPolicy.nextRefreshIn(publishedAt, 1_000, 1_001, day, this.now));
+		Assertions.assertEquals(Duration.ofDays(6),
+				StatisticsRefreshPolicy.nextRefreshIn(publishedAt, 1_000, 1_000, day, this.now));
+	}
+
+	@Test
+	void staysWithinBounds() {
+		Assertions.assertEquals(StatisticsRefreshPolicy.MINIMUM, StatisticsRefreshPolicy
+				.nextRefreshIn(this.now.minus(Duration.ofHours(2)), 10, 1_000, Duration.ofHours(1), this.now));
+		Assertions.assertEquals(Duration.ofDays(28), StatisticsRefreshPolicy
+				.nextRefreshIn(this.now.minus(Duration.ofDays(2000)), 10, 10, Duration.ofDays(14), this.now));
+	}
+
+}
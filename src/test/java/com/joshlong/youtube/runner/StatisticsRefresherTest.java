@@ -0,0 +1,132 @@
+package com.joshlong.youtube.runner;
+
+import com.joshlong.youtube.client.YoutubeQuota;
+import com.joshlong.youtube.database.EmbeddedDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Refreshes a channel whose {@link FakeYoutubeClient#uploads(int) 120 uploads} are all
+ * due, along with two videos that YouTube no longer returns, and one that isn't due yet.
+ *
+ * @author Josh Long
+ */
+class StatisticsRefresherTest {
+
+	private static EmbeddedDatabase database;
+
+	private final FakeYoutubeClient youtube = new FakeYoutubeClient(50);
+
+	@BeforeAll
+	static void start() {
+		database = EmbeddedDatabase.start();
+	}
+
+	@AfterAll
+	static void stop() {
+		database.close();
+	}
+
+	@BeforeEach
+	void reset() {
+		this.youtube.uploads(120);
+		database.execute("delete from yt_video_statistics_snapshots", "delete from yt_playlist_videos",
+				"delete from yt_videos", "delete from yt_channels", """
+						insert into yt_channels (channel_id, description, published_at, title)
+						values ('%s', 'description', now(), 'title')
+						""".formatted(FakeYoutubeClient.CHANNEL_ID), """
+						insert into yt_videos (video_id, title, description, published_at, standard_thumbnail,
+						    category_id, channel_id, next_statistics_refresh_at)
+						select 'video-' || i, 'title', 'description', now() - i * interval '1 hour',
+						    'https://i.ytimg.com/default.jpg', 28, '%s',
+						    case when i < 20 then null else now() - i * interval '1 minute' end
+						from generate_series(0, 119) as i
+						""".formatted(FakeYoutubeClient.CHANNEL_ID), """
+						insert into yt_videos (video_id, title, description, published_at, standard_thumbnail,
+						    category_id, channel_id, next_statistics_refresh_at) values
+						    ('gone-1', 'title', 'description', now(), 'https://i.ytimg.com/default.jpg', 28, '%1$s',
+						        now() - interval '1 day'),
+						    ('gone-2', 'title', 'description', now(), 'https://i.ytimg.com/default.jpg', 28, '%1$s',
+						        now() - interval '1 day'),
+						    ('not-due', 'title', 'description', now(), 'https://i.ytimg.com/default.jpg', 28, '%1$s',
+						        now() + interval '1 day')
+						""".formatted(FakeYoutubeClient.CHANNEL_ID));
+	}
+
+	@Test
+	void refreshesTheVideosThatAreDue() {
+		var before = Instant.now();
+		Assertions.assertEquals(120, refresher(3, 150).refresh().block());
+		Assertions.assertFalse(this.youtube.statisticsFetched().contains("not-due"));
+		Assertions.assertEquals(122, this.youtube.statisticsFetched().size());
+		Assertions.assertEquals(List.of("1000", "1007", "1119", "0"), strings("""
+				select view_count::text from yt_videos where video_id in ('video-0', 'video-7', 'video-119', 'not-due')
+				order by video_id = 'not-due', view_count
+				"""));
+		Assertions.assertEquals(List.of("120"), strings("""
+				select count(*)::text from yt_videos
+				where statistics_refreshed_at is not null and next_statistics_refresh_at > now()
+				"""));
+		Assertions.assertEquals(List.of("120"), strings("select count(*)::text from yt_video_statistics_snapshots"));
+		for (var gone : List.of("gone-1", "gone-2"))
+			Assertions.assertFalse(nextRefreshAt(gone).isBefore(before.plus(StatisticsRefreshPolicy.MAXIMUM)),
+					"a video YouTube no longer returns goes to the back of the line");
+	}
+
+	@Test
+	void refreshesTheMostOverdueVideosFirst() {
+		Assertions.assertEquals(48, refresher(1, 50).refresh().block());
+		var mostOverdue = new ArrayList<>(List.of("gone-1", "gone-2"));
+		IntStream.concat(IntStream.range(0, 20), IntStream.rangeClosed(92, 119))
+				.forEach(video -> mostOverdue.add(FakeYoutubeClient.videoId(video)));
+		Assertions.assertEquals(mostOverdue.stream().sorted().toList(),
+				this.youtube.statisticsFetched().stream().sorted().toList(),
+				"the videos never refreshed, then those that have waited the longest");
+	}
+
+	@Test
+	void skipsARefreshThatTheQuotaCannotCover() {
+		Assertions.assertNull(refresher(2, 150).refresh().block());
+		Assertions.assertEquals(List.of(), this.youtube.statisticsFetched());
+		Assertions.assertEquals(List.of("0"),
+				strings("select count(*)::text from yt_videos where statistics_refreshed_at is not null"));
+	}
+
+	/**
+	 * @param budget the quota units left for the day
+	 */
+	private StatisticsRefresher refresher(long budget, int videosPerRefresh) {
+		var quota = new YoutubeQuota(budget, 1_000, false, Clock.systemUTC());
+		return new StatisticsRefresher(this.youtube, database.databaseClient(), quota, Duration.ofMinutes(1),
+				videosPerRefresh, true, Clock.systemUTC());
+	}
+
+	private static Instant nextRefreshAt(String videoId) {
+		return database.databaseClient()//
+				.sql("select next_statistics_refresh_at from yt_videos where video_id = :videoId")//
+				.bind("videoId", videoId)//
+				.map((row, metadata) -> row.get(0, Instant.class))//
+				.one()//
+				.block();
+	}
+
+	private static List<String> strings(String sql) {
+		return database.databaseClient()//
+				.sql(sql)//
+				.map((row, metadata) -> row.get(0, String.class))//
+				.all()//
+				.collectList()//
+				.block();
+	}
+
+}
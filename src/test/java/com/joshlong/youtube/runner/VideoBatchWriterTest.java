@@ -0,0 +1,136 @@
+package com.joshlong.youtube.runner;
+
+import com.joshlong.youtube.client.Video;
+import com.joshlong.youtube.database.EmbeddedDatabase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URL;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+class VideoBatchWriterTest {
+
+	private static final String CHANNEL_ID = "UC7yfnfvEUlXUIfm8rGLwZdA";
+
+	private static EmbeddedDatabase database;
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private VideoBatchWriter writer;
+
+	@BeforeAll
+	static void start() {
+		database = EmbeddedDatabase.start();
+	}
+
+	@AfterAll
+	static void stop() {
+		database.close();
+	}
+
+	@BeforeEach
+	void reset() {
+		database.execute("delete from yt_videos", "delete from yt_channels", """
+				insert into yt_channels(channel_id, description, published_at, title, last_seen_run)
+				values ('UC7yfnfvEUlXUIfm8rGLwZdA', 'description', now(), 'title', 1)
+				""");
+		this.writer = new VideoBatchWriter(database.databaseClient(), new IngestMetrics(this.registry));
+	}
+
+	@Test
+	void skipsVideosThatHaveNotChanged() {
+		write(List.of(video("a", "title", 10), video("b", "title", 10)), 1);
+		var summary = write(List.of(video("a", "title", 10), video("b", "title", 10)), 1);
+		Assertions.assertEquals(0, summary.inserted());
+		Assertions.assertEquals(0, summary.updated());
+		Assertions.assertEquals(0, summary.statisticsOnly());
+		Assertions.assertEquals(2, summary.skipped());
+	}
+
+	@Test
+	void updatesOnlyTheStatisticsOfVideosWhoseStatisticsMoved() {
+		write(List.of(video("a", "title", 10), video("b", "title", 10)), 1);
+		database.execute("update yt_videos set description = 'left alone' where video_id = 'a'");
+		var summary = write(List.of(video("a", "title", 11), video("b", "title", 10)), 1);
+		Assertions.assertEquals(1, summary.statisticsOnly());
+		Assertions.assertEquals(1, summary.skipped());
+		var row = row("a");
+		Assertions.assertEquals(11, row.get("view_count"));
+		Assertions.assertEquals("left alone", row.get("description"), "the statistics are written on their own");
+	}
+
+	@Test
+	void stampsUnchangedVideosWithTheRunAllAtOnce() {
+		write(List.of(video("a", "title", 10), video("b", "title", 10), video("c", "title", 10)), 1);
+		var summary = write(List.of(video("a", "title", 10), video("b", "title", 10), video("c", "title", 11)), 2);
+		Assertions.assertEquals(2, summary.skipped());
+		Assertions.assertEquals(1, summary.statisticsOnly());
+		for (var videoId : List.of("a", "b", "c"))
+			Assertions.assertEquals(2L, row(videoId).get("last_seen_run"));
+		Assertions.assertEquals(1, statements("stamp-videos"));
+		Assertions.assertEquals(1, statements("update-video-statistics"), "only c's statistics moved");
+	}
+
+	@Test
+	void rewritesVideosThatWereEdited() {
+		write(List.of(video("a", "title", 10)), 1);
+		var summary = write(List.of(video("a", "a new title", 10), video("b", "title", 10)), 1);
+		Assertions.assertEquals(1, summary.inserted());
+		Assertions.assertEquals(1, summary.updated());
+		Assertions.assertEquals("a new title", row("a").get("title"));
+	}
+
+	@Test
+	void writesMoreVideosThanAStatementCouldBindParametersFor() {
+		var videos = IntStream.range(0, 5_000).mapToObj(i -> video("video-" + i, "title", i)).toList();
+		Assertions.assertEquals(5_000, write(videos, 1).inserted());
+		var moved = videos.stream().map(video -> video(video.videoId(), "title", video.viewCount() + 1)).toList();
+		Assertions.assertEquals(5_000, write(moved, 1).statisticsOnly());
+		Assertions.assertEquals(4_000, row("video-3999").get("view_count"));
+	}
+
+	@Test
+	void keepsTagsWithCharactersThatArraysQuote() {
+		var tags = List.of("spring boot", "a,b", "{braces}", "\"quoted\"", "back\\slash", "NULL", "");
+		var video = video("a", "title", 10);
+		write(List.of(new Video(video.videoId(), video.title(), video.description(), video.publishedAt(),
+				video.standardThumbnail(), tags, video.categoryId(), video.viewCount(), video.likeCount(),
+				video.favoriteCount(), video.commentCount(), video.channelId())), 1);
+		Assertions.assertArrayEquals(tags.toArray(), (Object[]) row("a").get("tags"));
+	}
+
+	private IngestSummary write(List<Video> videos, long runId) {
+		var summary = new IngestSummary();
+		this.writer.write(videos, runId, summary).block();
+		return summary;
+	}
+
+	private long statements(String statement) {
+		return this.registry.get("youtube.ingest.statement.duration").tag("statement", statement).timer().count();
+	}
+
+	private static Map<String, Object> row(String videoId) {
+		return database.databaseClient()//
+				.sql("select * from yt_videos where video_id = :videoId")//
+				.bind("videoId", videoId)//
+				.fetch()//
+				.one()//
+				.block();
+	}
+
+	@SneakyThrows
+	static Video video(String id, String title, int views) {
+		return new Video(id, title, "a description", new Date(0),
+				new URL("https://i.ytimg.com/vi/" + id + "/default.jpg"), List.of("spring", "java"), 28, views, 0, 0, 0,
+				CHANNEL_ID);
+	}
+
+}
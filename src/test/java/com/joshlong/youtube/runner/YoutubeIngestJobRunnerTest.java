@@ -0,0 +1,174 @@
+package com.joshlong.youtube.runner;
+
+import com.joshlong.youtube.database.EmbeddedDatabase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Ingests a {@link FakeYoutubeClient fake channel} into a real, but embedded, PostgreSQL.
+ *
+ * @author Josh Long
+ */
+class YoutubeIngestJobRunnerTest {
+
+	private static EmbeddedDatabase database;
+
+	private final FakeYoutubeClient client = new FakeYoutubeClient(2);
+
+	@BeforeAll
+	static void start() {
+		database = EmbeddedDatabase.start();
+	}
+
+	@AfterAll
+	static void stop() {
+		database.close();
+	}
+
+	@BeforeEach
+	void reset() {
+		database.execute("delete from yt_playlist_videos", "delete from yt_playlists", "delete from yt_videos",
+				"delete from yt_channels", "delete from yt_ingest_runs");
+		this.client.uploads(5);
+		this.client.playlist("a", List.of("video-0", "video-1", "video-2", "video-1", "video-3"));
+		this.client.playlist("b", List.of("video-4"));
+	}
+
+	@Test
+	void writesEachPlaylistsVideosOnce() {
+		var summary = ingest(true);
+		Assertions.assertEquals(Set.of("video-0", "video-1", "video-2", "video-3"), playlistVideos("a"));
+		Assertions.assertEquals(Set.of("video-4"), playlistVideos("b"));
+		Assertions.assertEquals(5, summary.playlistVideos());
+		Assertions.assertEquals(strings("select run_id::text from yt_ingest_runs"),
+				strings("select distinct walked_run::text from yt_playlists"));
+		Assertions.assertEquals(List.of("5", "1"),
+				strings("select walked_item_count::text from yt_playlists order by playlist_id"));
+	}
+
+	@Test
+	void walksOnlyThePlaylistsWhoseItemCountChanged() {
+		ingest(true);
+		this.client.forget();
+		this.client.playlist("b", List.of("video-4", "video-0"));
+		ingest(true);
+		Assertions.assertTrue(this.client.fetched().stream().noneMatch(page -> page.startsWith("a@")),
+				() -> "a hasn't changed, but " + this.client.fetched() + " were fetched");
+		Assertions.assertTrue(this.client.fetched().contains("b@null"));
+		Assertions.assertEquals(Set.of("video-4", "video-0"), playlistVideos("b"));
+	}
+
+	@Test
+	void walksEveryPlaylistOnAFullCrawl() {
+		ingest(true);
+		this.client.playlist("b", List.of("video-0"));
+		ingest(true);
+		Assertions.assertEquals(Set.of("video-4"), playlistVideos("b"),
+				"a video swapped for another leaves the item count the same, so an incremental crawl misses it");
+		ingest(false);
+		Assertions.assertTrue(playlistVideos("b").contains("video-0"));
+	}
+
+	@Test
+	void resumesAnInterruptedRunFromItsCheckpoints() {
+		this.client.failAfter(2);
+		Assertions.assertThrows(IllegalStateException.class, () -> ingest(true));
+		Assertions.assertEquals(List.of("a@null", "a@2", "a@4"), this.client.fetched());
+		Assertions.assertEquals(List.of("a:4:4"), strings(
+				"select source || ':' || page_token || ':' || processed from yt_ingest_checkpoints order by source"));
+		this.client.forget();
+		ingest(true);
+		Assertions.assertEquals(List.of("a@4", "b@null", "uploads@null", "uploads@2", "uploads@4"),
+				this.client.fetched(), "the resumed run picks the playlist up from its checkpoint");
+		Assertions.assertEquals(Set.of("video-0", "video-1", "video-2", "video-3"), playlistVideos("a"));
+		Assertions.assertEquals(List.of("1"), strings("select count(*)::text from yt_ingest_runs"));
+		Assertions.assertEquals(List.of("0"),
+				strings("select count(*)::text from yt_ingest_runs where completed_at is null"));
+		Assertions.assertEquals(List.of(), strings("select source from yt_ingest_checkpoints"));
+	}
+
+	@Test
+	void skipsWhatTheInterruptedRunFinished() {
+		this.client.failAfter(5);
+		Assertions.assertThrows(IllegalStateException.class, () -> ingest(true));
+		this.client.forget();
+		ingest(true);
+		Assertions.assertEquals(List.of("uploads@2", "uploads@4"), this.client.fetched(),
+				"the playlists were walked, and the first page of uploads written, before the run was interrupted");
+		Assertions.assertEquals(List.of("5"), strings("select count(*)::text from yt_videos"));
+		Assertions.assertEquals(List.of("1"), strings("select count(*)::text from yt_ingest_runs"));
+	}
+
+	@Test
+	void sweepsWhatAFullCrawlNoLongerSees() {
+		ingest(false);
+		this.client.uploads(List.of(FakeYoutubeClient.video(0), FakeYoutubeClient.video(2)));
+		this.client.playlist("a", List.of("video-0", "video-2"));
+		this.client.removePlaylist("b");
+		ingest(false);
+		Assertions.assertEquals(List.of("video-0", "video-2"),
+				strings("select video_id from yt_videos order by video_id"));
+		Assertions.assertEquals(List.of("a"), strings("select playlist_id from yt_playlists"));
+		Assertions.assertEquals(Set.of("video-0", "video-2"), playlistVideos("a"));
+	}
+
+	@Test
+	void keepsTheVideosThatAnIncrementalCrawlDoesNotReach() {
+		ingest(true);
+		this.client.uploads(List.of(FakeYoutubeClient.video(0)));
+		ingest(true);
+		Assertions.assertEquals(5, strings("select video_id from yt_videos").size(),
+				"an incremental crawl only sees the uploads newer than the ones we have");
+	}
+
+	@Test
+	void sweepsNothingUntilTheRunCompletes() {
+		ingest(false);
+		this.client.uploads(List.of(FakeYoutubeClient.video(0)));
+		this.client.removePlaylist("b");
+		this.client.failAfter(3);
+		Assertions.assertThrows(IllegalStateException.class, () -> ingest(false));
+		Assertions.assertEquals(5, strings("select video_id from yt_videos").size());
+		Assertions.assertEquals(List.of("a", "b"), strings("select playlist_id from yt_playlists order by 1"));
+		Assertions.assertEquals(Set.of("video-4"), playlistVideos("b"));
+	}
+
+	private IngestSummary ingest(boolean incremental) {
+		return runner(incremental).ingest(FakeYoutubeClient.USERNAME).block();
+	}
+
+	private YoutubeIngestJobRunner runner(boolean incremental) {
+		var registry = new SimpleMeterRegistry();
+		var metrics = new IngestMetrics(registry);
+		var db = database.databaseClient();
+		var stages = new YoutubeIngestJobRunner.IngestStages(new IngestStage("playlists", 1, 1, registry),
+				new IngestStage("playlist-videos", 1, 1, registry),
+				new IngestStage("playlist-video-writes", 1, 1, registry),
+				new IngestStage("video-writes", 1, 1, registry));
+		return new YoutubeIngestJobRunner(this.client, db, new VideoBatchWriter(db, metrics), 100,
+				Duration.ofMillis(10), incremental, stages, new IngestRunRepository(db),
+				new StaleRowSweeper(db, true, 2), metrics);
+	}
+
+	private static Set<String> playlistVideos(String playlistId) {
+		return Set.copyOf(strings("select video_id from yt_playlist_videos where playlist_id = '" + playlistId + "'"));
+	}
+
+	static List<String> strings(String sql) {
+		return database.databaseClient()//
+				.sql(sql)//
+				.map((row, metadata) -> row.get(0, String.class))//
+				.all()//
+				.collectList()//
+				.block();
+	}
+
+}
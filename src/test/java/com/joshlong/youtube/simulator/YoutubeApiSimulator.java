@@ -0,0 +1,372 @@
+package com.joshlong.youtube.simulator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * A stand-in for the YouTube Data API that serves synthetic channels, playlists and
+ * videos at whatever scale we ask for, so that we can load test the ingest without
+ * spending quota. It supports {@code pageToken} pagination, {@code ETag}s and
+ * {@code If-None-Match}, and can be told to answer slowly or to fail some fraction of
+ * requests.
+ * <p>
+ * Channel {@code i} is owned by the user {@code simulated-user-i}. Its videos are
+ * numbered from {@code 0}, newest first, and its uploads playlist lists all of them. Each
+ * of its other playlists, numbered from {@code 0}, holds every video whose number leaves
+ * that remainder when divided by the number of playlists.
+ * <p>
+ * Run it on its own with {@code ./mvnw exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.joshlong.youtube.simulator.YoutubeApiSimulator} and point
+ * {@code bootiful.youtube.base-url} at {@code http://localhost:8090/youtube/v3}.
+ *
+ * @author Josh Long
+ */
+@Slf4j
+public class YoutubeApiSimulator implements AutoCloseable {
+
+	/**
+	 * @param channels how many channels there are
+	 * @param videosPerChannel how many videos each channel has uploaded
+	 * @param playlistsPerChannel how many playlists (besides uploads) each channel has
+	 * @param descriptionLength roughly how many characters each video description has
+	 * @param latency how long to wait before answering each request
+	 * @param errorRate the fraction of requests, from {@code 0} to {@code 1}, that fail
+	 * with a {@code 500} or a {@code 429}
+	 */
+	public record Settings(int channels, int videosPerChannel, int playlistsPerChannel, int descriptionLength,
+			Duration latency, double errorRate) {
+
+		public Settings withLatency(Duration latency) {
+			return new Settings(channels, videosPerChannel, playlistsPerChannel, descriptionLength, latency, errorRate);
+		}
+
+		public Settings withErrorRate(double errorRate) {
+			return new Settings(channels, videosPerChannel, playlistsPerChannel, descriptionLength, latency, errorRate);
+		}
+
+	}
+
+	public static final String BASE_PATH = "/youtube/v3";
+
+	private static final int MAX_RESULTS = 50;
+
+	private static final Instant NEWEST_VIDEO = Instant.parse("2022-07-01T00:00:00Z");
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final Map<String, AtomicLong> requests = new ConcurrentHashMap<>();
+
+	private final AtomicLong notModified = new AtomicLong();
+
+	private final Settings settings;
+
+	private final String description;
+
+	private final DisposableServer server;
+
+	public YoutubeApiSimulator(Settings settings) {
+		this(settings, 0);
+	}
+
+	public YoutubeApiSimulator(Settings settings, int port) {
+		this.settings = settings;
+		this.description = "A synthetic video description. ".repeat(Math.max(1, settings.descriptionLength() / 32));
+		this.server = HttpServer.create()//
+				.compress(true)//
+				.host("localhost")//
+				.port(port)//
+				.route(routes -> routes.get(BASE_PATH + "/{endpoint}", this::handle))//
+				.bindNow();
+		log.info("the YouTube API simulator is listening on " + baseUrl());
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		var simulator = new YoutubeApiSimulator(new Settings(100, 1_000, 10, 1_000, Duration.ofMillis(50), 0.01), 8090);
+		simulator.server.onDispose().block();
+	}
+
+	/**
+	 * @return the value to use for {@code bootiful.youtube.base-url}
+	 */
+	public String baseUrl() {
+		return "http://localhost:" + this.server.port() + BASE_PATH;
+	}
+
+	public static String username(int channel) {
+		return "simulated-user-" + channel;
+	}
+
+	public static String channelId(int channel) {
+		return "UCsim" + channel;
+	}
+
+	public static String uploadsPlaylistId(int channel) {
+		return "UUsim" + channel;
+	}
+
+	public static String playlistId(int channel, int playlist) {
+		return "PLsim" + channel + "-" + playlist;
+	}
+
+	public static String videoId(int channel, int video) {
+		return "v" + channel + "-" + video;
+	}
+
+	/**
+	 * @param endpoint one of {@code channels}, {@code playlists}, {@code playlistItems},
+	 * {@code videos} or {@code search}
+	 * @return how many requests have been made to that endpoint
+	 */
+	public long requests(String endpoint) {
+		return this.requests.computeIfAbsent(endpoint, e -> new AtomicLong()).get();
+	}
+
+	/**
+	 * @return how many requests were answered with {@code 304 Not Modified}
+	 */
+	public long notModified() {
+		return this.notModified.get();
+	}
+
+	@Override
+	public void close() {
+		this.server.disposeNow();
+	}
+
+	private Publisher<Void> handle(HttpServerRequest request, HttpServerResponse response) {
+		var endpoint = request.param("endpoint");
+		this.requests.computeIfAbsent(endpoint, e -> new AtomicLong()).incrementAndGet();
+		var parameters = new QueryStringDecoder(request.uri()).parameters();
+		var delay = this.settings.latency().isZero() ? Mono.<Long>empty() : Mono.delay(this.settings.latency());
+		return delay.then(Mono.defer(() -> {
+			var random = ThreadLocalRandom.current();
+			if (random.nextDouble() < this.settings.errorRate()) {
+				return random.nextBoolean() ? response.status(HttpResponseStatus.INTERNAL_SERVER_ERROR).send().then()
+						: response.status(HttpResponseStatus.TOO_MANY_REQUESTS).header("Retry-After", "1").send()
+								.then();
+			}
+			var body = switch (endpoint) {
+				case "channels" -> channels(parameters);
+				case "playlists" -> playlists(parameters);
+				case "playlistItems" -> playlistItems(parameters);
+				case "videos" -> videos(parameters);
+				case "search" -> search(parameters);
+				default -> null;
+			};
+			if (body == null)
+				return response.status(HttpResponseStatus.NOT_FOUND).send().then();
+			var json = write(body);
+			var etag = etag(json);
+			if (etag.equals(request.requestHeaders().get("If-None-Match"))) {
+				this.notModified.incrementAndGet();
+				return response.status(HttpResponseStatus.NOT_MODIFIED).header("ETag", etag).send().then();
+			}
+			return response//
+					.status(HttpResponseStatus.OK)//
+					.header("Content-Type", "application/json")//
+					.header("ETag", etag)//
+					.sendByteArray(Mono.just(json))//
+					.then();
+		}));
+	}
+
+	private ObjectNode channels(Map<String, List<String>> parameters) {
+		var channel = parameters.containsKey("forUsername")
+				? indexOf(parameters.get("forUsername").get(0), "simulated-user-")
+				: indexOf(parameters.get("id").get(0), "UCsim");
+		var page = page(channel >= 0 && channel < this.settings.channels() ? 1 : 0, 0, MAX_RESULTS);
+		if (channel >= 0 && channel < this.settings.channels()) {
+			var item = ((ArrayNode) page.get("items")).addObject();
+			item.put("kind", "youtube#channel");
+			item.put("id", channelId(channel));
+			var snippet = item.putObject("snippet");
+			snippet.put("title", "Simulated channel " + channel);
+			snippet.put("description", "A channel full of simulated videos");
+			snippet.put("publishedAt", "2011-01-25T17:26:46Z");
+			item.putObject("contentDetails").putObject("relatedPlaylists").put("uploads", uploadsPlaylistId(channel));
+		}
+		return page;
+	}
+
+	private ObjectNode playlists(Map<String, List<String>> parameters) {
+		var channel = indexOf(parameters.get("channelId").get(0), "UCsim");
+		var total = this.settings.playlistsPerChannel();
+		var offset = offset(parameters);
+		var page = page(total, offset, maxResults(parameters));
+		var items = (ArrayNode) page.get("items");
+		for (var playlist = offset; playlist < Math.min(total, offset + maxResults(parameters)); playlist++) {
+			var item = items.addObject();
+			item.put("kind", "youtube#playlist");
+			item.put("id", playlistId(channel, playlist));
+			var snippet = item.putObject("snippet");
+			snippet.put("publishedAt", NEWEST_VIDEO.minus(Duration.ofDays(playlist)).toString());
+			snippet.put("channelId", channelId(channel));
+			snippet.put("title", "Simulated playlist " + playlist);
+			snippet.put("description", "A playlist of simulated videos");
+			item.putObject("contentDetails").put("itemCount", videosInPlaylist(playlist));
+		}
+		return page;
+	}
+
+	private ObjectNode playlistItems(Map<String, List<String>> parameters) {
+		var playlistId = parameters.get("playlistId").get(0);
+		var uploads = playlistId.startsWith("UUsim");
+		var channel = uploads ? indexOf(playlistId, "UUsim") : indexOf(playlistId.split("-")[0], "PLsim");
+		var playlist = uploads ? -1 : Integer.parseInt(playlistId.split("-")[1]);
+		var total = uploads ? this.settings.videosPerChannel() : videosInPlaylist(playlist);
+		var offset = offset(parameters);
+		var page = page(total, offset, maxResults(parameters));
+		var items = (ArrayNode) page.get("items");
+		for (var position = offset; position < Math.min(total, offset + maxResults(parameters)); position++) {
+			var video = uploads ? position : position * this.settings.playlistsPerChannel() + playlist;
+			var item = items.addObject();
+			item.put("kind", "youtube#playlistItem");
+			var contentDetails = item.putObject("contentDetails");
+			contentDetails.put("videoId", videoId(channel, video));
+			contentDetails.put("videoPublishedAt", publishedAt(video).toString());
+		}
+		return page;
+	}
+
+	private ObjectNode videos(Map<String, List<String>> parameters) {
+		var ids = parameters.get("id").get(0).split(",");
+		var page = page(ids.length, 0, ids.length);
+		var items = (ArrayNode) page.get("items");
+		for (var id : ids) {
+			var parts = id.substring(1).split("-");
+			var channel = Integer.parseInt(parts[0]);
+			var video = Integer.parseInt(parts[1]);
+			if (channel >= this.settings.channels() || video >= this.settings.videosPerChannel())
+				continue;
+			var item = items.addObject();
+			item.put("kind", "youtube#video");
+			item.put("id", id);
+			var snippet = item.putObject("snippet");
+			snippet.put("publishedAt", publishedAt(video).toString());
+			snippet.put("channelId", channelId(channel));
+			snippet.put("title", title(channel, video));
+			snippet.put("description", this.description);
+			snippet.putObject("thumbnails").putObject("default").put("url",
+					"https://i.ytimg.com/vi/" + id + "/default.jpg");
+			snippet.putArray("tags").add("simulated").add("tag-" + (video % 10));
+			snippet.put("categoryId", "28");
+			var statistics = item.putObject("statistics");
+			statistics.put("viewCount", String.valueOf(1_000 + video * 7L % 100_000));
+			statistics.put("likeCount", String.valueOf(video % 500));
+			statistics.put("favoriteCount", "0");
+			statistics.put("commentCount", String.valueOf(video % 50));
+		}
+		return page;
+	}
+
+	/**
+	 * matches {@code q} against the titles, and {@code publishedAfter} and
+	 * {@code publishedBefore} against the publication dates, of the channel's videos.
+	 */
+	private ObjectNode search(Map<String, List<String>> parameters) {
+		var channel = indexOf(parameters.get("channelId").get(0), "UCsim");
+		var query = parameters.containsKey("q") ? parameters.get("q").get(0).toLowerCase() : null;
+		var after = parameters.containsKey("publishedAfter") ? Instant.parse(parameters.get("publishedAfter").get(0))
+				: null;
+		var before = parameters.containsKey("publishedBefore") ? Instant.parse(parameters.get("publishedBefore").get(0))
+				: null;
+		var matches = IntStream.range(0, this.settings.videosPerChannel())//
+				.filter(video -> query == null || title(channel, video).toLowerCase().contains(query))//
+				.filter(video -> after == null || !publishedAt(video).isBefore(after))//
+				.filter(video -> before == null || publishedAt(video).isBefore(before))//
+				.toArray();
+		var offset = offset(parameters);
+		var page = page(matches.length, offset, maxResults(parameters));
+		var items = (ArrayNode) page.get("items");
+		for (var match = offset; match < Math.min(matches.length, offset + maxResults(parameters)); match++) {
+			var item = items.addObject();
+			item.put("kind", "youtube#searchResult");
+			item.putObject("id").put("kind", "youtube#video").put("videoId", videoId(channel, matches[match]));
+		}
+		return page;
+	}
+
+	private int videosInPlaylist(int playlist) {
+		var playlists = this.settings.playlistsPerChannel();
+		var videos = this.settings.videosPerChannel();
+		return videos / playlists + (playlist < videos % playlists ? 1 : 0);
+	}
+
+	public static String title(int channel, int video) {
+		return "Simulated video " + video + " of channel " + channel;
+	}
+
+	public static Instant publishedAt(int video) {
+		return NEWEST_VIDEO.minus(Duration.ofHours(video));
+	}
+
+	/**
+	 * builds the envelope for a page of {@code total} results starting at {@code offset}.
+	 * The page tokens are just the offsets of the neighboring pages.
+	 */
+	private ObjectNode page(int total, int offset, int pageSize) {
+		var page = this.objectMapper.createObjectNode();
+		page.put("kind", "youtube#listResponse");
+		if (offset + pageSize < total)
+			page.put("nextPageToken", "p" + (offset + pageSize));
+		if (offset > 0)
+			page.put("prevPageToken", "p" + Math.max(0, offset - pageSize));
+		page.putObject("pageInfo").put("totalResults", total).put("resultsPerPage", pageSize);
+		page.putArray("items");
+		return page;
+	}
+
+	private static int offset(Map<String, List<String>> parameters) {
+		var pageToken = parameters.get("pageToken");
+		return pageToken == null ? 0 : Integer.parseInt(pageToken.get(0).substring(1));
+	}
+
+	private static int maxResults(Map<String, List<String>> parameters) {
+		var maxResults = parameters.get("maxResults");
+		return maxResults == null ? 5 : Math.min(MAX_RESULTS, Integer.parseInt(maxResults.get(0)));
+	}
+
+	private static int indexOf(String id, String prefix) {
+		try {
+			return id.startsWith(prefix) ? Integer.parseInt(id.substring(prefix.length())) : -1;
+		}
+		catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	@SneakyThrows
+	private byte[] write(ObjectNode body) {
+		return this.objectMapper.writeValueAsBytes(body);
+	}
+
+	@SneakyThrows
+	private static String etag(byte[] json) {
+		var hash = MessageDigest.getInstance("SHA-256").digest(json);
+		return '"' + HexFormat.of().formatHex(hash, 0, 12) + '"';
+	}
+
+}